@@ -0,0 +1,116 @@
+package cz.ami.cas.inauth.hazelcast;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import cz.ami.cas.inauth.authenticator.model.push.PushAuthenticationStatus;
+import cz.ami.cas.inauth.configuration.mfa.CoreInalogyMultifactorProperties;
+import cz.ami.cas.inauth.hazelcast.local.InalogyMfaRequestLocalMap;
+import cz.ami.cas.inauth.hazelcast.mfa.InalogyMfaRequest;
+import cz.ami.cas.inauth.hazelcast.mfa.InalogyMfaRequestHazelcastMap;
+import cz.ami.cas.inauth.hazelcast.mfa.MfaRequestMap;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.apereo.cas.configuration.CasConfigurationProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks comparing the Hazelcast MFA request map, on a single embedded member,
+ * with the in-process map selected by {@code ami.inalogy.mfa.core.requestMap.type=local}.
+ * Both maps are pre-populated with a few thousand pending requests before measuring.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class InalogyRequestMapBenchmark {
+
+    private static final int PENDING_REQUESTS = 5_000;
+
+    @Param({"hazelcast", "local"})
+    public String mapType;
+
+    private HazelcastInstance hazelcastInstance;
+
+    private MfaRequestMap requestMap;
+
+    private String[] pushIds;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        val properties = new CoreInalogyMultifactorProperties();
+        if ("local".equals(mapType)) {
+            requestMap = new InalogyMfaRequestLocalMap(properties.getRequestMap(), new SimpleMeterRegistry());
+        } else {
+            val config = new Config().setClusterName("inalogy-jmh-" + UUID.randomUUID());
+            config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+            hazelcastInstance = Hazelcast.newHazelcastInstance(config);
+            requestMap = new InalogyMfaRequestHazelcastMap(hazelcastInstance, new CasConfigurationProperties(),
+                    properties, new SimpleMeterRegistry());
+        }
+        pushIds = new String[PENDING_REQUESTS];
+        for (var i = 0; i < PENDING_REQUESTS; i++) {
+            pushIds[i] = "fcm:" + UUID.randomUUID();
+            requestMap.putRequest(request(pushIds[i]));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (requestMap instanceof InalogyMfaRequestLocalMap localMap) {
+            localMap.destroy();
+        }
+        if (hazelcastInstance != null) {
+            hazelcastInstance.shutdown();
+        }
+    }
+
+    @Benchmark
+    public InalogyMfaRequest getRequestByPushId() {
+        return requestMap.getRequestByPushId(pushIds[ThreadLocalRandom.current().nextInt(PENDING_REQUESTS)]);
+    }
+
+    @Benchmark
+    public void putRequest() {
+        requestMap.putRequest(request(pushIds[ThreadLocalRandom.current().nextInt(PENDING_REQUESTS)]));
+    }
+
+    @Benchmark
+    public boolean roundTrip() {
+        val pushId = "fcm:" + UUID.randomUUID();
+        val request = request(pushId);
+        requestMap.putRequest(request);
+        requestMap.getRequestByPushId(pushId);
+        val approved = requestMap.approve(pushId, request.getRequestId(), null, "123456", "17");
+        requestMap.removeRequest(request.getRequestId());
+        return approved;
+    }
+
+    private static InalogyMfaRequest request(final String pushId) {
+        return InalogyMfaRequest.builder()
+                .requestId(UUID.randomUUID().toString())
+                .userId("casuser")
+                .pushId(pushId)
+                .accountId(1234567890L)
+                .challengeType("CHALLENGE_CHOOSE")
+                .challengeData("17,42,93")
+                .status(PushAuthenticationStatus.PENDING)
+                .validUntil(System.currentTimeMillis() + 40_000)
+                .build();
+    }
+}
@@ -0,0 +1,128 @@
+package cz.ami.cas.inauth.hazelcast;
+
+import com.hazelcast.internal.serialization.Data;
+import com.hazelcast.internal.serialization.InternalSerializationService;
+import com.hazelcast.internal.serialization.impl.DefaultSerializationServiceBuilder;
+import cz.ami.cas.inauth.authenticator.model.push.PushAuthenticationStatus;
+import cz.ami.cas.inauth.authenticator.model.push.PushRegistrationStatus;
+import cz.ami.cas.inauth.hazelcast.mfa.InalogyMfaRequest;
+import cz.ami.cas.inauth.hazelcast.registration.InalogyRegistrationRequest;
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks comparing the field-by-field {@code DataSerializable} form of the request records
+ * with the Java serialization Hazelcast used for them before. Payload sizes of both forms are printed
+ * once per trial; throughput and allocation rate come from the benchmarks themselves.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class InalogyRequestSerializationBenchmark {
+
+    @Param({"mfa", "registration"})
+    public String requestType;
+
+    private InternalSerializationService serializationService;
+
+    private Object request;
+
+    private Data hazelcastPayload;
+
+    private byte[] javaPayload;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        serializationService = new DefaultSerializationServiceBuilder().build();
+        request = "mfa".equals(requestType) ? mfaRequest() : registrationRequest();
+        hazelcastPayload = serializationService.toData(request);
+        javaPayload = toJava(request);
+        System.out.printf("%n[%s] DataSerializable payload: %d bytes, Java serialization payload: %d bytes%n",
+                requestType, hazelcastPayload.totalSize(), javaPayload.length);
+    }
+
+    @Benchmark
+    public Data serializeDataSerializable() {
+        return serializationService.toData(request);
+    }
+
+    @Benchmark
+    public Object deserializeDataSerializable() {
+        return serializationService.toObject(hazelcastPayload);
+    }
+
+    @Benchmark
+    public byte[] serializeJava() throws IOException {
+        return toJava(request);
+    }
+
+    @Benchmark
+    public Object deserializeJava() throws IOException, ClassNotFoundException {
+        try (val in = new ObjectInputStream(new ByteArrayInputStream(javaPayload))) {
+            return in.readObject();
+        }
+    }
+
+    private static byte[] toJava(final Object value) throws IOException {
+        val bytes = new ByteArrayOutputStream(512);
+        try (val out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static InalogyMfaRequest mfaRequest() {
+        return InalogyMfaRequest.builder()
+                .requestId(UUID.randomUUID().toString())
+                .userId("casuser")
+                .pushId("fcm:" + UUID.randomUUID())
+                .accountId(1234567890L)
+                .challengeType("CHALLENGE_CHOOSE")
+                .challengeData("17,42,93")
+                .status(PushAuthenticationStatus.PENDING)
+                .validUntil(System.currentTimeMillis() + 40_000)
+                .build();
+    }
+
+    private static InalogyRegistrationRequest registrationRequest() {
+        val scratchCodes = new ArrayList<Number>(List.of(12345678, 23456789, 34567890, 45678901, 56789012));
+        return InalogyRegistrationRequest.builder()
+                .id(1234567890L)
+                .requestId(UUID.randomUUID().toString())
+                .username("casuser")
+                .deviceName("Pixel 8")
+                .deviceType("ANDROID")
+                .pushId("fcm:" + UUID.randomUUID())
+                .deviceKeyId(UUID.randomUUID().toString())
+                .encodedSecret("JBSWY3DPEHPK3PXPJBSWY3DPEHPK3PXP")
+                .validationCode(123456)
+                .scratchCodes(scratchCodes)
+                .registrationDate(ZonedDateTime.now(ZoneOffset.UTC))
+                .validUntil(System.currentTimeMillis() + 40_000)
+                .status(PushRegistrationStatus.PENDING)
+                .build();
+    }
+}
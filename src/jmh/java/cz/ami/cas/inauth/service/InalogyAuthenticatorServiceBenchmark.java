@@ -0,0 +1,67 @@
+package cz.ami.cas.inauth.service;
+
+import cz.ami.cas.inauth.authenticator.model.key.InalogyAuthenticatorKey;
+import cz.ami.cas.inauth.authenticator.model.key.KeyRepresentation;
+import cz.ami.cas.inauth.configuration.mfa.CoreInalogyMultifactorProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for {@link InalogyAuthenticatorService#createCredentials()},
+ * i.e. the work done on the webflow thread when a registration QR code is rendered,
+ * with and without the pool of pre-generated keys.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class InalogyAuthenticatorServiceBenchmark {
+
+    @Param({"HmacSHA1", "HmacSHA256", "HmacSHA512"})
+    public String hmacHashFunction;
+
+    @Param({"6", "8"})
+    public int codeDigits;
+
+    @Param({"BASE32", "BASE64"})
+    public KeyRepresentation keyRepresentation;
+
+    @Param({"false", "true"})
+    public boolean keyPoolEnabled;
+
+    private InalogyAuthenticatorService authenticatorService;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        val properties = new CoreInalogyMultifactorProperties()
+                .setHmacHashFunction(hmacHashFunction)
+                .setCodeDigits(codeDigits)
+                .setKeyRepresentation(keyRepresentation);
+        properties.getKeyPool().setEnabled(keyPoolEnabled);
+        authenticatorService = new InalogyAuthenticatorService(properties, null, null, null, null, null, new SimpleMeterRegistry());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        authenticatorService.destroy();
+    }
+
+    @Benchmark
+    public InalogyAuthenticatorKey createCredentials() {
+        return authenticatorService.createCredentials();
+    }
+}
@@ -0,0 +1,135 @@
+package cz.ami.cas.inauth.service;
+
+import cz.ami.cas.inauth.authenticator.model.key.KeyRepresentation;
+import cz.ami.cas.inauth.configuration.mfa.CoreInalogyMultifactorProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the hot paths of {@link InalogyOtpService}.
+ * Run with {@code ./gradlew jmh}; results are written as JSON to {@code build/reports/jmh}
+ * together with the allocation rate reported by the gc profiler. The time source is frozen,
+ * so that the valid code computed in the setup stays valid for the whole run.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class InalogyOtpServiceBenchmark {
+
+    @Param({"HmacSHA1", "HmacSHA256", "HmacSHA512"})
+    public String hmacHashFunction;
+
+    @Param({"1", "3", "5"})
+    public int windowSize;
+
+    @Param({"6", "8"})
+    public int codeDigits;
+
+    @Param({"BASE32", "BASE64"})
+    public KeyRepresentation keyRepresentation;
+
+    @Param({"false", "true"})
+    public boolean legacyOtpVerification;
+
+    private InalogyOtpService otpService;
+
+    private byte[] secretBytes;
+
+    private String encodedSecret;
+
+    private long validCode;
+
+    private long invalidCode;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        val properties = new CoreInalogyMultifactorProperties()
+                .setHmacHashFunction(hmacHashFunction)
+                .setWindowSize(windowSize)
+                .setCodeDigits(codeDigits)
+                .setKeyRepresentation(keyRepresentation)
+                .setLegacyOtpVerification(legacyOtpVerification)
+                .setClock(Clock.fixed(Instant.parse("2025-01-01T00:00:10Z"), ZoneOffset.UTC));
+        otpService = new InalogyOtpService(properties, new SimpleMeterRegistry());
+        secretBytes = otpService.generateSecretBytes();
+        encodedSecret = otpService.calculateSecretKey(secretBytes);
+        validCode = Long.parseLong(otpService.generateTOTP(secretBytes));
+        invalidCode = (validCode + 1) % (long) Math.pow(10, codeDigits);
+    }
+
+    /**
+     * Validation of a code generated for the current time step; hits on the first candidate.
+     */
+    @Benchmark
+    public boolean checkCodeCurrentStep() {
+        return otpService.checkCode(encodedSecret, validCode);
+    }
+
+    /**
+     * Validation of a wrong code; scans the whole window, which is the worst case.
+     */
+    @Benchmark
+    public boolean checkCodeFullWindowMiss() {
+        return otpService.checkCode(encodedSecret, invalidCode);
+    }
+
+    /**
+     * Validation of a valid code for an account; the keyed HMAC is cloned from the key cache.
+     */
+    @Benchmark
+    public boolean checkCodeAccountCurrentStep() {
+        return otpService.checkCode(encodedSecret, validCode, 1L);
+    }
+
+    /**
+     * Validation of a wrong code for a tracked account; the last known offset is checked first,
+     * then the rest of the window.
+     */
+    @Benchmark
+    public boolean checkCodeTrackedAccountMiss() {
+        return otpService.checkCode(encodedSecret, invalidCode, 1L);
+    }
+
+    @Benchmark
+    public long getCurrentInterval() {
+        return otpService.getCurrentInterval();
+    }
+
+    @Benchmark
+    public String generateTOTP() {
+        return otpService.generateTOTP(secretBytes);
+    }
+
+    @Benchmark
+    public List<Integer> calculateScratchCodes() {
+        return otpService.calculateScratchCodes();
+    }
+
+    @Benchmark
+    public byte[] generateSecretBytes() {
+        return otpService.generateSecretBytes();
+    }
+
+    @Benchmark
+    public String calculateSecretKey() {
+        return otpService.calculateSecretKey(secretBytes);
+    }
+}
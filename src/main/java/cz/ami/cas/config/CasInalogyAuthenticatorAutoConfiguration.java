@@ -31,6 +31,7 @@ import org.springframework.webflow.engine.builder.support.FlowBuilderServices;
         InalogyAuthenticatorAuthenticationMultifactorProviderBypassConfiguration.class,
         InalogyAuthenticatorConfiguration.class,
         InalogyAuthenticatorControllerConfiguration.class,
+        InalogyAuthenticatorJpaConfiguration.class,
         InalogyAuthenticatorWebflowConfiguration.class
 })
 @ConditionalOnProperty(prefix = "ami.inalogy.mfa", name = "enabled", havingValue = "true", matchIfMissing = true)
@@ -4,10 +4,13 @@ import cz.ami.cas.inauth.InalogyAuthenticatorAuthenticationHandler;
 import cz.ami.cas.inauth.InalogyAuthenticatorMultifactorAuthenticationProvider;
 import cz.ami.cas.inauth.configuration.mfa.InalogyAuthenticatorMultifactorProperties;
 import cz.ami.cas.inauth.credential.repository.InalogyOneTimeTokenCredentialRepository;
+import cz.ami.cas.inauth.credential.repository.JpaInalogyAuthenticatorTokenCredentialRepository;
 import cz.ami.cas.inauth.credential.repository.JsonInalogyAuthenticatorTokenCredentialRepository;
 import cz.ami.cas.inauth.hazelcast.mfa.MfaRequestMap;
+import cz.ami.cas.inauth.hazelcast.outbox.InalogyPushOutbox;
 import cz.ami.cas.inauth.hazelcast.registration.RegistrationRequestMap;
 import cz.ami.cas.inauth.service.InalogyAuthenticatorService;
+import cz.ami.cas.inauth.service.InalogyTimedAuthenticator;
 import cz.ami.cas.inauth.service.InalogyMessagingService;
 import cz.ami.cas.inauth.service.IInalogyAuthenticator;
 import cz.ami.cas.inauth.credential.InalogyAuthenticatorOneTimeTokenCredentialValidator;
@@ -16,6 +19,9 @@ import cz.ami.cas.inauth.credential.repository.BaseInalogyAuthenticatorTokenCred
 import cz.ami.cas.inauth.credential.repository.InMemoryInalogyAuthenticatorTokenCredentialRepository;
 import cz.ami.cas.inauth.token.InalogyAuthenticatorToken;
 import cz.ami.cas.inauth.token.InalogyAuthenticatorTokenRepositoryCleaner;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.persistence.EntityManagerFactory;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apache.commons.lang3.StringUtils;
@@ -48,6 +54,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.support.TransactionOperations;
 
 @EnableConfigurationProperties(InalogyAuthenticatorMultifactorProperties.class)
 @Slf4j
@@ -86,9 +94,10 @@ public class InalogyAuthenticatorAuthenticationEventExecutionPlanConfiguration {
         @RefreshScope(proxyMode = ScopedProxyMode.DEFAULT)
         @Bean
         @ConditionalOnMissingBean(name = "inalogyMessagingService")
-        public InalogyMessagingService inalogyMessagingService(final InalogyAuthenticatorMultifactorProperties inalogyMfaProperties) {
+        public InalogyMessagingService inalogyMessagingService(final InalogyAuthenticatorMultifactorProperties inalogyMfaProperties,
+                                                              final ObjectProvider<MeterRegistry> meterRegistry) {
             val messagingService = inalogyMfaProperties.getMessagingService();
-            return new InalogyMessagingService(messagingService);
+            return new InalogyMessagingService(messagingService, meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
         }
 
         @RefreshScope(proxyMode = ScopedProxyMode.DEFAULT)
@@ -103,10 +112,16 @@ public class InalogyAuthenticatorAuthenticationEventExecutionPlanConfiguration {
                 @Qualifier(MfaRequestMap.BEAN_NAME)
                 final MfaRequestMap mfaRequestMap,
                 @Qualifier(RegistrationRequestMap.BEAN_NAME)
-                final RegistrationRequestMap registrationRequestMap
+                final RegistrationRequestMap registrationRequestMap,
+                @Qualifier(InalogyPushOutbox.BEAN_NAME)
+                final ObjectProvider<InalogyPushOutbox> pushOutbox,
+                final ObjectProvider<MeterRegistry> meterRegistry
                 ) {
-            return new InalogyAuthenticatorService(inalogyMfaProperties.getCore(), credentialRepository, messagingService,
-                    mfaRequestMap, registrationRequestMap);
+            val registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+            val authenticator = new InalogyAuthenticatorService(inalogyMfaProperties.getCore(), credentialRepository, messagingService,
+                    mfaRequestMap, registrationRequestMap, pushOutbox.getIfAvailable(), registry);
+            val metrics = inalogyMfaProperties.getCore().getMetrics();
+            return metrics.isEnabled() ? new InalogyTimedAuthenticator(authenticator, metrics, registry) : authenticator;
         }
 
         @ConditionalOnMissingBean(name = "inalogyAuthenticatorAccountCipherExecutor")
@@ -217,7 +232,7 @@ public class InalogyAuthenticatorAuthenticationEventExecutionPlanConfiguration {
                 @Qualifier("inalogyAuthenticatorInstance")
                 final IInalogyAuthenticator inalogyAuthenticatorInstance,
                 @Qualifier(BaseInalogyAuthenticatorTokenCredentialRepository.BEAN_NAME)
-                final OneTimeTokenCredentialRepository inalogyAuthenticatorAccountRegistry,
+                final InalogyOneTimeTokenCredentialRepository inalogyAuthenticatorAccountRegistry,
                 @Qualifier(OneTimeTokenRepository.BEAN_NAME)
                 final OneTimeTokenRepository oneTimeTokenAuthenticatorTokenRepository) {
             return new InalogyAuthenticatorOneTimeTokenCredentialValidator(inalogyAuthenticatorInstance,
@@ -262,9 +277,21 @@ public class InalogyAuthenticatorAuthenticationEventExecutionPlanConfiguration {
                 @Qualifier("inalogyAuthenticatorAccountCipherExecutor")
                 final CipherExecutor inalogyAuthenticatorAccountCipherExecutor,
                 @Qualifier("inalogyAuthenticatorScratchCodesCipherExecutor")
-                final CipherExecutor inalogyAuthenticatorScratchCodesCipherExecutor) {
+                final CipherExecutor inalogyAuthenticatorScratchCodesCipherExecutor,
+                @Qualifier(InalogyAuthenticatorJpaConfiguration.ENTITY_MANAGER_FACTORY_BEAN_NAME)
+                final ObjectProvider<EntityManagerFactory> inalogyAuthenticatorEntityManagerFactory,
+                @Qualifier(InalogyAuthenticatorJpaConfiguration.TRANSACTION_TEMPLATE_BEAN_NAME)
+                final ObjectProvider<TransactionOperations> inalogyAuthenticatorTransactionTemplate) {
+            if (inalogyMfaProperties.getJpa().isEnabled()) {
+                val entityManagerFactory = inalogyAuthenticatorEntityManagerFactory.getObject();
+                return new JpaInalogyAuthenticatorTokenCredentialRepository(
+                        SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory),
+                        inalogyAuthenticatorTransactionTemplate.getObject(),
+                        inalogyAuthenticatorAccountCipherExecutor, inalogyAuthenticatorScratchCodesCipherExecutor,
+                        inalogyAuthenticatorInstance);
+            }
             if (inalogyMfaProperties.getJson().getLocation() != null) {
-                return new JsonInalogyAuthenticatorTokenCredentialRepository(inalogyMfaProperties.getJson().getLocation(),
+                return new JsonInalogyAuthenticatorTokenCredentialRepository(inalogyMfaProperties.getJson(),
                         inalogyAuthenticatorInstance, inalogyAuthenticatorAccountCipherExecutor,
                         inalogyAuthenticatorScratchCodesCipherExecutor,
                         new OneTimeTokenAccountSerializer(applicationContext));
@@ -2,11 +2,23 @@ package cz.ami.cas.config;
 
 import com.hazelcast.core.HazelcastInstance;
 import cz.ami.cas.inauth.configuration.mfa.InalogyAuthenticatorMultifactorProperties;
+import cz.ami.cas.inauth.hazelcast.local.InalogyMfaRequestLocalMap;
+import cz.ami.cas.inauth.hazelcast.local.InalogyRateLimiterLocal;
+import cz.ami.cas.inauth.hazelcast.local.InalogyRegRequestLocalMap;
 import cz.ami.cas.inauth.hazelcast.mfa.InalogyMfaRequestHazelcastMap;
+import cz.ami.cas.inauth.hazelcast.mfa.InalogyTimedMfaRequestMap;
 import cz.ami.cas.inauth.hazelcast.mfa.MfaRequestMap;
+import cz.ami.cas.inauth.hazelcast.outbox.InalogyPushOutbox;
+import cz.ami.cas.inauth.hazelcast.ratelimit.InalogyRateLimiter;
+import cz.ami.cas.inauth.hazelcast.ratelimit.InalogyRateLimiterHazelcast;
 import cz.ami.cas.inauth.hazelcast.registration.InalogyRegRequestHazelcastMap;
+import cz.ami.cas.inauth.hazelcast.registration.InalogyTimedRegistrationRequestMap;
 import cz.ami.cas.inauth.hazelcast.registration.RegistrationRequestMap;
+import cz.ami.cas.inauth.service.InalogyAdmissionControl;
+import cz.ami.cas.inauth.service.InalogyMessagingService;
 import cz.ami.cas.inauth.web.flow.InalogyAuthenticatorMultifactorWebflowConfigurer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import lombok.val;
 import org.apereo.cas.configuration.CasConfigurationProperties;
 import org.apereo.cas.web.flow.CasWebflowConfigurer;
@@ -16,6 +28,7 @@ import org.apereo.cas.web.flow.util.MultifactorAuthenticationWebflowUtils;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.context.config.annotation.RefreshScope;
 import org.springframework.context.ConfigurableApplicationContext;
@@ -81,23 +94,106 @@ public class InalogyAuthenticatorConfiguration {
 
     @Bean( MfaRequestMap.BEAN_NAME)
     @RefreshScope
+    @ConditionalOnProperty(prefix = "ami.inalogy.mfa.core.request-map", name = "type", havingValue = "hazelcast", matchIfMissing = true)
     @ConditionalOnMissingBean(name = InalogyMfaRequestHazelcastMap.BEAN_NAME)
     public MfaRequestMap inalogyMfaRequestMap(
             @Qualifier("casTicketRegistryHazelcastInstance")
             final ObjectProvider<HazelcastInstance> casTicketRegistryHazelcastInstance,
             final CasConfigurationProperties casProperties,
-            final InalogyAuthenticatorMultifactorProperties inalogyMfaProperties) {
-        return new InalogyMfaRequestHazelcastMap(casTicketRegistryHazelcastInstance.getObject(), casProperties, inalogyMfaProperties.getCore());
+            final InalogyAuthenticatorMultifactorProperties inalogyMfaProperties,
+            final ObjectProvider<MeterRegistry> meterRegistry) {
+        val registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+        return timed(new InalogyMfaRequestHazelcastMap(casTicketRegistryHazelcastInstance.getObject(), casProperties,
+                inalogyMfaProperties.getCore(), registry), inalogyMfaProperties, registry);
     }
 
     @Bean( RegistrationRequestMap.BEAN_NAME)
     @RefreshScope
+    @ConditionalOnProperty(prefix = "ami.inalogy.mfa.core.request-map", name = "type", havingValue = "hazelcast", matchIfMissing = true)
     @ConditionalOnMissingBean(name = InalogyRegRequestHazelcastMap.BEAN_NAME)
     public RegistrationRequestMap inalogyRegRequestMap(
+            @Qualifier("casTicketRegistryHazelcastInstance")
+            final ObjectProvider<HazelcastInstance> casTicketRegistryHazelcastInstance,
+            final CasConfigurationProperties casProperties,
+            final InalogyAuthenticatorMultifactorProperties inalogyMfaProperties,
+            final ObjectProvider<MeterRegistry> meterRegistry) {
+        val registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+        return timed(new InalogyRegRequestHazelcastMap(casTicketRegistryHazelcastInstance.getObject(), casProperties,
+                inalogyMfaProperties.getCore(), registry), inalogyMfaProperties, registry);
+    }
+
+    // Not refresh-scoped: a refresh would drop the pending requests held in memory
+    @Bean(MfaRequestMap.BEAN_NAME)
+    @ConditionalOnProperty(prefix = "ami.inalogy.mfa.core.request-map", name = "type", havingValue = "local")
+    @ConditionalOnMissingBean(name = MfaRequestMap.BEAN_NAME)
+    public MfaRequestMap inalogyMfaRequestLocalMap(final InalogyAuthenticatorMultifactorProperties inalogyMfaProperties,
+                                                   final ObjectProvider<MeterRegistry> meterRegistry) {
+        val registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+        return timed(new InalogyMfaRequestLocalMap(inalogyMfaProperties.getCore().getRequestMap(), registry),
+                inalogyMfaProperties, registry);
+    }
+
+    @Bean(RegistrationRequestMap.BEAN_NAME)
+    @ConditionalOnProperty(prefix = "ami.inalogy.mfa.core.request-map", name = "type", havingValue = "local")
+    @ConditionalOnMissingBean(name = RegistrationRequestMap.BEAN_NAME)
+    public RegistrationRequestMap inalogyRegRequestLocalMap(final InalogyAuthenticatorMultifactorProperties inalogyMfaProperties,
+                                                            final ObjectProvider<MeterRegistry> meterRegistry) {
+        val registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+        return timed(new InalogyRegRequestLocalMap(inalogyMfaProperties.getCore().getRequestMap(),
+                        inalogyMfaProperties.getCore().getMetrics(), registry),
+                inalogyMfaProperties, registry);
+    }
+
+    @Bean(InalogyRateLimiter.BEAN_NAME)
+    @RefreshScope
+    @ConditionalOnProperty(prefix = "ami.inalogy.mfa.core.request-map", name = "type", havingValue = "hazelcast", matchIfMissing = true)
+    @ConditionalOnMissingBean(name = InalogyRateLimiter.BEAN_NAME)
+    public InalogyRateLimiter inalogyRateLimiter(
             @Qualifier("casTicketRegistryHazelcastInstance")
             final ObjectProvider<HazelcastInstance> casTicketRegistryHazelcastInstance,
             final CasConfigurationProperties casProperties,
             final InalogyAuthenticatorMultifactorProperties inalogyMfaProperties) {
-        return new InalogyRegRequestHazelcastMap(casTicketRegistryHazelcastInstance.getObject(), casProperties, inalogyMfaProperties.getCore());
+        return new InalogyRateLimiterHazelcast(casTicketRegistryHazelcastInstance.getObject(), casProperties,
+                InalogyAdmissionControl.maxIdleSeconds(inalogyMfaProperties.getCore().getRateLimit()));
+    }
+
+    // Not refresh-scoped: a refresh would reset the buckets held in memory
+    @Bean(InalogyRateLimiter.BEAN_NAME)
+    @ConditionalOnProperty(prefix = "ami.inalogy.mfa.core.request-map", name = "type", havingValue = "local")
+    @ConditionalOnMissingBean(name = InalogyRateLimiter.BEAN_NAME)
+    public InalogyRateLimiter inalogyRateLimiterLocal(final InalogyAuthenticatorMultifactorProperties inalogyMfaProperties) {
+        return new InalogyRateLimiterLocal(InalogyAdmissionControl.maxIdleSeconds(inalogyMfaProperties.getCore().getRateLimit()));
+    }
+
+    @Bean(InalogyPushOutbox.BEAN_NAME)
+    @RefreshScope
+    @ConditionalOnProperty(prefix = "ami.inalogy.mfa.messaging-service.outbox", name = "enabled", havingValue = "true")
+    @ConditionalOnMissingBean(name = InalogyPushOutbox.BEAN_NAME)
+    public InalogyPushOutbox inalogyPushOutbox(
+            @Qualifier("casTicketRegistryHazelcastInstance")
+            final ObjectProvider<HazelcastInstance> casTicketRegistryHazelcastInstance,
+            final CasConfigurationProperties casProperties,
+            final InalogyAuthenticatorMultifactorProperties inalogyMfaProperties,
+            @Qualifier("inalogyMessagingService")
+            final InalogyMessagingService messagingService,
+            @Qualifier(MfaRequestMap.BEAN_NAME)
+            final MfaRequestMap mfaRequestMap,
+            final ObjectProvider<MeterRegistry> meterRegistry) {
+        return new InalogyPushOutbox(casTicketRegistryHazelcastInstance.getObject(), casProperties,
+                inalogyMfaProperties.getMessagingService(), inalogyMfaProperties.getCore().getTimeoutMs(),
+                messagingService, mfaRequestMap, meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    private static MfaRequestMap timed(final MfaRequestMap map, final InalogyAuthenticatorMultifactorProperties inalogyMfaProperties,
+                                       final MeterRegistry meterRegistry) {
+        val metrics = inalogyMfaProperties.getCore().getMetrics();
+        return metrics.isEnabled() ? new InalogyTimedMfaRequestMap(map, metrics, meterRegistry) : map;
+    }
+
+    private static RegistrationRequestMap timed(final RegistrationRequestMap map,
+                                                final InalogyAuthenticatorMultifactorProperties inalogyMfaProperties,
+                                                final MeterRegistry meterRegistry) {
+        val metrics = inalogyMfaProperties.getCore().getMetrics();
+        return metrics.isEnabled() ? new InalogyTimedRegistrationRequestMap(map, metrics, meterRegistry) : map;
     }
 }
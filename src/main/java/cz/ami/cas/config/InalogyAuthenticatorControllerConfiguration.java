@@ -3,9 +3,17 @@ package cz.ami.cas.config;
 import cz.ami.cas.inauth.configuration.mfa.InalogyAuthenticatorMultifactorProperties;
 import cz.ami.cas.inauth.service.IInalogyAuthenticator;
 import cz.ami.cas.inauth.controller.InalogyAuthenticatorController;
+import cz.ami.cas.inauth.hazelcast.mfa.MfaRequestMap;
+import cz.ami.cas.inauth.hazelcast.ratelimit.InalogyRateLimiter;
+import cz.ami.cas.inauth.hazelcast.registration.RegistrationRequestMap;
+import cz.ami.cas.inauth.service.InalogyAdmissionControl;
+import cz.ami.cas.inauth.service.InalogyPushStatusNotifier;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apereo.cas.web.CasWebSecurityConfigurer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -42,17 +50,48 @@ public class InalogyAuthenticatorControllerConfiguration {
                 val checkLoginStatus = "/inalogy/check/login";
                 val checkRegistrationStatus = "/inalogy/check/registration";
                 val qrRedirect = "/inalogy/qr-redirect";
-                return List.of(submit, terminate, validate, pushIdChange, checkLoginStatus, checkRegistrationStatus, qrRedirect);
+                val streamLoginStatus = "/inalogy/stream/login";
+                val streamRegistrationStatus = "/inalogy/stream/registration";
+                val waitLoginStatus = "/inalogy/wait/login";
+                val waitRegistrationStatus = "/inalogy/wait/registration";
+                return List.of(submit, terminate, validate, pushIdChange, checkLoginStatus, checkRegistrationStatus, qrRedirect,
+                        streamLoginStatus, streamRegistrationStatus, waitLoginStatus, waitRegistrationStatus);
             }
         };
     }
 
+    @Bean
+    @ConditionalOnMissingBean(name = InalogyPushStatusNotifier.BEAN_NAME)
+    public InalogyPushStatusNotifier inalogyPushStatusNotifier(
+            @Qualifier(MfaRequestMap.BEAN_NAME)
+            final MfaRequestMap mfaRequestMap,
+            @Qualifier(RegistrationRequestMap.BEAN_NAME)
+            final RegistrationRequestMap registrationRequestMap) {
+        return new InalogyPushStatusNotifier(mfaRequestMap, registrationRequestMap);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(name = InalogyAdmissionControl.BEAN_NAME)
+    public InalogyAdmissionControl inalogyAdmissionControl(
+            final InalogyAuthenticatorMultifactorProperties multifactorProperties,
+            @Qualifier(InalogyRateLimiter.BEAN_NAME)
+            final InalogyRateLimiter inalogyRateLimiter,
+            final ObjectProvider<MeterRegistry> meterRegistry) {
+        return new InalogyAdmissionControl(inalogyRateLimiter, multifactorProperties.getCore().getRateLimit(),
+                meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
     @Bean
     @ConditionalOnMissingBean(name = "inalogyAuthenticatorController")
     public InalogyAuthenticatorController inalogyAuthenticatorController(
             final InalogyAuthenticatorMultifactorProperties multifactorProperties,
             @Qualifier("inalogyAuthenticatorInstance")
-            final IInalogyAuthenticator inalogyAuthenticatorInstance) {
-        return new InalogyAuthenticatorController(inalogyAuthenticatorInstance, multifactorProperties.getDownload());
+            final IInalogyAuthenticator inalogyAuthenticatorInstance,
+            @Qualifier(InalogyPushStatusNotifier.BEAN_NAME)
+            final InalogyPushStatusNotifier inalogyPushStatusNotifier,
+            @Qualifier(InalogyAdmissionControl.BEAN_NAME)
+            final InalogyAdmissionControl inalogyAdmissionControl) {
+        return new InalogyAuthenticatorController(inalogyAuthenticatorInstance, multifactorProperties.getDownload(),
+                inalogyPushStatusNotifier, multifactorProperties.getCore().getStatusWaitTimeoutMs(), inalogyAdmissionControl);
     }
 }
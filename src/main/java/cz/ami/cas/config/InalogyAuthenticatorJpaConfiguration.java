@@ -0,0 +1,112 @@
+package cz.ami.cas.config;
+
+import cz.ami.cas.inauth.configuration.mfa.InalogyAuthenticatorMultifactorProperties;
+import cz.ami.cas.inauth.credential.repository.jpa.JpaInalogyAuthenticatorAccount;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.val;
+import org.apereo.cas.configuration.CasConfigurationProperties;
+import org.apereo.cas.configuration.support.JpaBeans;
+import org.apereo.cas.jpa.JpaBeanFactory;
+import org.apereo.cas.jpa.JpaConfigurationContext;
+import org.apereo.cas.util.CollectionUtils;
+import org.apereo.cas.util.spring.beans.BeanContainer;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.JpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+/**
+ * This is {@link InalogyAuthenticatorJpaConfiguration}.
+ * Database infrastructure of the JPA account registry, active when
+ * {@code ami.inalogy.mfa.jpa.enabled} is set.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@EnableConfigurationProperties(InalogyAuthenticatorMultifactorProperties.class)
+@ConditionalOnProperty(prefix = "ami.inalogy.mfa.jpa", name = "enabled", havingValue = "true")
+@Configuration(value = "InalogyAuthenticatorJpaConfiguration", proxyBeanMethods = false)
+public class InalogyAuthenticatorJpaConfiguration {
+
+    /**
+     * Entity manager factory bean name.
+     */
+    public static final String ENTITY_MANAGER_FACTORY_BEAN_NAME = "inalogyAuthenticatorEntityManagerFactory";
+
+    /**
+     * Transaction template bean name.
+     */
+    public static final String TRANSACTION_TEMPLATE_BEAN_NAME = "inalogyAuthenticatorTransactionTemplate";
+
+    private static final String PERSISTENCE_UNIT_NAME = "jpaInalogyAuthenticatorContext";
+
+    @Bean
+    @ConditionalOnMissingBean(name = "jpaInalogyAuthenticatorVendorAdapter")
+    public JpaVendorAdapter jpaInalogyAuthenticatorVendorAdapter(
+            final CasConfigurationProperties casProperties,
+            @Qualifier(JpaBeanFactory.DEFAULT_BEAN_NAME)
+            final JpaBeanFactory jpaBeanFactory) {
+        return jpaBeanFactory.newJpaVendorAdapter(casProperties.getJdbc());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(name = "dataSourceInalogyAuthenticator")
+    public DataSource dataSourceInalogyAuthenticator(final InalogyAuthenticatorMultifactorProperties inalogyMfaProperties) {
+        return JpaBeans.newDataSource(inalogyMfaProperties.getJpa());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(name = "jpaPackagesToScanInalogyAuthenticator")
+    public BeanContainer<String> jpaPackagesToScanInalogyAuthenticator() {
+        return BeanContainer.of(CollectionUtils.wrapSet(JpaInalogyAuthenticatorAccount.class.getPackage().getName()));
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(name = ENTITY_MANAGER_FACTORY_BEAN_NAME)
+    public FactoryBean<EntityManagerFactory> inalogyAuthenticatorEntityManagerFactory(
+            final InalogyAuthenticatorMultifactorProperties inalogyMfaProperties,
+            @Qualifier("jpaInalogyAuthenticatorVendorAdapter")
+            final JpaVendorAdapter jpaInalogyAuthenticatorVendorAdapter,
+            @Qualifier("dataSourceInalogyAuthenticator")
+            final DataSource dataSourceInalogyAuthenticator,
+            @Qualifier("jpaPackagesToScanInalogyAuthenticator")
+            final BeanContainer<String> jpaPackagesToScanInalogyAuthenticator,
+            @Qualifier(JpaBeanFactory.DEFAULT_BEAN_NAME)
+            final JpaBeanFactory jpaBeanFactory) {
+        val ctx = JpaConfigurationContext.builder()
+                .dataSource(dataSourceInalogyAuthenticator)
+                .packagesToScan(jpaPackagesToScanInalogyAuthenticator.toSet())
+                .persistenceUnitName(PERSISTENCE_UNIT_NAME)
+                .jpaVendorAdapter(jpaInalogyAuthenticatorVendorAdapter)
+                .build();
+        return jpaBeanFactory.newEntityManagerFactoryBean(ctx, inalogyMfaProperties.getJpa());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(name = "transactionManagerInalogyAuthenticator")
+    public PlatformTransactionManager transactionManagerInalogyAuthenticator(
+            @Qualifier(ENTITY_MANAGER_FACTORY_BEAN_NAME)
+            final EntityManagerFactory emf) {
+        val manager = new JpaTransactionManager();
+        manager.setEntityManagerFactory(emf);
+        return manager;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(name = TRANSACTION_TEMPLATE_BEAN_NAME)
+    public TransactionOperations inalogyAuthenticatorTransactionTemplate(
+            @Qualifier("transactionManagerInalogyAuthenticator")
+            final PlatformTransactionManager transactionManagerInalogyAuthenticator) {
+        return new TransactionTemplate(transactionManagerInalogyAuthenticator);
+    }
+}
@@ -1,6 +1,7 @@
 package cz.ami.cas.inauth.configuration.mfa;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import cz.ami.cas.inauth.authenticator.model.key.KeyRepresentation;
 import lombok.Getter;
 import lombok.Setter;
@@ -10,6 +11,7 @@ import org.springframework.boot.context.properties.NestedConfigurationProperty;
 
 import java.io.Serial;
 import java.io.Serializable;
+import java.time.Clock;
 
 import static cz.ami.cas.inauth.authenticator.model.key.KeyRepresentation.*;
 
@@ -93,6 +95,21 @@ public class CoreInalogyMultifactorProperties implements Serializable {
      */
     private long timeStepSize = 30;
 
+    /**
+     * When enabled, OTP codes are generated and verified using the original
+     * string-based implementation instead of the allocation-free engine.
+     * Intended only for compatibility checks and benchmarking.
+     */
+    private boolean legacyOtpVerification;
+
+    /**
+     * Time source used to compute the current TOTP time step.
+     * Not bound from configuration; replace it programmatically to freeze
+     * or advance time in tests and benchmarks.
+     */
+    @JsonIgnore
+    private transient Clock clock = Clock.systemUTC();
+
     /**
      * When enabled, allows the user/system to accept multiple accounts
      * and device registrations per user, allowing one to switch between
@@ -100,6 +117,12 @@ public class CoreInalogyMultifactorProperties implements Serializable {
      */
     private boolean multipleDeviceRegistrationEnabled;
 
+    /**
+     * When enabled, the push challenge is sent to every push-capable device of the user in parallel.
+     * The first device to answer decides the login; the others are no longer pending.
+     */
+    private boolean pushFanOutEnabled;
+
     /**
      * When enabled, allows the user/system to register accounts
      * and devices.
@@ -115,7 +138,71 @@ public class CoreInalogyMultifactorProperties implements Serializable {
 
     private int timeoutMs = 40000;
 
+    /**
+     * Maximum time in milliseconds a status stream or long-poll request is held open
+     * before the browser has to reconnect.
+     */
+    private long statusWaitTimeoutMs = 25000;
+
+    /**
+     * Time in milliseconds after a push was sent during which a repeated initiation of the same login flow
+     * reuses the pending request and its challenge instead of sending another push. Zero disables coalescing.
+     */
+    private long pushCoalesceWindowMs;
+
+    /**
+     * Per-device clock-drift tracking settings.
+     */
+    @NestedConfigurationProperty
+    private InalogyClockDriftProperties drift = new InalogyClockDriftProperties();
+
+    /**
+     * Per-account HMAC key cache settings.
+     */
+    @NestedConfigurationProperty
+    private InalogyHmacKeyCacheProperties hmacKeyCache = new InalogyHmacKeyCacheProperties();
+
+    /**
+     * Pool of pre-generated registration key material.
+     */
+    @NestedConfigurationProperty
+    private InalogyKeyPoolProperties keyPool = new InalogyKeyPoolProperties();
+
+    /**
+     * Near cache in front of the MFA and registration request maps.
+     */
+    @NestedConfigurationProperty
+    private InalogyNearCacheProperties nearCache = new InalogyNearCacheProperties();
+
+    /**
+     * Storage of the MFA and registration request maps.
+     */
+    @NestedConfigurationProperty
+    private InalogyRequestMapProperties requestMap = new InalogyRequestMapProperties();
+
+    /**
+     * Rate limiting of the device endpoints.
+     */
+    @NestedConfigurationProperty
+    private InalogyRateLimitProperties rateLimit = new InalogyRateLimitProperties();
+
+    /**
+     * Timers of the authenticator operations and the request maps.
+     */
+    @NestedConfigurationProperty
+    private InalogyMetricsProperties metrics = new InalogyMetricsProperties();
+
     @NestedConfigurationProperty
     private InalogyAuthenticatorMultifactorScratchCodeProperties scratchCodes =
             new InalogyAuthenticatorMultifactorScratchCodeProperties();
+
+    /**
+     * Returns the time source, falling back to the system UTC clock
+     * when the properties were deserialized and the transient clock was lost.
+     *
+     * @return the clock used to compute TOTP time steps
+     */
+    public Clock getClock() {
+        return clock != null ? clock : Clock.systemUTC();
+    }
 }
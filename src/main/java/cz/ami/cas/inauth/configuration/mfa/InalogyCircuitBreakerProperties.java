@@ -0,0 +1,50 @@
+package cz.ami.cas.inauth.configuration.mfa;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Configuration properties for the circuit breaker in front of the messaging service.
+ * Once the failure rate over the recent calls crosses the threshold, pushes fail immediately
+ * until the open period elapses, after which a single trial call decides whether to close again.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@Setter
+@Accessors(chain = true)
+public class InalogyCircuitBreakerProperties implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = -6620419185630147245L;
+
+    /**
+     * Whether the circuit breaker is active.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Number of most recent calls the failure rate is computed over.
+     */
+    private int slidingWindowSize = 50;
+
+    /**
+     * Minimum number of recorded calls before the failure rate is evaluated.
+     */
+    private int minimumNumberOfCalls = 20;
+
+    /**
+     * Failure rate in percent at or above which the breaker opens.
+     */
+    private int failureRateThreshold = 50;
+
+    /**
+     * Time in milliseconds the breaker stays open before a trial call is let through.
+     */
+    private long openDurationMs = 30000;
+}
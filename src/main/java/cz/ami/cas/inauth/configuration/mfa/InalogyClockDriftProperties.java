@@ -0,0 +1,46 @@
+package cz.ami.cas.inauth.configuration.mfa;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Configuration properties for per-device clock-drift tracking.
+ * The time step offset of the last successful validation is remembered per account
+ * and checked first, so devices that are consistently off do not pay for the whole window.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@Setter
+@Accessors(chain = true)
+public class InalogyClockDriftProperties implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 3356207734291854410L;
+
+    /**
+     * Whether the last successful time step offset should be tracked per account.
+     */
+    private boolean enabled = true;
+
+    /**
+     * When enabled, only a narrow window around the last known offset is checked first;
+     * the full window is scanned only when the narrow window does not match.
+     */
+    private boolean narrowWindowEnabled;
+
+    /**
+     * Number of steps on each side of the last known offset checked in the narrow window.
+     */
+    private int narrowWindowSize = 1;
+
+    /**
+     * Maximum number of accounts whose offset is remembered.
+     */
+    private long maximumTrackedAccounts = 100_000;
+}
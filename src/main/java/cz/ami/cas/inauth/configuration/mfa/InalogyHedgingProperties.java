@@ -0,0 +1,42 @@
+package cz.ami.cas.inauth.configuration.mfa;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Configuration properties for hedged push requests. When an attempt has not been answered
+ * within the configured latency percentile of recent calls, a second identical request is sent
+ * and the first successful answer wins. The hedge counts against {@code maxInFlight} and the circuit
+ * breaker like any request and is skipped when either refuses it. The device may then receive
+ * the push twice, so hedging is opt-in.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@Setter
+@Accessors(chain = true)
+public class InalogyHedgingProperties implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 2395017466102843318L;
+
+    /**
+     * Whether hedged requests are sent.
+     */
+    private boolean enabled;
+
+    /**
+     * Latency percentile of recent calls after which the hedged request is sent, between 0 and 100.
+     */
+    private double percentile = 95;
+
+    /**
+     * Lower bound of the hedging delay in milliseconds, used also until enough latencies are recorded.
+     */
+    private long minDelayMs = 200;
+}
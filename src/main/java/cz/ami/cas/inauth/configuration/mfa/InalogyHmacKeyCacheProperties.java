@@ -0,0 +1,35 @@
+package cz.ami.cas.inauth.configuration.mfa;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Configuration properties for the per-account HMAC key cache.
+ * Each cached entry holds an HMAC instance already initialised with the account secret,
+ * which is cloned for every validation instead of decoding the secret and re-keying.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@Setter
+@Accessors(chain = true)
+public class InalogyHmacKeyCacheProperties implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = -2231960472810937725L;
+
+    /**
+     * Whether keyed HMAC instances should be cached per account.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Maximum number of accounts whose keyed HMAC instance is cached.
+     */
+    private long maximumSize = 10_000;
+}
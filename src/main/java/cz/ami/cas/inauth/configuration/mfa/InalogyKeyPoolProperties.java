@@ -0,0 +1,40 @@
+package cz.ami.cas.inauth.configuration.mfa;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Configuration properties for the pool of pre-generated registration key material.
+ * A background thread keeps the pool topped up, so that registration bursts do not
+ * generate secrets and scratch codes on the webflow threads.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@Setter
+@Accessors(chain = true)
+public class InalogyKeyPoolProperties implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 5412830906871233154L;
+
+    /**
+     * Whether registration key material should be taken from a pre-generated pool.
+     */
+    private boolean enabled;
+
+    /**
+     * Maximum number of pre-generated keys held in the pool.
+     */
+    private int capacity = 500;
+
+    /**
+     * Delay in milliseconds between two refills of the pool.
+     */
+    private long refillIntervalMs = 1000;
+}
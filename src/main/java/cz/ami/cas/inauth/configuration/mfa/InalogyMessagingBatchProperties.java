@@ -0,0 +1,48 @@
+package cz.ami.cas.inauth.configuration.mfa;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Configuration properties for micro-batching of push notifications.
+ * Pushes are collected for a short time or until the batch is full and then sent together,
+ * as one request to the batch endpoint when configured, or as concurrent requests over the
+ * shared connection otherwise.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@Setter
+@Accessors(chain = true)
+public class InalogyMessagingBatchProperties implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = -1887316409253361520L;
+
+    /**
+     * Whether pushes are batched.
+     */
+    private boolean enabled;
+
+    /**
+     * URL of the batch endpoint of the messaging API. It receives a JSON array of pushes and answers
+     * with a JSON array of per-push status codes in the same order, or with {@code 204} when all were accepted.
+     * When empty, a batch is sent as concurrent single requests.
+     */
+    private String batchUrl;
+
+    /**
+     * Maximum number of pushes in one batch; a full batch is sent right away.
+     */
+    private int maxBatchSize = 50;
+
+    /**
+     * Maximum time in milliseconds the first push of a batch waits for more pushes.
+     */
+    private long maxDelayMs = 20;
+}
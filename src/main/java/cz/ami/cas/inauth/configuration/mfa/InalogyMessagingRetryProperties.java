@@ -0,0 +1,40 @@
+package cz.ami.cas.inauth.configuration.mfa;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Configuration properties for retrying failed push requests to the messaging service.
+ * Connection errors, timeouts and {@code 429}/{@code 5xx} answers are retried with exponential
+ * backoff and full jitter, so members retrying after the same outage do not hit the service in lockstep.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@Setter
+@Accessors(chain = true)
+public class InalogyMessagingRetryProperties implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 4471502963187250311L;
+
+    /**
+     * Maximum number of attempts per push, including the first one. One disables retries.
+     */
+    private int maxAttempts = 3;
+
+    /**
+     * Base backoff in milliseconds; the ceiling doubles with every retry.
+     */
+    private long initialBackoffMs = 100;
+
+    /**
+     * Upper bound of the backoff ceiling in milliseconds.
+     */
+    private long maxBackoffMs = 2000;
+}
@@ -4,6 +4,7 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.apereo.cas.configuration.support.RequiredProperty;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
 
 /**
  * Configuration properties for the Inalogy messaging service.
@@ -30,4 +31,61 @@ public class InalogyMessagingServiceProperties {
      */
     @RequiredProperty
     private String apiKey;
+
+    /**
+     * Maximum time in milliseconds to establish a connection to the messaging service.
+     */
+    private long connectTimeoutMs = 5000;
+
+    /**
+     * Maximum time in milliseconds to wait for the messaging service to answer a push request.
+     */
+    private long requestTimeoutMs = 10000;
+
+    /**
+     * When enabled, push notifications are dispatched without blocking the login request;
+     * the waiting page is rendered right away and a failed dispatch rejects the MFA request.
+     */
+    private boolean asyncEnabled;
+
+    /**
+     * Maximum number of push requests in flight to the messaging service at the same time.
+     */
+    private int maxInFlight = 200;
+
+    /**
+     * Maximum time in milliseconds a dispatch waits for a free in-flight slot before it is failed.
+     * Zero fails immediately when the limit is reached. The wait does not block the calling thread.
+     */
+    private long acquireTimeoutMs = 1000;
+
+    /**
+     * Retry of failed push requests.
+     */
+    @NestedConfigurationProperty
+    private InalogyMessagingRetryProperties retry = new InalogyMessagingRetryProperties();
+
+    /**
+     * Circuit breaker in front of the messaging service.
+     */
+    @NestedConfigurationProperty
+    private InalogyCircuitBreakerProperties circuitBreaker = new InalogyCircuitBreakerProperties();
+
+    /**
+     * Hedged push requests.
+     */
+    @NestedConfigurationProperty
+    private InalogyHedgingProperties hedging = new InalogyHedgingProperties();
+
+    /**
+     * Micro-batching of push notifications.
+     */
+    @NestedConfigurationProperty
+    private InalogyMessagingBatchProperties batch = new InalogyMessagingBatchProperties();
+
+    /**
+     * Durable outbox the pushes are delivered from.
+     */
+    @NestedConfigurationProperty
+    private InalogyPushOutboxProperties outbox = new InalogyPushOutboxProperties();
 }
@@ -0,0 +1,41 @@
+package cz.ami.cas.inauth.configuration.mfa;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Configuration properties for the timers of the authenticator operations and the request maps.
+ * The timers are published to the CAS meter registry and exported through the actuator endpoints.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@Setter
+@Accessors(chain = true)
+public class InalogyMetricsProperties implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = -6022417364893525170L;
+
+    /**
+     * Whether the authenticator operations and the request map operations are timed.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Whether the timers publish a percentile histogram, so percentiles can be aggregated across nodes.
+     */
+    private boolean percentileHistogram = true;
+
+    /**
+     * Interval in milliseconds at which the secret mappings of the registration map are checked
+     * for the orphaned index entries gauge. The check reads every mapping owned by the member and its request,
+     * so it runs in the background and the gauge reports the last result. Zero disables the check.
+     */
+    private long indexScanIntervalMs = 60000;
+}
@@ -0,0 +1,51 @@
+package cz.ami.cas.inauth.configuration.mfa;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Configuration properties for the Hazelcast near cache in front of the MFA and registration request maps.
+ * The near cache keeps recently read requests on the polling member and is invalidated by the cluster
+ * whenever the owning member changes the entry, so status polls for unchanged requests stay local.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@Setter
+@Accessors(chain = true)
+public class InalogyNearCacheProperties implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = -3104872236521970165L;
+
+    /**
+     * Whether the request maps should be fronted by a near cache.
+     */
+    private boolean enabled;
+
+    /**
+     * Maximum number of entries held in the near cache of each map.
+     */
+    private int maxSize = 10_000;
+
+    /**
+     * Maximum number of seconds an entry stays in the near cache; zero means it is kept until invalidated.
+     */
+    private int timeToLiveSeconds;
+
+    /**
+     * Maximum number of seconds an entry stays in the near cache without being read; zero disables idle eviction.
+     */
+    private int maxIdleSeconds;
+
+    /**
+     * In-memory format of near cache entries. {@code BINARY} deserializes a fresh copy on every read,
+     * which keeps callers that modify the returned request from altering the cached one.
+     */
+    private String inMemoryFormat = "BINARY";
+}
@@ -0,0 +1,52 @@
+package cz.ami.cas.inauth.configuration.mfa;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Configuration properties for the push outbox. Pushes are written to a replicated Hazelcast map
+ * and delivered by the member owning each entry, so a push survives the restart of the member that
+ * started the login and is redelivered while the messaging service is unavailable.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@Setter
+@Accessors(chain = true)
+public class InalogyPushOutboxProperties implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 7264039911518730542L;
+
+    /**
+     * Whether pushes are delivered through the outbox.
+     */
+    private boolean enabled;
+
+    /**
+     * Interval in milliseconds at which each member looks for owned pushes due for (re)delivery.
+     */
+    private long pollIntervalMs = 1000;
+
+    /**
+     * Time in milliseconds a delivery attempt holds a push; if the member dies meanwhile,
+     * the push is delivered again once the lease runs out. A lease shorter than a single delivery
+     * can take with the messaging service timeouts and retries is raised at startup.
+     */
+    private long leaseMs = 30000;
+
+    /**
+     * Delay in milliseconds before a failed push is attempted again.
+     */
+    private long retryDelayMs = 2000;
+
+    /**
+     * Maximum number of delivery attempts, after which the MFA request is rejected.
+     */
+    private int maxAttempts = 10;
+}
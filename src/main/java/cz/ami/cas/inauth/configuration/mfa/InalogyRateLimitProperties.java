@@ -0,0 +1,54 @@
+package cz.ami.cas.inauth.configuration.mfa;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Configuration properties for rate limiting of the device endpoints {@code /inalogy/submit}, {@code /validate},
+ * {@code /terminate} and {@code /push-id-change}. Each client IP address and each push ID or device key ID
+ * has a token bucket, the push ID of a push answer one per client IP address; a request without a token
+ * is answered with {@code 429} before any repository work. Disabled by default.
+ * Buckets are shared across the cluster, or kept in memory when {@code requestMap.type} is {@code local}.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@Setter
+@Accessors(chain = true)
+public class InalogyRateLimitProperties implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 3360512748107249975L;
+
+    /**
+     * Whether the device endpoints are rate limited. Behind a reverse proxy the client address header
+     * of CAS must be configured first, or all clients share the bucket of the proxy.
+     */
+    private boolean enabled;
+
+    /**
+     * Maximum burst of requests from one client IP address.
+     */
+    private long ipCapacity = 60;
+
+    /**
+     * Sustained rate of requests per second from one client IP address.
+     */
+    private double ipRefillPerSecond = 10;
+
+    /**
+     * Maximum burst of requests for one push ID or device key ID; for one push ID and client IP address on
+     * {@code /validate} and {@code /terminate}.
+     */
+    private long deviceCapacity = 10;
+
+    /**
+     * Sustained rate of requests per second for one push ID or device key ID.
+     */
+    private double deviceRefillPerSecond = 1;
+}
@@ -0,0 +1,40 @@
+package cz.ami.cas.inauth.configuration.mfa;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Configuration properties selecting the storage of MFA and registration requests.
+ * {@code hazelcast} shares the requests across the cluster through the CAS ticket registry member;
+ * {@code local} keeps them in memory of this node, which is sufficient for single-node deployments.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@Setter
+@Accessors(chain = true)
+public class InalogyRequestMapProperties implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 5516093284418307761L;
+
+    /**
+     * Storage of the request maps, {@code hazelcast} or {@code local}.
+     */
+    private String type = "hazelcast";
+
+    /**
+     * Resolution in milliseconds of the timing wheel expiring local requests.
+     */
+    private long tickMs = 100;
+
+    /**
+     * Number of buckets of the timing wheel expiring local requests.
+     */
+    private int wheelSize = 512;
+}
@@ -13,4 +13,16 @@ import java.io.Serial;
 public class JsonInalogyAuthenticatorMultifactorProperties extends SpringResourceProperties {
     @Serial
     private static final long serialVersionUID = -2689792609544442618L;
+
+    /**
+     * When enabled, account mutations are appended as small records to a journal file
+     * ({@code <location>.journal}) instead of rewriting the whole JSON file on every change.
+     * The journal is folded into the JSON file periodically and replayed on startup.
+     */
+    private boolean journalEnabled;
+
+    /**
+     * Interval in milliseconds between two compactions of the journal into the JSON file.
+     */
+    private long compactionIntervalMs = 60_000;
 }
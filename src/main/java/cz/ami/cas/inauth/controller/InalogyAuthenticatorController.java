@@ -1,21 +1,35 @@
 package cz.ami.cas.inauth.controller;
 
+import cz.ami.cas.inauth.authenticator.model.push.PushAuthenticationStatus;
+import cz.ami.cas.inauth.authenticator.model.push.PushRegistrationStatus;
 import cz.ami.cas.inauth.configuration.mfa.InalogyAuthenticatorDownloadProperties;
 import cz.ami.cas.inauth.service.IInalogyAuthenticator;
+import cz.ami.cas.inauth.service.InalogyAdmissionControl;
 import cz.ami.cas.inauth.authenticator.model.push.ValidationResult;
+import cz.ami.cas.inauth.service.InalogyPushStatusNotifier;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apereo.inspektr.common.web.ClientInfoHolder;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * This is {@link InalogyAuthenticatorController}.
@@ -35,6 +49,12 @@ public class InalogyAuthenticatorController {
 
     private final InalogyAuthenticatorDownloadProperties downloadProperties;
 
+    private final InalogyPushStatusNotifier statusNotifier;
+
+    private final long statusWaitTimeoutMs;
+
+    private final InalogyAdmissionControl admissionControl;
+
     /**
      * Request body for device registration.
      */
@@ -110,6 +130,103 @@ public class InalogyAuthenticatorController {
         return ResponseEntity.ok(Map.of("status", status.name()));
     }
 
+    /**
+     * Streams the final status of a push authentication as a single server-sent event.
+     * The stream is completed as soon as the request leaves {@code PENDING}; if it is still pending
+     * when the wait timeout elapses, the stream is closed and the browser reconnects.
+     *
+     * @param pushId The push ID of the device
+     * @return the event stream
+     */
+    @GetMapping(value = "/stream/login", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamLoginStatus(@RequestParam("pushId") String pushId) {
+        LOGGER.debug("Received stream mfa login status request.");
+        return stream(callback -> statusNotifier.awaitLogin(pushId, callback),
+                () -> inalogyAuthenticator.checkCurrentPushAuthenticationStatus(pushId), PushAuthenticationStatus.PENDING);
+    }
+
+    /**
+     * Streams the final status of a push registration as a single server-sent event.
+     *
+     * @param requestId The registration request ID
+     * @return the event stream
+     */
+    @GetMapping(value = "/stream/registration", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamRegistrationStatus(@RequestParam("requestId") String requestId) {
+        LOGGER.debug("Received stream mfa registration status request.");
+        return stream(callback -> statusNotifier.awaitRegistration(requestId, callback),
+                () -> inalogyAuthenticator.checkPushRegistrationStatus(requestId), PushRegistrationStatus.PENDING);
+    }
+
+    /**
+     * Long-poll variant of {@link #checkLoginStatus(String)}: answers as soon as the push authentication
+     * leaves {@code PENDING}, or with the current status once the wait timeout elapses.
+     *
+     * @param pushId The push ID of the device
+     * @return the deferred status response
+     */
+    @GetMapping("/wait/login")
+    public DeferredResult<ResponseEntity<Map<String, String>>> waitLoginStatus(@RequestParam("pushId") String pushId) {
+        LOGGER.debug("Received wait mfa login status request.");
+        return await(callback -> statusNotifier.awaitLogin(pushId, callback),
+                () -> inalogyAuthenticator.checkCurrentPushAuthenticationStatus(pushId), PushAuthenticationStatus.PENDING);
+    }
+
+    /**
+     * Long-poll variant of {@link #checkRegistrationStatus(String)}.
+     *
+     * @param requestId The registration request ID
+     * @return the deferred status response
+     */
+    @GetMapping("/wait/registration")
+    public DeferredResult<ResponseEntity<Map<String, String>>> waitRegistrationStatus(@RequestParam("requestId") String requestId) {
+        LOGGER.debug("Received wait mfa registration status request.");
+        return await(callback -> statusNotifier.awaitRegistration(requestId, callback),
+                () -> inalogyAuthenticator.checkPushRegistrationStatus(requestId), PushRegistrationStatus.PENDING);
+    }
+
+    private SseEmitter stream(final Function<Consumer<String>, Runnable> subscription,
+                              final Supplier<? extends Enum<?>> currentStatus, final Enum<?> pending) {
+        val emitter = new SseEmitter(statusWaitTimeoutMs);
+        val done = new AtomicBoolean();
+        Consumer<String> send = status -> {
+            if (done.compareAndSet(false, true)) {
+                try {
+                    emitter.send(SseEmitter.event().name("status").data(Map.of("status", status), MediaType.APPLICATION_JSON));
+                    emitter.complete();
+                } catch (final Exception e) {
+                    emitter.completeWithError(e);
+                }
+            }
+        };
+        val cancel = subscription.apply(send);
+        emitter.onCompletion(cancel);
+        emitter.onTimeout(() -> {
+            cancel.run();
+            emitter.complete();
+        });
+        emitter.onError(__ -> cancel.run());
+        val status = currentStatus.get();
+        if (status != pending) {
+            send.accept(status.name());
+        }
+        return emitter;
+    }
+
+    private DeferredResult<ResponseEntity<Map<String, String>>> await(final Function<Consumer<String>, Runnable> subscription,
+                                                                     final Supplier<? extends Enum<?>> currentStatus,
+                                                                     final Enum<?> pending) {
+        val result = new DeferredResult<ResponseEntity<Map<String, String>>>(statusWaitTimeoutMs);
+        val cancel = subscription.apply(status -> result.setResult(ResponseEntity.ok(Map.of("status", status))));
+        result.onCompletion(cancel);
+        result.onTimeout(() -> result.setResult(ResponseEntity.ok(Map.of("status", currentStatus.get().name()))));
+        val status = currentStatus.get();
+        if (status != pending) {
+            result.setResult(ResponseEntity.ok(Map.of("status", status.name())));
+        }
+        return result;
+    }
+
     @GetMapping("/qr-redirect")
     public ResponseEntity<Void> checkQrRedirectStatus(HttpServletRequest request,
                                                       @RequestParam(required = false) String os) {
@@ -139,12 +256,17 @@ public class InalogyAuthenticatorController {
      * This endpoint is used during the initial setup of push authentication.
      *
      * @param request The submit mfa containing device information
+     * @param httpRequest The HTTP request, for the client address
      * @return ResponseEntity with no content if successful, or error response
      */
     @PostMapping("/submit")
-    public ResponseEntity<?> submit(@RequestBody SubmitRequest request) {
+    public ResponseEntity<?> submit(@RequestBody SubmitRequest request, HttpServletRequest httpRequest) {
         LOGGER.debug("Received submit mfa: [{}]", request);
 
+        if (!admissionControl.admit("submit", clientIp(httpRequest), request.getPushId(), request.getDeviceKeyId())) {
+            return tooManyRequests();
+        }
+
         // Validate mfa
         if (request.getDeviceName() == null || request.getPushId() == null ||
                 request.getDeviceKeyId() == null || request.getEncodedSecret() == null ||
@@ -183,12 +305,17 @@ public class InalogyAuthenticatorController {
      * This endpoint is called when the user responds to a push notification challenge.
      *
      * @param request The validate mfa containing the challenge response
+     * @param httpRequest The HTTP request, for the client address
      * @return ResponseEntity with no content if successful, or error response
      */
     @PostMapping("/validate")
-    public ResponseEntity<?> validate(@RequestBody ValidateRequest request) {
+    public ResponseEntity<?> validate(@RequestBody ValidateRequest request, HttpServletRequest httpRequest) {
         LOGGER.debug("Received validate mfa: [{}]", request);
 
+        if (!admissionControl.admitAnswer("validate", clientIp(httpRequest), request.getPushId())) {
+            return tooManyRequests();
+        }
+
         // Validate mfa
         if (request.getPushId() == null || request.getOtp() == null || request.getChallengeResponse() == null) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -217,12 +344,17 @@ public class InalogyAuthenticatorController {
      * This endpoint is used to cancel or end a push authentication process.
      *
      * @param request The terminate mfa
+     * @param httpRequest The HTTP request, for the client address
      * @return ResponseEntity with no content if successful, or error response
      */
     @PostMapping("/terminate")
-    public ResponseEntity<?> terminate(@RequestBody TerminateRequest request) {
+    public ResponseEntity<?> terminate(@RequestBody TerminateRequest request, HttpServletRequest httpRequest) {
         LOGGER.debug("Received terminate mfa: [{}]", request);
 
+        if (!admissionControl.admitAnswer("terminate", clientIp(httpRequest), request.getPushId())) {
+            return tooManyRequests();
+        }
+
         // Validate mfa
         if (request.getPushId() == null || request.getOtp() == null) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -248,12 +380,17 @@ public class InalogyAuthenticatorController {
      * This is useful when the device's push notification token changes.
      *
      * @param request The push ID change mfa
+     * @param httpRequest The HTTP request, for the client address
      * @return ResponseEntity with no content if successful, or error response
      */
     @PostMapping("/push-id-change")
-    public ResponseEntity<?> pushIdChange(@RequestBody PushIdChangeRequest request) {
+    public ResponseEntity<?> pushIdChange(@RequestBody PushIdChangeRequest request, HttpServletRequest httpRequest) {
         LOGGER.debug("Received push ID change mfa: [{}]", request);
 
+        if (!admissionControl.admit("push-id-change", clientIp(httpRequest), request.getPushId(), request.getDeviceKey())) {
+            return tooManyRequests();
+        }
+
         // Validate mfa
         if (request.getDeviceKey() == null || request.getPushId() == null || request.getOtp() == null) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -276,4 +413,21 @@ public class InalogyAuthenticatorController {
         return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
     }
 
+    /**
+     * Client IP address as resolved by CAS, which honors the client address header of a trusted proxy
+     * ({@code cas.audit.engine.alternate-client-addr-header-name}); the peer address when it is not available.
+     */
+    private static String clientIp(final HttpServletRequest httpRequest) {
+        val clientInfo = ClientInfoHolder.getClientInfo();
+        if (clientInfo != null && clientInfo.getClientIpAddress() != null && !clientInfo.getClientIpAddress().isBlank()) {
+            return clientInfo.getClientIpAddress();
+        }
+        return httpRequest.getRemoteAddr();
+    }
+
+    private static ResponseEntity<ErrorResponse> tooManyRequests() {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(new ErrorResponse("too many requests"));
+    }
 }
@@ -1,6 +1,7 @@
 package cz.ami.cas.inauth.credential;
 
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import cz.ami.cas.inauth.credential.repository.InalogyOneTimeTokenCredentialRepository;
 import cz.ami.cas.inauth.service.IInalogyAuthenticator;
 import cz.ami.cas.inauth.token.InalogyAuthenticatorToken;
 import lombok.Getter;
@@ -11,7 +12,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.apereo.cas.authentication.Authentication;
 import org.apereo.cas.authentication.OneTimeTokenAccount;
 import org.apereo.cas.authentication.PreventedException;
-import org.apereo.cas.otp.repository.credentials.OneTimeTokenCredentialRepository;
 import org.apereo.cas.otp.repository.credentials.OneTimeTokenCredentialValidator;
 import org.apereo.cas.otp.repository.token.OneTimeTokenRepository;
 
@@ -35,7 +35,7 @@ public class InalogyAuthenticatorOneTimeTokenCredentialValidator implements
 
     private final OneTimeTokenRepository<InalogyAuthenticatorToken> tokenRepository;
 
-    private final OneTimeTokenCredentialRepository credentialRepository;
+    private final InalogyOneTimeTokenCredentialRepository credentialRepository;
 
     private static boolean isCredentialAssignedToAccount(final InalogyAuthenticatorTokenCredential credential,
                                                          final OneTimeTokenAccount account) {
@@ -90,8 +90,7 @@ public class InalogyAuthenticatorOneTimeTokenCredentialValidator implements
         val authorized = inalogyAuthenticatorInstance.validateCredential((InalogyAuthenticatorAccount) account, token);
         if (!authorized && account.getScratchCodes().stream().map(Number::intValue).toList().contains(token)) {
             LOGGER.debug("Token [{}] is a valid scratch code for account [{}]", token, account);
-            account.getScratchCodes().removeIf(code -> code.intValue() == token);
-            credentialRepository.update(account);
+            credentialRepository.removeScratchCode(account, token);
             return true;
         }
         return authorized;
@@ -113,8 +112,7 @@ public class InalogyAuthenticatorOneTimeTokenCredentialValidator implements
             .map(InalogyAuthenticatorAccount.class::cast)
             .peek(acct -> {
                 LOGGER.info("Using scratch code [{}] to authenticate user [{}]. Scratch code will be removed", otp, uid);
-                acct.getScratchCodes().removeIf(token -> token.intValue() == otp);
-                credentialRepository.update(acct);
+                credentialRepository.removeScratchCode(acct, otp);
             })
             .findFirst();
     }
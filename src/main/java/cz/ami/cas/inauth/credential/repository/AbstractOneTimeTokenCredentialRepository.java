@@ -59,11 +59,21 @@ public abstract class AbstractOneTimeTokenCredentialRepository implements Inalog
         val decodedSecret = tokenCredentialCipher.decode(account.getSecretKey());
         val decodedScratchCodes = account.getScratchCodes()
                 .stream()
-                .map(code -> FunctionUtils.doAndHandle(() -> scratchCodesCipher.decode(code), t -> code).get())
+                .map(this::decodeScratchCode)
                 .collect(Collectors.toList());
         val newAccount = account.clone();
         newAccount.setSecretKey(decodedSecret);
         newAccount.setScratchCodes(decodedScratchCodes);
         return newAccount;
     }
+
+    /**
+     * Decode a single scratch code, returning it as is when it cannot be decoded.
+     *
+     * @param code the encoded scratch code
+     * @return the decoded scratch code
+     */
+    protected Number decodeScratchCode(final Number code) {
+        return FunctionUtils.doAndHandle(() -> scratchCodesCipher.decode(code), t -> code).get();
+    }
 }
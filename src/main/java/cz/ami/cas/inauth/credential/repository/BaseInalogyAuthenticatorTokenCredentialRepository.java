@@ -8,6 +8,9 @@ import org.apereo.cas.authentication.OneTimeTokenAccount;
 import org.apereo.cas.util.crypto.CipherExecutor;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Getter
@@ -50,6 +53,49 @@ public abstract class BaseInalogyAuthenticatorTokenCredentialRepository extends
         return account.map(this::decode).orElse(null);
     }
 
+    /**
+     * Resolves an indexed account id to the stored account and decodes it.
+     *
+     * @param index    the index the id was found in
+     * @param id       the account id, may be null
+     * @param accounts the stored accounts grouped by username
+     * @return the decoded account, or null
+     */
+    protected OneTimeTokenAccount findIndexedAccount(final InalogyAccountIndex index, final Long id,
+                                                     final Map<String, List<OneTimeTokenAccount>> accounts) {
+        if (id == null) {
+            return null;
+        }
+        val username = index.getUsername(id);
+        val records = username == null ? null : accounts.get(username);
+        if (records == null) {
+            return null;
+        }
+        return records.stream()
+                .filter(acc -> acc.getId() == id)
+                .findFirst()
+                .map(this::decode)
+                .orElse(null);
+    }
+
+    /**
+     * Copies the mutable fields of the given account onto the stored record.
+     *
+     * @param stored  the stored (encoded) record
+     * @param encoded the encoded account carrying the new values
+     */
+    protected static void copyMutableFields(final OneTimeTokenAccount stored, final OneTimeTokenAccount encoded) {
+        stored.setSecretKey(encoded.getSecretKey());
+        stored.setScratchCodes(encoded.getScratchCodes());
+        stored.setValidationCode(encoded.getValidationCode());
+        if (stored instanceof InalogyAuthenticatorAccount storedAccount
+                && encoded instanceof InalogyAuthenticatorAccount encodedAccount) {
+            storedAccount.setDeviceType(encodedAccount.getDeviceType());
+            storedAccount.setPushId(encodedAccount.getPushId());
+            storedAccount.setDeviceKeyId(encodedAccount.getDeviceKeyId());
+        }
+    }
+
     @Override
     public OneTimeTokenAccount create(final String username) {
         val key = getInalogyAuthenticator().createCredentials();
@@ -61,4 +107,35 @@ public abstract class BaseInalogyAuthenticatorTokenCredentialRepository extends
                 .name(UUID.randomUUID().toString())
                 .build();
     }
+
+    /**
+     * Drops state derived from the secrets of the given accounts, such as cached keyed HMAC instances.
+     *
+     * @param accounts the updated or deleted accounts
+     */
+    protected void invalidateAccounts(final Collection<? extends OneTimeTokenAccount> accounts) {
+        if (accounts != null) {
+            accounts.forEach(acc -> invalidateAccount(acc.getId()));
+        }
+    }
+
+    /**
+     * Drops state derived from the secret of the given account, such as its cached keyed HMAC instance.
+     *
+     * @param id the id of the updated or deleted account
+     */
+    protected void invalidateAccount(final long id) {
+        if (inalogyAuthenticator != null) {
+            inalogyAuthenticator.invalidateAccount(id);
+        }
+    }
+
+    /**
+     * Drops state derived from account secrets for all accounts.
+     */
+    protected void invalidateAllAccounts() {
+        if (inalogyAuthenticator != null) {
+            inalogyAuthenticator.invalidateAllAccounts();
+        }
+    }
 }
@@ -16,6 +16,8 @@ public class  InMemoryInalogyAuthenticatorTokenCredentialRepository extends Base
 
     private final Map<String, List<OneTimeTokenAccount>> accounts;
 
+    private final InalogyAccountIndex index = new InalogyAccountIndex();
+
     public InMemoryInalogyAuthenticatorTokenCredentialRepository(final CipherExecutor<String, String> tokenCredentialCipher,
                                                                 final CipherExecutor<Number, Number> scratchCodesCipher,
                                                                 final IInalogyAuthenticator inalogyAuthenticator) {
@@ -30,13 +32,23 @@ public class  InMemoryInalogyAuthenticatorTokenCredentialRepository extends Base
 
     @Override
     public OneTimeTokenAccount get(final long id) {
-        return lock.tryLock(() -> accounts
-                .values()
-                .stream()
-                .flatMap(List::stream)
-                .filter(ac -> ac.getId() == id)
-                .findFirst()
-                .orElse(null));
+        return lock.tryLock(() -> {
+            val username = index.getUsername(id);
+            return Optional.ofNullable(username)
+                    .map(accounts::get)
+                    .flatMap(records -> records.stream().filter(ac -> ac.getId() == id).findFirst())
+                    .orElse(null);
+        });
+    }
+
+    @Override
+    public OneTimeTokenAccount getByPushId(final String pushId) {
+        return lock.tryLock(() -> findIndexedAccount(index, index.findByPushId(pushId), accounts));
+    }
+
+    @Override
+    public OneTimeTokenAccount getByDeviceKeyId(final String keyId) {
+        return lock.tryLock(() -> findIndexedAccount(index, index.findByDeviceKeyId(keyId), accounts));
     }
 
     @Override
@@ -58,6 +70,7 @@ public class  InMemoryInalogyAuthenticatorTokenCredentialRepository extends Base
             val records = accounts.getOrDefault(account.getUsername().trim().toLowerCase(Locale.ENGLISH), new ArrayList<>());
             records.add(encoded);
             accounts.put(account.getUsername(), records);
+            index.index(encoded);
             return encoded;
         });
     }
@@ -72,28 +85,42 @@ public class  InMemoryInalogyAuthenticatorTokenCredentialRepository extends Base
                         .filter(rec -> rec.getId() == account.getId())
                         .findFirst()
                         .ifPresent(act -> {
-                            act.setSecretKey(account.getSecretKey());
-                            act.setScratchCodes(account.getScratchCodes());
-                            act.setValidationCode(account.getValidationCode());
+                            copyMutableFields(act, encoded);
+                            index.index(act);
                         });
             }
+            invalidateAccount(account.getId());
             return encoded;
         });
     }
 
     @Override
     public void deleteAll() {
-        lock.tryLock(__ -> accounts.clear());
+        lock.tryLock(__ -> {
+            accounts.clear();
+            index.clear();
+            invalidateAllAccounts();
+        });
     }
 
     @Override
     public void delete(final String username) {
-        lock.tryLock(__ -> accounts.remove(username.toLowerCase(Locale.ENGLISH).trim()));
+        lock.tryLock(__ -> {
+            val removed = accounts.remove(username.toLowerCase(Locale.ENGLISH).trim());
+            index.removeAll(removed);
+            invalidateAccounts(removed);
+        });
     }
 
     @Override
     public void delete(final long id) {
-        lock.tryLock(__ -> accounts.forEach((key, value) -> value.removeIf(d -> d.getId() == id)));
+        lock.tryLock(__ -> {
+            Optional.ofNullable(index.getUsername(id))
+                    .map(accounts::get)
+                    .ifPresent(records -> records.removeIf(d -> d.getId() == id));
+            index.remove(id);
+            invalidateAccount(id);
+        });
     }
 
     @Override
@@ -0,0 +1,148 @@
+package cz.ami.cas.inauth.credential.repository;
+
+import cz.ami.cas.inauth.credential.InalogyAuthenticatorAccount;
+import lombok.val;
+import org.apereo.cas.authentication.OneTimeTokenAccount;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Secondary indexes over stored accounts: push id to account id, device key id to account id
+ * and account id to username. Lets the repositories resolve the mobile-facing lookups
+ * without loading and filtering every account.
+ * <p>
+ * The index itself is thread-safe, but keeping it consistent with the backing store
+ * is up to the repository, which updates both under its lock.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+public class InalogyAccountIndex {
+
+    private final Map<String, Long> idsByPushId = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> idsByDeviceKeyId = new ConcurrentHashMap<>();
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the account to the index or replaces its previous keys.
+     *
+     * @param account the stored account
+     */
+    public void index(final OneTimeTokenAccount account) {
+        val id = account.getId();
+        val entry = account instanceof InalogyAuthenticatorAccount inalogyAccount
+                ? new Entry(account.getUsername(), inalogyAccount.getPushId(), inalogyAccount.getDeviceKeyId())
+                : new Entry(account.getUsername(), null, null);
+        val previous = entries.put(id, entry);
+        if (previous != null) {
+            unlink(id, previous);
+        }
+        if (entry.pushId() != null) {
+            idsByPushId.put(entry.pushId(), id);
+        }
+        if (entry.deviceKeyId() != null) {
+            idsByDeviceKeyId.put(entry.deviceKeyId(), id);
+        }
+    }
+
+    /**
+     * Adds all accounts to the index.
+     *
+     * @param accounts the stored accounts
+     */
+    public void indexAll(final Collection<? extends OneTimeTokenAccount> accounts) {
+        if (accounts != null) {
+            accounts.forEach(this::index);
+        }
+    }
+
+    /**
+     * Replaces the whole index with the given accounts grouped by username.
+     *
+     * @param accounts the stored accounts
+     */
+    public void rebuild(final Map<String, List<OneTimeTokenAccount>> accounts) {
+        clear();
+        accounts.values().forEach(this::indexAll);
+    }
+
+    /**
+     * Removes the account with the given id from the index.
+     *
+     * @param id the account id
+     */
+    public void remove(final long id) {
+        val previous = entries.remove(id);
+        if (previous != null) {
+            unlink(id, previous);
+        }
+    }
+
+    /**
+     * Removes all given accounts from the index.
+     *
+     * @param accounts the removed accounts
+     */
+    public void removeAll(final Collection<? extends OneTimeTokenAccount> accounts) {
+        if (accounts != null) {
+            accounts.forEach(acc -> remove(acc.getId()));
+        }
+    }
+
+    /**
+     * Empties the index.
+     */
+    public void clear() {
+        entries.clear();
+        idsByPushId.clear();
+        idsByDeviceKeyId.clear();
+    }
+
+    /**
+     * Returns the id of the account registered with the given push id.
+     *
+     * @param pushId the push id
+     * @return the account id, or null
+     */
+    public Long findByPushId(final String pushId) {
+        return pushId == null ? null : idsByPushId.get(pushId);
+    }
+
+    /**
+     * Returns the id of the account registered with the given device key id.
+     *
+     * @param deviceKeyId the device key id
+     * @return the account id, or null
+     */
+    public Long findByDeviceKeyId(final String deviceKeyId) {
+        return deviceKeyId == null ? null : idsByDeviceKeyId.get(deviceKeyId);
+    }
+
+    /**
+     * Returns the username owning the account with the given id.
+     *
+     * @param id the account id
+     * @return the username, or null
+     */
+    public String getUsername(final long id) {
+        val entry = entries.get(id);
+        return entry == null ? null : entry.username();
+    }
+
+    private void unlink(final long id, final Entry entry) {
+        if (entry.pushId() != null) {
+            idsByPushId.remove(entry.pushId(), id);
+        }
+        if (entry.deviceKeyId() != null) {
+            idsByDeviceKeyId.remove(entry.deviceKeyId(), id);
+        }
+    }
+
+    private record Entry(String username, String pushId, String deviceKeyId) {
+    }
+}
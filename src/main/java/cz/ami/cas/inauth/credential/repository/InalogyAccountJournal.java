@@ -0,0 +1,227 @@
+package cz.ami.cas.inauth.credential.repository;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apereo.cas.authentication.OneTimeTokenAccount;
+import org.apereo.cas.util.serialization.StringSerializer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only journal of account mutations kept next to the JSON account file.
+ * Each mutation is one line: {@code PUT <base64 json>}, {@code DELETE_ID <id>},
+ * {@code DELETE_USER <username>} or {@code CLEAR}. All records are idempotent, so replaying
+ * the journal over a snapshot that already contains some of its effects yields the same state;
+ * this makes a crash between compaction and truncation harmless. Every append is forced to
+ * the storage device before the mutation is acknowledged.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Slf4j
+public class InalogyAccountJournal {
+
+    private static final String PUT = "PUT";
+
+    private static final String DELETE_ID = "DELETE_ID";
+
+    private static final String DELETE_USER = "DELETE_USER";
+
+    private static final String CLEAR = "CLEAR";
+
+    @Getter
+    private final Path path;
+
+    private final StringSerializer<Map<String, List<OneTimeTokenAccount>>> serializer;
+
+    /**
+     * Number of records appended since the journal was last truncated or replayed.
+     */
+    @Getter
+    private int pendingRecords;
+
+    public InalogyAccountJournal(final Path path,
+                                 final StringSerializer<Map<String, List<OneTimeTokenAccount>>> serializer) {
+        this.path = path;
+        this.serializer = serializer;
+    }
+
+    /**
+     * Records an insert or replacement of the account.
+     *
+     * @param account the stored (encoded) account
+     */
+    public void appendPut(final OneTimeTokenAccount account) {
+        val record = new HashMap<String, List<OneTimeTokenAccount>>(1);
+        record.put(account.getUsername(), new ArrayList<>(List.of(account)));
+        val json = serializer.toString(record);
+        append(PUT + ' ' + Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Records a removal of the account with the given id.
+     *
+     * @param id the account id
+     */
+    public void appendDeleteId(final long id) {
+        append(DELETE_ID + ' ' + id);
+    }
+
+    /**
+     * Records a removal of all accounts of the given user.
+     *
+     * @param username the normalized username
+     */
+    public void appendDeleteUser(final String username) {
+        append(DELETE_USER + ' ' + username);
+    }
+
+    /**
+     * Records a removal of all accounts.
+     */
+    public void appendClear() {
+        append(CLEAR);
+    }
+
+    /**
+     * Applies all journal records to the given snapshot. A malformed record, typically a line
+     * torn by a crash in the middle of an append, ends the replay and the journal is truncated to
+     * the end of the last applied record, so that later appends are not written after the torn line
+     * where no replay would ever reach them.
+     *
+     * @param accounts the snapshot to apply the records to
+     * @return the number of applied records
+     */
+    public int replay(final Map<String, List<OneTimeTokenAccount>> accounts) {
+        if (!Files.exists(path)) {
+            pendingRecords = 0;
+            return 0;
+        }
+        var applied = 0;
+        try {
+            val content = Files.readAllBytes(path);
+            var validLength = 0;
+            while (validLength < content.length) {
+                val end = indexOfNewLine(content, validLength);
+                if (end < 0) {
+                    LOGGER.warn("Dropping unterminated record [{}] at the end of [{}]", applied + 1, path);
+                    break;
+                }
+                val line = new String(content, validLength, end - validLength, StandardCharsets.UTF_8);
+                if (!line.isBlank()) {
+                    if (!apply(line, accounts)) {
+                        LOGGER.warn("Stopping replay of [{}] at malformed record [{}]", path, applied + 1);
+                        break;
+                    }
+                    applied++;
+                }
+                validLength = end + 1;
+            }
+            if (validLength < content.length) {
+                try (val channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(validLength);
+                    channel.force(true);
+                }
+                LOGGER.warn("Truncated [{}] from [{}] to [{}] bytes", path, content.length, validLength);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        pendingRecords = applied;
+        return applied;
+    }
+
+    /**
+     * Empties the journal after its records were folded into a new snapshot.
+     */
+    public void truncate() {
+        try {
+            Files.deleteIfExists(path);
+            pendingRecords = 0;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the current size of the journal file in bytes.
+     *
+     * @return the size, or zero if the journal does not exist
+     */
+    public long length() {
+        return path.toFile().length();
+    }
+
+    /**
+     * Appends the record and forces it to the storage device before returning, so that an
+     * acknowledged mutation survives a power loss and not only a process crash.
+     */
+    private void append(final String record) {
+        val bytes = ByteBuffer.wrap((record + '\n').getBytes(StandardCharsets.UTF_8));
+        try (val channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+                StandardOpenOption.WRITE)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+            pendingRecords++;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int indexOfNewLine(final byte[] content, final int from) {
+        for (var i = from; i < content.length; i++) {
+            if (content[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean apply(final String line, final Map<String, List<OneTimeTokenAccount>> accounts) {
+        try {
+            val separator = line.indexOf(' ');
+            val type = separator < 0 ? line : line.substring(0, separator);
+            val argument = separator < 0 ? null : line.substring(separator + 1);
+            switch (type) {
+                case PUT -> {
+                    val json = new String(Base64.getDecoder().decode(argument), StandardCharsets.UTF_8);
+                    serializer.from(json).forEach((username, records) -> {
+                        val existing = accounts.computeIfAbsent(username, __ -> new ArrayList<>());
+                        records.forEach(account -> {
+                            existing.removeIf(acc -> acc.getId() == account.getId());
+                            existing.add(account);
+                        });
+                    });
+                }
+                case DELETE_ID -> {
+                    val id = Long.parseLong(argument);
+                    accounts.values().forEach(records -> records.removeIf(acc -> acc.getId() == id));
+                }
+                case DELETE_USER -> accounts.remove(argument);
+                case CLEAR -> accounts.clear();
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        } catch (final RuntimeException e) {
+            LOGGER.debug("Unable to apply journal record", e);
+            return false;
+        }
+    }
+}
@@ -9,4 +9,17 @@ public interface InalogyOneTimeTokenCredentialRepository extends OneTimeTokenCre
 
     OneTimeTokenAccount getByDeviceKeyId(final String keyId);
 
+    /**
+     * Removes a consumed scratch code from the account, both from the given (decoded) instance
+     * and from the store. Stores that keep scratch codes separately can override this to avoid
+     * rewriting the whole account.
+     *
+     * @param account the decoded account the scratch code belongs to
+     * @param code    the consumed scratch code
+     */
+    default void removeScratchCode(final OneTimeTokenAccount account, final int code) {
+        account.getScratchCodes().removeIf(scratchCode -> scratchCode.intValue() == code);
+        update(account);
+    }
+
 }
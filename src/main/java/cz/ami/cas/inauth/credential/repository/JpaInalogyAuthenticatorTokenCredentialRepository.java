@@ -0,0 +1,259 @@
+package cz.ami.cas.inauth.credential.repository;
+
+import cz.ami.cas.inauth.credential.InalogyAuthenticatorAccount;
+import cz.ami.cas.inauth.credential.repository.jpa.JpaInalogyAuthenticatorAccount;
+import cz.ami.cas.inauth.credential.repository.jpa.JpaInalogyAuthenticatorScratchCode;
+import cz.ami.cas.inauth.service.IInalogyAuthenticator;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import lombok.Getter;
+import lombok.val;
+import org.apereo.cas.authentication.OneTimeTokenAccount;
+import org.apereo.cas.util.crypto.CipherExecutor;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Credential repository storing Inalogy Authenticator accounts in a relational database.
+ * Accounts are looked up by indexed columns, and scratch codes are kept in a separate table
+ * so that consuming one only deletes a single row.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+public class JpaInalogyAuthenticatorTokenCredentialRepository extends BaseInalogyAuthenticatorTokenCredentialRepository {
+
+    private static final String ENTITY_NAME = JpaInalogyAuthenticatorAccount.class.getSimpleName();
+
+    private static final String SCRATCH_CODE_ENTITY_NAME = JpaInalogyAuthenticatorScratchCode.class.getSimpleName();
+
+    private final EntityManager entityManager;
+
+    private final TransactionOperations transactionTemplate;
+
+    public JpaInalogyAuthenticatorTokenCredentialRepository(final EntityManager entityManager,
+                                                            final TransactionOperations transactionTemplate,
+                                                            final CipherExecutor<String, String> tokenCredentialCipher,
+                                                            final CipherExecutor<Number, Number> scratchCodesCipher,
+                                                            final IInalogyAuthenticator inalogyAuthenticator) {
+        super(tokenCredentialCipher, scratchCodesCipher, inalogyAuthenticator);
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public OneTimeTokenAccount get(final long id) {
+        return transactionTemplate.execute(__ -> {
+            val entity = entityManager.find(JpaInalogyAuthenticatorAccount.class, id);
+            return entity == null ? null : decode(toAccount(entity));
+        });
+    }
+
+    @Override
+    public OneTimeTokenAccount get(final String username, final long id) {
+        return transactionTemplate.execute(__ -> findFirst(
+                "SELECT a FROM " + ENTITY_NAME + " a WHERE a.username = :username AND a.id = :id",
+                query -> query.setParameter("username", normalize(username)).setParameter("id", id)));
+    }
+
+    @Override
+    public Collection<? extends OneTimeTokenAccount> get(final String username) {
+        return transactionTemplate.execute(__ -> entityManager
+                .createQuery("SELECT a FROM " + ENTITY_NAME + " a WHERE a.username = :username",
+                        JpaInalogyAuthenticatorAccount.class)
+                .setParameter("username", normalize(username))
+                .getResultStream()
+                .map(this::toAccount)
+                .map(this::decode)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public OneTimeTokenAccount getByPushId(final String pushId) {
+        return transactionTemplate.execute(__ -> findFirst(
+                "SELECT a FROM " + ENTITY_NAME + " a WHERE a.pushId = :pushId",
+                query -> query.setParameter("pushId", pushId)));
+    }
+
+    @Override
+    public OneTimeTokenAccount getByDeviceKeyId(final String keyId) {
+        return transactionTemplate.execute(__ -> findFirst(
+                "SELECT a FROM " + ENTITY_NAME + " a WHERE a.deviceKeyId = :deviceKeyId",
+                query -> query.setParameter("deviceKeyId", keyId)));
+    }
+
+    @Override
+    public Collection<? extends OneTimeTokenAccount> load() {
+        return transactionTemplate.execute(__ -> entityManager
+                .createQuery("SELECT a FROM " + ENTITY_NAME + " a", JpaInalogyAuthenticatorAccount.class)
+                .getResultStream()
+                .map(this::toAccount)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public OneTimeTokenAccount save(final OneTimeTokenAccount account) {
+        account.assignIdIfNecessary();
+        return transactionTemplate.execute(__ -> {
+            val encoded = encode(account);
+            val entity = new JpaInalogyAuthenticatorAccount();
+            entity.setId(encoded.getId());
+            entity.setUsername(encoded.getUsername());
+            entity.setRegistrationDate(encoded.getRegistrationDate());
+            entity.setSource(encoded.getSource());
+            entity.setName(encoded.getName());
+            applyMutableFields(entity, encoded);
+            entityManager.persist(entity);
+            return encoded;
+        });
+    }
+
+    @Override
+    public OneTimeTokenAccount update(final OneTimeTokenAccount account) {
+        return transactionTemplate.execute(__ -> {
+            val encoded = encode(account);
+            val entity = entityManager.find(JpaInalogyAuthenticatorAccount.class, encoded.getId());
+            if (entity != null && entity.getUsername().equals(encoded.getUsername())) {
+                applyMutableFields(entity, encoded);
+            }
+            invalidateAccount(encoded.getId());
+            return encoded;
+        });
+    }
+
+    @Override
+    public void removeScratchCode(final OneTimeTokenAccount account, final int code) {
+        account.getScratchCodes().removeIf(scratchCode -> scratchCode.intValue() == code);
+        transactionTemplate.executeWithoutResult(__ -> entityManager
+                .createQuery("SELECT s FROM " + SCRATCH_CODE_ENTITY_NAME + " s WHERE s.account.id = :id",
+                        JpaInalogyAuthenticatorScratchCode.class)
+                .setParameter("id", account.getId())
+                .getResultStream()
+                .filter(row -> decodeScratchCode(new BigInteger(row.getCode())).intValue() == code)
+                .findFirst()
+                .ifPresent(row -> entityManager
+                        .createQuery("DELETE FROM " + SCRATCH_CODE_ENTITY_NAME + " s WHERE s.id = :id")
+                        .setParameter("id", row.getId())
+                        .executeUpdate()));
+    }
+
+    @Override
+    public void deleteAll() {
+        transactionTemplate.executeWithoutResult(__ -> {
+            entityManager.createQuery("DELETE FROM " + SCRATCH_CODE_ENTITY_NAME).executeUpdate();
+            entityManager.createQuery("DELETE FROM " + ENTITY_NAME).executeUpdate();
+        });
+        invalidateAllAccounts();
+    }
+
+    @Override
+    public void delete(final String username) {
+        val ids = transactionTemplate.execute(__ -> {
+            val accountIds = entityManager
+                    .createQuery("SELECT a.id FROM " + ENTITY_NAME + " a WHERE a.username = :username", Long.class)
+                    .setParameter("username", normalize(username))
+                    .getResultList();
+            if (!accountIds.isEmpty()) {
+                entityManager.createQuery("DELETE FROM " + SCRATCH_CODE_ENTITY_NAME + " s WHERE s.account.id IN :ids")
+                        .setParameter("ids", accountIds)
+                        .executeUpdate();
+                entityManager.createQuery("DELETE FROM " + ENTITY_NAME + " a WHERE a.id IN :ids")
+                        .setParameter("ids", accountIds)
+                        .executeUpdate();
+            }
+            return accountIds;
+        });
+        if (ids != null) {
+            ids.forEach(this::invalidateAccount);
+        }
+    }
+
+    @Override
+    public void delete(final long id) {
+        transactionTemplate.executeWithoutResult(__ -> {
+            entityManager.createQuery("DELETE FROM " + SCRATCH_CODE_ENTITY_NAME + " s WHERE s.account.id = :id")
+                    .setParameter("id", id)
+                    .executeUpdate();
+            entityManager.createQuery("DELETE FROM " + ENTITY_NAME + " a WHERE a.id = :id")
+                    .setParameter("id", id)
+                    .executeUpdate();
+        });
+        invalidateAccount(id);
+    }
+
+    @Override
+    public long count() {
+        return transactionTemplate.execute(__ -> entityManager
+                .createQuery("SELECT COUNT(a.id) FROM " + ENTITY_NAME + " a", Long.class)
+                .getSingleResult());
+    }
+
+    @Override
+    public long count(final String username) {
+        return transactionTemplate.execute(__ -> entityManager
+                .createQuery("SELECT COUNT(a.id) FROM " + ENTITY_NAME + " a WHERE a.username = :username", Long.class)
+                .setParameter("username", normalize(username))
+                .getSingleResult());
+    }
+
+    private OneTimeTokenAccount findFirst(final String jpql,
+                                          final UnaryOperator<TypedQuery<JpaInalogyAuthenticatorAccount>> parameters) {
+        return parameters.apply(entityManager.createQuery(jpql, JpaInalogyAuthenticatorAccount.class))
+                .setMaxResults(1)
+                .getResultStream()
+                .findFirst()
+                .map(this::toAccount)
+                .map(this::decode)
+                .orElse(null);
+    }
+
+    private OneTimeTokenAccount toAccount(final JpaInalogyAuthenticatorAccount entity) {
+        val scratchCodes = entity.getScratchCodes()
+                .stream()
+                .map(row -> (Number) new BigInteger(row.getCode()))
+                .collect(Collectors.toCollection(ArrayList::new));
+        return InalogyAuthenticatorAccount.builder()
+                .id(entity.getId())
+                .username(entity.getUsername())
+                .secretKey(entity.getSecretKey())
+                .validationCode(entity.getValidationCode())
+                .scratchCodes(scratchCodes)
+                .name(entity.getName())
+                .registrationDate(entity.getRegistrationDate())
+                .source(entity.getSource())
+                .deviceType(entity.getDeviceType())
+                .pushId(entity.getPushId())
+                .deviceKeyId(entity.getDeviceKeyId())
+                .build();
+    }
+
+    private static void applyMutableFields(final JpaInalogyAuthenticatorAccount entity, final OneTimeTokenAccount encoded) {
+        entity.setSecretKey(encoded.getSecretKey());
+        entity.setValidationCode(encoded.getValidationCode());
+        if (encoded instanceof InalogyAuthenticatorAccount account) {
+            entity.setDeviceType(account.getDeviceType());
+            entity.setPushId(account.getPushId());
+            entity.setDeviceKeyId(account.getDeviceKeyId());
+        }
+        val codes = new ArrayList<String>();
+        encoded.getScratchCodes().forEach(code -> codes.add(code.toString()));
+        val stored = entity.getScratchCodes();
+        val unchanged = stored.size() == codes.size()
+                && stored.stream().map(JpaInalogyAuthenticatorScratchCode::getCode).toList().equals(codes);
+        if (!unchanged) {
+            stored.clear();
+            codes.forEach(code -> stored.add(new JpaInalogyAuthenticatorScratchCode(entity, code)));
+        }
+    }
+
+    private static String normalize(final String username) {
+        return username.trim().toLowerCase(Locale.ENGLISH);
+    }
+}
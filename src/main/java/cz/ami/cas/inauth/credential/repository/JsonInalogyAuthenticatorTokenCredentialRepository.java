@@ -1,5 +1,6 @@
 package cz.ami.cas.inauth.credential.repository;
 
+import cz.ami.cas.inauth.configuration.mfa.JsonInalogyAuthenticatorMultifactorProperties;
 import cz.ami.cas.inauth.service.IInalogyAuthenticator;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -10,44 +11,111 @@ import org.apereo.cas.util.concurrent.CasReentrantLock;
 import org.apereo.cas.util.crypto.CipherExecutor;
 import org.apereo.cas.util.function.FunctionUtils;
 import org.apereo.cas.util.serialization.StringSerializer;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.core.io.Resource;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Getter
 @Slf4j
-public class JsonInalogyAuthenticatorTokenCredentialRepository extends BaseInalogyAuthenticatorTokenCredentialRepository {
+public class JsonInalogyAuthenticatorTokenCredentialRepository extends BaseInalogyAuthenticatorTokenCredentialRepository
+        implements DisposableBean {
     private final CasReentrantLock lock = new CasReentrantLock();
 
     private final Resource location;
 
     private final StringSerializer<Map<String, List<OneTimeTokenAccount>>> serializer;
 
+    private final InalogyAccountIndex index = new InalogyAccountIndex();
+
+    /**
+     * Parsed contents of the JSON file, reused until the file's modification time or length changes.
+     */
+    private Map<String, List<OneTimeTokenAccount>> snapshot;
+
+    private long snapshotLastModified = -1;
+
+    private long snapshotLength = -1;
+
+    /**
+     * Journal of mutations not yet folded into the JSON file, or null when journaling is disabled.
+     */
+    private final InalogyAccountJournal journal;
+
+    private long snapshotJournalLength = -1;
+
+    private final ScheduledExecutorService compactor;
+
     public JsonInalogyAuthenticatorTokenCredentialRepository(
-            final Resource location,
+            final JsonInalogyAuthenticatorMultifactorProperties properties,
             final IInalogyAuthenticator inalogyAuthenticator,
             final CipherExecutor<String, String> tokenCredentialCipher,
             final CipherExecutor<Number, Number> scratchCodesCipher,
             final StringSerializer<Map<String, List<OneTimeTokenAccount>>> serializer) {
         super(tokenCredentialCipher, scratchCodesCipher, inalogyAuthenticator);
-        this.location = location;
+        this.location = properties.getLocation();
         this.serializer = serializer;
+        if (properties.isJournalEnabled()) {
+            val file = FunctionUtils.doUnchecked(location::getFile);
+            this.journal = new InalogyAccountJournal(file.toPath().resolveSibling(file.getName() + ".journal"), serializer);
+            this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                val thread = new Thread(runnable, "inalogy-json-journal-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.compactor.scheduleWithFixedDelay(this::compactQuietly, properties.getCompactionIntervalMs(),
+                    properties.getCompactionIntervalMs(), TimeUnit.MILLISECONDS);
+        } else {
+            this.journal = null;
+            this.compactor = null;
+        }
     }
 
+    /**
+     * Returns a copy of the stored record; the snapshot is shared between calls and must not be
+     * modified outside of the lock.
+     */
     @Override
     public OneTimeTokenAccount get(final long id) {
         return lock.tryLock(() -> {
             val accounts = readAccountsFromJsonRepository();
-            return accounts.values()
-                    .stream()
-                    .flatMap(List::stream)
-                    .filter(ac -> ac.getId() == id)
-                    .findFirst()
+            return Optional.ofNullable(index.getUsername(id))
+                    .map(accounts::get)
+                    .flatMap(records -> records.stream().filter(ac -> ac.getId() == id).findFirst())
+                    .map(OneTimeTokenAccount::clone)
                     .orElse(null);
         });
     }
 
+    @Override
+    public OneTimeTokenAccount getByPushId(final String pushId) {
+        return lock.tryLock(() -> {
+            val accounts = readAccountsFromJsonRepository();
+            return findIndexedAccount(index, index.findByPushId(pushId), accounts);
+        });
+    }
+
+    @Override
+    public OneTimeTokenAccount getByDeviceKeyId(final String keyId) {
+        return lock.tryLock(() -> {
+            val accounts = readAccountsFromJsonRepository();
+            return findIndexedAccount(index, index.findByDeviceKeyId(keyId), accounts);
+        });
+    }
+
     @Override
     public OneTimeTokenAccount get(final String username, final long id) {
         return lock.tryLock(() -> get(username).stream().filter(ac -> ac.getId() == id).findFirst().orElse(null));
@@ -57,22 +125,7 @@ public class JsonInalogyAuthenticatorTokenCredentialRepository extends BaseInalo
     public Collection<? extends OneTimeTokenAccount> get(final String username) {
         return lock.tryLock(() -> {
             try {
-                if (!location.getFile().exists()) {
-                    LOGGER.warn("JSON account repository file [{}] is not found.", location.getFile());
-                    return new ArrayList<>();
-                }
-
-                if (location.getFile().length() <= 0) {
-                    LOGGER.debug("JSON account repository file location [{}] is empty.", location.getFile());
-                    return new ArrayList<>();
-                }
-                val map = serializer.from(location.getFile());
-                if (map == null) {
-                    LOGGER.debug("JSON account repository file [{}] is empty.", location.getFile());
-                    return new ArrayList<>();
-                }
-
-                val account = map.get(username.trim().toLowerCase(Locale.ENGLISH));
+                val account = readAccountsFromJsonRepository().get(username.trim().toLowerCase(Locale.ENGLISH));
                 if (account != null) {
                     return decode(account);
                 }
@@ -88,7 +141,7 @@ public class JsonInalogyAuthenticatorTokenCredentialRepository extends BaseInalo
         return lock.tryLock(() -> {
             try {
                 return readAccountsFromJsonRepository().values()
-                        .stream().flatMap(List::stream).collect(Collectors.toList());
+                        .stream().flatMap(List::stream).map(OneTimeTokenAccount::clone).collect(Collectors.toList());
             } catch (final Exception e) {
                 LoggingUtils.error(LOGGER, e);
             }
@@ -109,7 +162,8 @@ public class JsonInalogyAuthenticatorTokenCredentialRepository extends BaseInalo
                 val records = accounts.getOrDefault(account.getUsername().trim().toLowerCase(Locale.ENGLISH), new ArrayList<>());
                 records.add(encoded);
                 accounts.put(account.getUsername().trim().toLowerCase(Locale.ENGLISH), records);
-                writeAccountsToJsonRepository(accounts);
+                persist(accounts, appender -> appender.appendPut(encoded));
+                index.index(encoded);
                 return encoded;
             } catch (final Exception e) {
                 LoggingUtils.error(LOGGER, e);
@@ -130,10 +184,10 @@ public class JsonInalogyAuthenticatorTokenCredentialRepository extends BaseInalo
                             .findFirst()
                             .map(act -> {
                                 val encoded = encode(account);
-                                act.setSecretKey(encoded.getSecretKey());
-                                act.setScratchCodes(encoded.getScratchCodes());
-                                act.setValidationCode(encoded.getValidationCode());
-                                writeAccountsToJsonRepository(accounts);
+                                copyMutableFields(act, encoded);
+                                persist(accounts, appender -> appender.appendPut(act));
+                                index.index(act);
+                                invalidateAccount(account.getId());
                                 return encoded;
                             })
                             .orElse(null);
@@ -147,15 +201,22 @@ public class JsonInalogyAuthenticatorTokenCredentialRepository extends BaseInalo
 
     @Override
     public void deleteAll() {
-        lock.tryLock(__ -> writeAccountsToJsonRepository(new HashMap<>(0)));
+        lock.tryLock(__ -> {
+            persist(new HashMap<>(0), InalogyAccountJournal::appendClear);
+            index.clear();
+            invalidateAllAccounts();
+        });
     }
 
     @Override
     public void delete(final String username) {
         lock.tryLock(__ -> {
             val accounts = readAccountsFromJsonRepository();
-            accounts.remove(username.trim().toLowerCase(Locale.ENGLISH));
-            writeAccountsToJsonRepository(accounts);
+            val normalized = username.trim().toLowerCase(Locale.ENGLISH);
+            val removed = accounts.remove(normalized);
+            persist(accounts, appender -> appender.appendDeleteUser(normalized));
+            index.removeAll(removed);
+            invalidateAccounts(removed);
         });
     }
 
@@ -164,7 +225,9 @@ public class JsonInalogyAuthenticatorTokenCredentialRepository extends BaseInalo
         lock.tryLock(__ -> {
             val accounts = readAccountsFromJsonRepository();
             accounts.forEach((key, value) -> value.removeIf(d -> d.getId() == id));
-            writeAccountsToJsonRepository(accounts);
+            persist(accounts, appender -> appender.appendDeleteId(id));
+            index.remove(id);
+            invalidateAccount(id);
         });
     }
 
@@ -184,15 +247,124 @@ public class JsonInalogyAuthenticatorTokenCredentialRepository extends BaseInalo
         });
     }
 
-    private void writeAccountsToJsonRepository(final Map<String, List<OneTimeTokenAccount>> accounts) {
-        FunctionUtils.doUnchecked(__ -> {
-            if (location.getFile() != null) {
-                LOGGER.debug("Saving [{}] google authenticator accounts to JSON file at [{}]", accounts.size(), location.getFile());
-                serializer.to(location.getFile(), accounts);
+    /**
+     * Folds the journal into the JSON file: the snapshot is written to a temporary file that is forced to disk
+     * and atomically replaces the JSON file. The journal is truncated only after the rename is forced to disk
+     * as well, so a power loss at any point leaves either the old file with the journal or the new file.
+     */
+    public void compact() {
+        if (journal == null) {
+            return;
+        }
+        lock.tryLock(__ -> {
+            val accounts = readAccountsFromJsonRepository();
+            if (journal.getPendingRecords() == 0) {
+                return;
             }
+            FunctionUtils.doUnchecked(___ -> {
+                val file = location.getFile();
+                val temporary = file.toPath().resolveSibling(file.getName() + ".tmp");
+                serializer.to(temporary.toFile(), accounts);
+                force(temporary);
+                moveAtomically(temporary, file.toPath());
+                forceDirectory(file.toPath().toAbsolutePath().getParent());
+                val records = journal.getPendingRecords();
+                journal.truncate();
+                rememberSnapshot(accounts, file);
+                snapshotJournalLength = 0;
+                LOGGER.debug("Compacted [{}] journal records into JSON repository file at [{}]", records, file);
+            });
         });
     }
 
+    @Override
+    public void destroy() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+            compactQuietly();
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (final Exception e) {
+            LoggingUtils.error(LOGGER, e);
+        }
+    }
+
+    private static void force(final Path file) throws IOException {
+        try (val channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Forces the directory entry of a renamed file to disk. Not every platform can open a directory
+     * (Windows cannot), in which case the rename is left to the file system.
+     */
+    private static void forceDirectory(final Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (val channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (final IOException e) {
+            LOGGER.debug("Unable to force directory [{}] to disk: [{}]", directory, e.getMessage());
+        }
+    }
+
+    private static void moveAtomically(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Persists a mutation already applied to the snapshot: appends the journal record when
+     * journaling is enabled, otherwise rewrites the whole JSON file.
+     */
+    private void persist(final Map<String, List<OneTimeTokenAccount>> accounts,
+                         final Consumer<InalogyAccountJournal> record) {
+        if (journal == null) {
+            writeAccountsToJsonRepository(accounts);
+            return;
+        }
+        try {
+            record.accept(journal);
+            snapshot = accounts;
+            snapshotJournalLength = journal.length();
+        } catch (final RuntimeException e) {
+            snapshot = null;
+            throw e;
+        }
+    }
+
+    private void writeAccountsToJsonRepository(final Map<String, List<OneTimeTokenAccount>> accounts) {
+        try {
+            FunctionUtils.doUnchecked(__ -> {
+                val file = location.getFile();
+                if (file != null) {
+                    LOGGER.debug("Saving [{}] google authenticator accounts to JSON file at [{}]", accounts.size(), file);
+                    serializer.to(file, accounts);
+                    rememberSnapshot(accounts, file);
+                }
+            });
+        } catch (final RuntimeException e) {
+            // The caller has already modified the snapshot in place; force a re-read from disk
+            snapshot = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the accounts stored in the JSON file, with the journal replayed on top when journaling
+     * is enabled. The files are parsed only when the JSON file's modification time or length, or the
+     * journal's length, differs from the last read or write; otherwise the in-memory snapshot is returned.
+     * Callers hold the lock and may modify the returned map only if they write it back.
+     */
     private Map<String, List<OneTimeTokenAccount>> readAccountsFromJsonRepository() {
         return FunctionUtils.doUnchecked(() -> {
             val file = location.getFile();
@@ -201,13 +373,37 @@ public class JsonInalogyAuthenticatorTokenCredentialRepository extends BaseInalo
             if (result) {
                 LOGGER.debug("Created JSON repository file at [{}]", file);
             }
-            if (file != null && file.length() > 0) {
+            if (file == null) {
+                index.clear();
+                return new HashMap<>(0);
+            }
+            if (snapshot != null && file.lastModified() == snapshotLastModified && file.length() == snapshotLength
+                    && (journal == null || journal.length() == snapshotJournalLength)) {
+                return snapshot;
+            }
+            Map<String, List<OneTimeTokenAccount>> accounts = null;
+            if (file.length() > 0) {
                 LOGGER.debug("Reading JSON repository file at [{}]", file);
-                val accounts = this.serializer.from(file);
-                LOGGER.debug("Read [{}] accounts from JSON repository file at [{}]", accounts.size(), file);
-                return accounts;
+                accounts = this.serializer.from(file);
+            }
+            if (accounts == null) {
+                accounts = new HashMap<>(0);
             }
-            return new HashMap<>(0);
+            if (journal != null) {
+                val replayed = journal.replay(accounts);
+                snapshotJournalLength = journal.length();
+                LOGGER.debug("Replayed [{}] journal records from [{}]", replayed, journal.getPath());
+            }
+            LOGGER.debug("Read [{}] accounts from JSON repository file at [{}]", accounts.size(), file);
+            index.rebuild(accounts);
+            rememberSnapshot(accounts, file);
+            return accounts;
         });
     }
+
+    private void rememberSnapshot(final Map<String, List<OneTimeTokenAccount>> accounts, final File file) {
+        snapshot = accounts;
+        snapshotLastModified = file.lastModified();
+        snapshotLength = file.length();
+    }
 }
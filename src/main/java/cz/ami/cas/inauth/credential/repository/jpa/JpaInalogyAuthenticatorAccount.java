@@ -0,0 +1,66 @@
+package cz.ami.cas.inauth.credential.repository.jpa;
+
+import jakarta.persistence.CascadeType;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.OneToMany;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.BatchSize;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JPA entity of a registered Inalogy Authenticator device.
+ * The columns used for lookups by the mobile-facing endpoints are indexed;
+ * scratch codes live in their own table so that consuming one is a single-row delete.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Entity
+@Table(name = "InalogyAuthenticatorAccount", indexes = {
+        @Index(name = "IDX_INALOGY_ACCOUNT_USERNAME", columnList = "username"),
+        @Index(name = "IDX_INALOGY_ACCOUNT_PUSH_ID", columnList = "pushId"),
+        @Index(name = "IDX_INALOGY_ACCOUNT_DEVICE_KEY_ID", columnList = "deviceKeyId")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class JpaInalogyAuthenticatorAccount {
+
+    @Id
+    private long id;
+
+    @Column(nullable = false)
+    private String username;
+
+    @Column(nullable = false, length = 2048)
+    private String secretKey;
+
+    @Column(nullable = false)
+    private int validationCode;
+
+    private String name;
+
+    private ZonedDateTime registrationDate;
+
+    private String source;
+
+    private String deviceType;
+
+    private String pushId;
+
+    private String deviceKeyId;
+
+    @OneToMany(mappedBy = "account", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
+    @BatchSize(size = 100)
+    private List<JpaInalogyAuthenticatorScratchCode> scratchCodes = new ArrayList<>();
+}
@@ -0,0 +1,48 @@
+package cz.ami.cas.inauth.credential.repository.jpa;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * JPA entity of a single (encoded) scratch code of an Inalogy Authenticator device.
+ * The code is stored as a decimal string because the scratch code cipher may produce
+ * values that do not fit into a numeric column.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Entity
+@Table(name = "InalogyAuthenticatorScratchCode", indexes =
+        @Index(name = "IDX_INALOGY_SCRATCH_CODE_ACCOUNT", columnList = "account_id"))
+@Getter
+@Setter
+@NoArgsConstructor
+public class JpaInalogyAuthenticatorScratchCode {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "account_id", nullable = false)
+    private JpaInalogyAuthenticatorAccount account;
+
+    @Column(nullable = false, length = 512)
+    private String code;
+
+    public JpaInalogyAuthenticatorScratchCode(final JpaInalogyAuthenticatorAccount account, final String code) {
+        this.account = account;
+        this.code = code;
+    }
+}
@@ -0,0 +1,97 @@
+package cz.ami.cas.inauth.hazelcast;
+
+import cz.ami.cas.inauth.configuration.mfa.InalogyMetricsProperties;
+import cz.ami.cas.inauth.service.InalogyOperationTimers;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Base of the decorators timing request map operations in {@code inalogy.request.map.operation}, tagged with
+ * the map and the operation. Lookups are tagged {@code found} or {@code missing}. The decorated map is destroyed
+ * together with the decorator, so an in-process map still stops its expiry thread.
+ *
+ * @param <T> The type of request object
+ * @param <M> The type of the decorated map
+ * @author Inalogy
+ * @since 1.0.0
+ */
+public abstract class AbstractInalogyTimedRequestMap<T, M extends InalogyRequestMap<T>> implements InalogyRequestMap<T>, DisposableBean {
+
+    /**
+     * The decorated map.
+     */
+    protected final M delegate;
+
+    /**
+     * Timers of the operations.
+     */
+    protected final InalogyOperationTimers timers;
+
+    protected AbstractInalogyTimedRequestMap(final M delegate, final String mapName, final InalogyMetricsProperties properties,
+                                             final MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.timers = new InalogyOperationTimers("inalogy.request.map.operation", "Time spent in request map operations",
+                Tags.of("map", mapName), properties.isPercentileHistogram(), meterRegistry);
+    }
+
+    /**
+     * Outcome of a lookup.
+     *
+     * @param value the value found, may be null
+     * @return {@code found} or {@code missing}
+     */
+    protected static String found(final Object value) {
+        return value != null ? "found" : "missing";
+    }
+
+    @Override
+    public T getRequest(final String requestId) {
+        return timers.record("getRequest", () -> delegate.getRequest(requestId), AbstractInalogyTimedRequestMap::found);
+    }
+
+    @Override
+    public void putRequest(final T request) {
+        timers.run("putRequest", () -> delegate.putRequest(request));
+    }
+
+    @Override
+    public void updateRequest(final String requestId, final T request) {
+        timers.run("updateRequest", () -> delegate.updateRequest(requestId, request));
+    }
+
+    @Override
+    public void removeRequest(final String requestId) {
+        timers.run("removeRequest", () -> delegate.removeRequest(requestId));
+    }
+
+    @Override
+    public boolean containsKey(final String requestId) {
+        return timers.record("containsKey", () -> delegate.containsKey(requestId), present -> present ? "found" : "missing");
+    }
+
+    @Override
+    public void reject(final T request) {
+        timers.run("reject", () -> delegate.reject(request));
+    }
+
+    @Override
+    public UUID addRequestListener(final Consumer<T> listener) {
+        return delegate.addRequestListener(listener);
+    }
+
+    @Override
+    public void removeRequestListener(final UUID registrationId) {
+        delegate.removeRequestListener(registrationId);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (delegate instanceof DisposableBean disposable) {
+            disposable.destroy();
+        }
+    }
+}
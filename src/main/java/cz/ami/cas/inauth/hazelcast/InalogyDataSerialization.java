@@ -0,0 +1,111 @@
+package cz.ami.cas.inauth.hazelcast;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import lombok.val;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers writing the nullable and composite fields of the request records in a compact form
+ * for {@link com.hazelcast.nio.serialization.DataSerializable}.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+public final class InalogyDataSerialization {
+
+    private static final byte INT = 0;
+
+    private static final byte LONG = 1;
+
+    private static final byte OTHER = 2;
+
+    private InalogyDataSerialization() {
+    }
+
+    public static void writeNullableLong(final ObjectDataOutput out, final Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    public static Long readNullableLong(final ObjectDataInput in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    public static void writeEnum(final ObjectDataOutput out, final Enum<?> value) throws IOException {
+        out.writeString(value == null ? null : value.name());
+    }
+
+    public static <E extends Enum<E>> E readEnum(final ObjectDataInput in, final Class<E> type) throws IOException {
+        val name = in.readString();
+        return name == null ? null : Enum.valueOf(type, name);
+    }
+
+    public static void writeZonedDateTime(final ObjectDataOutput out, final ZonedDateTime value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.toEpochSecond());
+            out.writeInt(value.getNano());
+            out.writeString(value.getZone().getId());
+        }
+    }
+
+    public static ZonedDateTime readZonedDateTime(final ObjectDataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        val instant = Instant.ofEpochSecond(in.readLong(), in.readInt());
+        return ZonedDateTime.ofInstant(instant, ZoneId.of(in.readString()));
+    }
+
+    /**
+     * Writes a list of numbers, storing {@link Integer} and {@link Long} values without a type descriptor.
+     *
+     * @param out    the output
+     * @param values the values, may be null
+     * @throws IOException if the output fails
+     */
+    public static void writeNumbers(final ObjectDataOutput out, final List<? extends Number> values) throws IOException {
+        out.writeInt(values == null ? -1 : values.size());
+        if (values == null) {
+            return;
+        }
+        for (val value : values) {
+            if (value instanceof Integer intValue) {
+                out.writeByte(INT);
+                out.writeInt(intValue);
+            } else if (value instanceof Long longValue) {
+                out.writeByte(LONG);
+                out.writeLong(longValue);
+            } else {
+                out.writeByte(OTHER);
+                out.writeObject(value);
+            }
+        }
+    }
+
+    public static List<Number> readNumbers(final ObjectDataInput in) throws IOException {
+        val size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        val values = new ArrayList<Number>(size);
+        for (var i = 0; i < size; i++) {
+            val type = in.readByte();
+            switch (type) {
+                case INT -> values.add(in.readInt());
+                case LONG -> values.add(in.readLong());
+                default -> values.add(in.<Number>readObject());
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,111 @@
+package cz.ami.cas.inauth.hazelcast;
+
+import com.hazelcast.config.EvictionConfig;
+import com.hazelcast.config.EvictionPolicy;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MaxSizePolicy;
+import com.hazelcast.config.NearCacheConfig;
+import com.hazelcast.map.IMap;
+import cz.ami.cas.inauth.configuration.mfa.InalogyNearCacheProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.util.Locale;
+
+/**
+ * Applies the configured near cache to request map configurations and publishes its statistics.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Slf4j
+public final class InalogyNearCacheSupport {
+
+    private InalogyNearCacheSupport() {
+    }
+
+    /**
+     * Adds a near cache to the map configuration when enabled. Invalidation on change is always on,
+     * so a member eventually stops serving a request after its owner changed it.
+     * <p>
+     * Invalidations are not immediate: members batch them according to the member-level properties
+     * {@code hazelcast.map.invalidation.batch.enabled} (default {@code true}),
+     * {@code hazelcast.map.invalidation.batch.size} (default 100) and
+     * {@code hazelcast.map.invalidation.batchfrequency.seconds} (default 10). They are read when the member
+     * starts and cannot be set per map here, so they have to be passed as JVM system properties. On a quiet
+     * cluster a cached {@code PENDING} request can therefore outlive its approval by up to the batch frequency,
+     * which only delays the status polls. Reads that a decision is based on bypass the near cache, see
+     * {@link cz.ami.cas.inauth.hazelcast.mfa.MfaRequestMap#getCurrentRequestByPushId(String)}.
+     *
+     * @param mapConfig  the map configuration, before the map is first obtained
+     * @param properties the near cache settings
+     * @return the same map configuration
+     */
+    public static MapConfig apply(final MapConfig mapConfig, final InalogyNearCacheProperties properties) {
+        if (properties.isEnabled()) {
+            LOGGER.debug("Enabling near cache for Hazelcast Map [{}]", mapConfig.getName());
+            val eviction = new EvictionConfig()
+                    .setEvictionPolicy(EvictionPolicy.LRU)
+                    .setMaxSizePolicy(MaxSizePolicy.ENTRY_COUNT)
+                    .setSize(properties.getMaxSize());
+            val nearCache = new NearCacheConfig(mapConfig.getName())
+                    .setInvalidateOnChange(true)
+                    .setInMemoryFormat(InMemoryFormat.valueOf(properties.getInMemoryFormat().toUpperCase(Locale.ENGLISH)))
+                    .setTimeToLiveSeconds(properties.getTimeToLiveSeconds())
+                    .setMaxIdleSeconds(properties.getMaxIdleSeconds())
+                    .setEvictionConfig(eviction);
+            mapConfig.setNearCacheConfig(nearCache);
+        }
+        return mapConfig;
+    }
+
+    /**
+     * Publishes near cache hits, misses and the hit ratio of the map, tagged with the map name.
+     * Nothing is registered when the map has no near cache.
+     *
+     * @param map           the map
+     * @param properties    the near cache settings
+     * @param meterRegistry the registry to publish to
+     */
+    public static void bindMetrics(final IMap<?, ?> map, final InalogyNearCacheProperties properties,
+                                   final MeterRegistry meterRegistry) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        FunctionCounter.builder("inalogy.hazelcast.near.cache.hits", map, InalogyNearCacheSupport::nearCacheHits)
+                .description("Reads of the request map served by the local near cache")
+                .tag("map", map.getName())
+                .register(meterRegistry);
+        FunctionCounter.builder("inalogy.hazelcast.near.cache.misses", map, InalogyNearCacheSupport::nearCacheMisses)
+                .description("Reads of the request map that had to go to the owning member")
+                .tag("map", map.getName())
+                .register(meterRegistry);
+        Gauge.builder("inalogy.hazelcast.near.cache.ratio", map, InalogyNearCacheSupport::nearCacheRatio)
+                .description("Share of request map reads served by the local near cache")
+                .tag("map", map.getName())
+                .register(meterRegistry);
+    }
+
+    private static double nearCacheHits(final IMap<?, ?> map) {
+        val stats = map.getLocalMapStats().getNearCacheStats();
+        return stats == null ? 0 : stats.getHits();
+    }
+
+    private static double nearCacheMisses(final IMap<?, ?> map) {
+        val stats = map.getLocalMapStats().getNearCacheStats();
+        return stats == null ? 0 : stats.getMisses();
+    }
+
+    private static double nearCacheRatio(final IMap<?, ?> map) {
+        val stats = map.getLocalMapStats().getNearCacheStats();
+        if (stats == null) {
+            return 0;
+        }
+        val total = stats.getHits() + stats.getMisses();
+        return total == 0 ? 0 : (double) stats.getHits() / total;
+    }
+}
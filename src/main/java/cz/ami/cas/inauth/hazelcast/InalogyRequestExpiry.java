@@ -0,0 +1,61 @@
+package cz.ami.cas.inauth.hazelcast;
+
+import com.hazelcast.map.IMap;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expiry of request map entries. Each entry lives until the {@code validUntil} of its request plus a short
+ * grace period, so a client polling right at the deadline still sees the final state instead of a missing request.
+ * The map-wide time to live derived from the configured timeout only bounds entries written without their own.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+public final class InalogyRequestExpiry {
+
+    /**
+     * Time in milliseconds an entry is kept after its request expired.
+     */
+    public static final long GRACE_MS = 2000;
+
+    private InalogyRequestExpiry() {
+    }
+
+    /**
+     * Returns the time to live of an entry whose request expires at the given time.
+     *
+     * @param validUntil expiry time of the request as epoch millisecond
+     * @param now        current time as epoch millisecond
+     * @return the time to live in milliseconds, at least one
+     */
+    public static long ttlMillis(final long validUntil, final long now) {
+        return Math.max(1, validUntil + GRACE_MS - now);
+    }
+
+    /**
+     * Returns the map-wide time to live in seconds for requests created with the given timeout.
+     *
+     * @param timeoutMs request timeout in milliseconds
+     * @return the time to live in seconds
+     */
+    public static long maxTtlSeconds(final long timeoutMs) {
+        return TimeUnit.MILLISECONDS.toSeconds(timeoutMs + GRACE_MS) + 1;
+    }
+
+    /**
+     * Publishes the number of entries of the map owned by this member, tagged with the map name.
+     * Summed over the cluster it is the number of requests in flight.
+     *
+     * @param map           the map
+     * @param meterRegistry the registry to publish to
+     */
+    public static void bindMetrics(final IMap<?, ?> map, final MeterRegistry meterRegistry) {
+        Gauge.builder("inalogy.request.map.entries", map, m -> m.getLocalMapStats().getOwnedEntryCount())
+                .description("Entries of the request map owned by this member")
+                .tag("map", map.getName())
+                .register(meterRegistry);
+    }
+}
@@ -1,5 +1,8 @@
 package cz.ami.cas.inauth.hazelcast;
 
+import java.util.UUID;
+import java.util.function.Consumer;
+
 /**
  * Generic interface for managing request objects in a distributed map.
  * This interface defines the basic operations for storing, retrieving,
@@ -58,4 +61,20 @@ public interface InalogyRequestMap<T> {
      * @param request The request to reject
      */
     void reject(T request);
+
+    /**
+     * Registers a listener invoked on this member whenever a request is stored or changed
+     * anywhere in the cluster.
+     *
+     * @param listener The listener receiving the new state of the request
+     * @return The registration ID used to remove the listener
+     */
+    UUID addRequestListener(Consumer<T> listener);
+
+    /**
+     * Removes a listener registered by {@link #addRequestListener(Consumer)}.
+     *
+     * @param registrationId The registration ID
+     */
+    void removeRequestListener(UUID registrationId);
 }
@@ -0,0 +1,31 @@
+package cz.ami.cas.inauth.hazelcast;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import lombok.RequiredArgsConstructor;
+
+import java.util.function.Consumer;
+
+/**
+ * Hazelcast map listener passing every stored or changed request to a consumer.
+ *
+ * @param <T> The type of request object
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@RequiredArgsConstructor
+public class InalogyRequestMapListener<T> implements EntryAddedListener<String, T>, EntryUpdatedListener<String, T> {
+
+    private final Consumer<T> listener;
+
+    @Override
+    public void entryAdded(final EntryEvent<String, T> event) {
+        listener.accept(event.getValue());
+    }
+
+    @Override
+    public void entryUpdated(final EntryEvent<String, T> event) {
+        listener.accept(event.getValue());
+    }
+}
@@ -0,0 +1,223 @@
+package cz.ami.cas.inauth.hazelcast.local;
+
+import com.hazelcast.map.EntryProcessor;
+import cz.ami.cas.inauth.configuration.mfa.InalogyRequestMapProperties;
+import cz.ami.cas.inauth.hazelcast.InalogyRequestMap;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Base of the in-process request maps used instead of Hazelcast on single-node deployments.
+ * Requests live in a concurrent map and expire at their {@code validUntil} through a timing wheel;
+ * reads check the deadline as well, so an expired request is never returned. Listeners are called
+ * on a separate thread, as Hazelcast delivers entry events, so a slow listener cannot hold up a writer.
+ * Stored requests are never shared with callers: like the serialized values of Hazelcast, requests are
+ * copied when stored, when handed to an entry processor and when read, so a caller changing a request
+ * it holds cannot change the stored one behind the back of the other readers.
+ *
+ * @param <T> The type of request object
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Slf4j
+public abstract class AbstractInalogyLocalRequestMap<T> implements InalogyRequestMap<T>, DisposableBean {
+
+    /**
+     * Stored requests by their primary key.
+     */
+    protected final ConcurrentMap<String, T> requests = new ConcurrentHashMap<>();
+
+    private final Map<UUID, Consumer<T>> listeners = new ConcurrentHashMap<>();
+
+    private final ExecutorService listenerExecutor;
+
+    private final InalogyTimingWheel expiry;
+
+    protected AbstractInalogyLocalRequestMap(final String name, final InalogyRequestMapProperties properties,
+                                             final MeterRegistry meterRegistry) {
+        this.expiry = new InalogyTimingWheel(name, properties.getTickMs(), properties.getWheelSize(), this::expire);
+        this.listenerExecutor = Executors.newSingleThreadExecutor(r -> {
+            val thread = new Thread(r, name + "-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("inalogy.request.map.entries", requests, Map::size)
+                .description("Entries of the request map, including expired entries not yet evicted")
+                .tag("map", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the expiry time of the request as epoch millisecond.
+     *
+     * @param request the request
+     * @return the expiry time
+     */
+    protected abstract long validUntil(T request);
+
+    /**
+     * Returns a copy of the request that shares no mutable state with it.
+     *
+     * @param request the request
+     * @return the copy
+     */
+    protected abstract T copy(T request);
+
+    /**
+     * Called after a request was removed, to drop its secondary index entries.
+     *
+     * @param request the removed request
+     */
+    protected void removed(final T request) {
+    }
+
+    /**
+     * Stores the request under the key, schedules its expiry and notifies listeners.
+     *
+     * @param key     the primary key
+     * @param request the request
+     * @return the request previously stored under the key, or null
+     */
+    protected T store(final String key, final T request) {
+        val stored = copy(request);
+        val previous = requests.put(key, stored);
+        expiry.schedule(key, validUntil(stored));
+        fire(stored);
+        return previous;
+    }
+
+    /**
+     * Runs the entry processor against a copy of the live request under the key, atomically with respect to
+     * other writers of the key. A value set by the processor is stored and reported to listeners; a copy
+     * changed without being set is discarded, so the stored request is never changed in place.
+     *
+     * @param key       the primary key
+     * @param processor the entry processor
+     * @param <R>       the type of the processor result
+     * @return the processor result
+     */
+    protected <R> R executeOnKey(final String key, final EntryProcessor<String, T, R> processor) {
+        val result = new AtomicReference<R>();
+        val stored = new AtomicReference<T>();
+        val evicted = new AtomicReference<T>();
+        requests.compute(key, (k, current) -> {
+            val live = live(current);
+            val entry = new TrackingEntry<>(k, live == null ? null : copy(live));
+            result.set(processor.process(entry));
+            if (entry.changed) {
+                stored.set(entry.getValue());
+                return entry.getValue();
+            }
+            if (current != null && live == null) {
+                evicted.set(current);
+            }
+            return live;
+        });
+        if (evicted.get() != null) {
+            removed(evicted.get());
+        }
+        val value = stored.get();
+        if (value != null) {
+            expiry.schedule(key, validUntil(value));
+            fire(value);
+        }
+        return result.get();
+    }
+
+    /**
+     * Returns a copy of the request unless it has expired, for handing out to a caller.
+     *
+     * @param request the request, may be null
+     * @return the copy, or null if the request is null or expired
+     */
+    protected T read(final T request) {
+        val live = live(request);
+        return live == null ? null : copy(live);
+    }
+
+    /**
+     * Returns the request unless it has expired.
+     *
+     * @param request the request, may be null
+     * @return the request, or null if it is null or expired
+     */
+    protected T live(final T request) {
+        return request == null || validUntil(request) <= System.currentTimeMillis() ? null : request;
+    }
+
+    /**
+     * Returns the number of stored requests, including expired ones not yet evicted.
+     *
+     * @return the number of stored requests
+     */
+    public int size() {
+        return requests.size();
+    }
+
+    @Override
+    public UUID addRequestListener(final Consumer<T> listener) {
+        val registrationId = UUID.randomUUID();
+        listeners.put(registrationId, listener);
+        return registrationId;
+    }
+
+    @Override
+    public void removeRequestListener(final UUID registrationId) {
+        listeners.remove(registrationId);
+    }
+
+    @Override
+    public void destroy() {
+        expiry.close();
+        listenerExecutor.shutdownNow();
+        listeners.clear();
+    }
+
+    private void fire(final T request) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        listenerExecutor.execute(() -> listeners.values().forEach(listener -> {
+            try {
+                listener.accept(request);
+            } catch (final Exception e) {
+                LOGGER.debug("Request listener failed", e);
+            }
+        }));
+    }
+
+    private void expire(final String key) {
+        val request = requests.get(key);
+        if (request != null && live(request) == null && requests.remove(key, request)) {
+            removed(request);
+        }
+    }
+
+    private static final class TrackingEntry<V> extends AbstractMap.SimpleEntry<String, V> {
+
+        private boolean changed;
+
+        TrackingEntry(final String key, final V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(final V value) {
+            changed = true;
+            return super.setValue(value);
+        }
+    }
+}
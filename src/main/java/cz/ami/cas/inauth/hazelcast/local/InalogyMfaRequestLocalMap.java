@@ -0,0 +1,142 @@
+package cz.ami.cas.inauth.hazelcast.local;
+
+import cz.ami.cas.inauth.configuration.mfa.InalogyRequestMapProperties;
+import cz.ami.cas.inauth.hazelcast.mfa.InalogyMfaRequest;
+import cz.ami.cas.inauth.hazelcast.mfa.InalogyMfaRequestCoalesce;
+import cz.ami.cas.inauth.hazelcast.mfa.InalogyMfaRequestDetach;
+import cz.ami.cas.inauth.hazelcast.mfa.InalogyMfaRequestFanOutRename;
+import cz.ami.cas.inauth.hazelcast.mfa.InalogyMfaRequestTransition;
+import cz.ami.cas.inauth.hazelcast.mfa.MfaRequestMap;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.val;
+
+import static cz.ami.cas.inauth.authenticator.model.push.PushAuthenticationStatus.REJECTED;
+
+/**
+ * In-process implementation of MFA request management for single-node deployments.
+ * Like the Hazelcast map, requests are keyed by push ID and transitioned by the same entry processors,
+ * which here run atomically inside {@link java.util.concurrent.ConcurrentHashMap#compute}.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+public class InalogyMfaRequestLocalMap extends AbstractInalogyLocalRequestMap<InalogyMfaRequest> implements MfaRequestMap {
+
+    public InalogyMfaRequestLocalMap(final InalogyRequestMapProperties properties, final MeterRegistry meterRegistry) {
+        super("inalogy-mfa-requests", properties, meterRegistry);
+    }
+
+    @Override
+    protected long validUntil(final InalogyMfaRequest request) {
+        return request.getValidUntil();
+    }
+
+    @Override
+    protected InalogyMfaRequest copy(final InalogyMfaRequest request) {
+        return request.toBuilder().build();
+    }
+
+    /**
+     * Retrieves an MFA request by its request ID.
+     * Requests are keyed by push ID, so this scans all requests and should stay off hot paths.
+     *
+     * @param requestId The ID of the request to retrieve
+     * @return The MFA request associated with the given request ID, or null if not found
+     */
+    @Override
+    public InalogyMfaRequest getRequest(String requestId) {
+        return requests.values().stream()
+                .filter(request -> requestId.equals(request.getRequestId()))
+                .map(this::read)
+                .filter(request -> request != null)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Stores an MFA request under its push ID, replacing any previous request of the device.
+     *
+     * @param request The MFA request to store
+     */
+    @Override
+    public void putRequest(InalogyMfaRequest request) {
+        store(request.getPushId(), request);
+    }
+
+    /**
+     * Replaces the stored MFA request of the device.
+     *
+     * @param requestId The ID of the request to update
+     * @param request The updated MFA request
+     */
+    @Override
+    public void updateRequest(String requestId, InalogyMfaRequest request) {
+        store(request.getPushId(), request);
+    }
+
+    @Override
+    public boolean containsKey(String requestId) {
+        return getRequest(requestId) != null;
+    }
+
+    @Override
+    public InalogyMfaRequest getRequestByPushId(String pushId) {
+        return read(requests.get(pushId));
+    }
+
+    @Override
+    public void removeRequest(String requestId) {
+        requests.values().removeIf(request -> requestId.equals(request.getRequestId()));
+    }
+
+    @Override
+    public void reject(InalogyMfaRequest pendingRequest) {
+        val rejected = executeOnKey(pendingRequest.getPushId(), InalogyMfaRequestTransition.reject(pendingRequest.getRequestId()));
+        if (Boolean.TRUE.equals(rejected)) {
+            pendingRequest.setStatus(REJECTED);
+        }
+    }
+
+    @Override
+    public boolean approve(String pushId, String requestId, Long accountId, String otp, String userResponse) {
+        return Boolean.TRUE.equals(executeOnKey(pushId, InalogyMfaRequestTransition.approve(requestId, accountId, otp, userResponse)));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Moves the request the same way as the Hazelcast map: it is detached from its old key and stored
+     * under the new one only if that key is free, then the fan-out lists of its siblings are rewritten.
+     */
+    @Override
+    public boolean changePushId(String currentPushId, String newPushId) {
+        val request = executeOnKey(currentPushId, new InalogyMfaRequestDetach());
+        if (request == null) {
+            return false;
+        }
+        request.setPushId(newPushId);
+        request.setFanOutPushIds(InalogyMfaRequestFanOutRename.rename(request.getFanOutPushIds(), currentPushId, newPushId));
+        val stored = executeOnKey(newPushId, entry -> {
+            if (entry.getValue() != null) {
+                return false;
+            }
+            entry.setValue(request);
+            return true;
+        });
+        if (!stored) {
+            return false;
+        }
+        if (request.getFanOutPushIds() != null) {
+            val rename = new InalogyMfaRequestFanOutRename(request.getRequestId(), currentPushId, newPushId);
+            request.getFanOutPushIds().stream()
+                    .filter(pushId -> !pushId.equals(newPushId))
+                    .forEach(pushId -> executeOnKey(pushId, rename));
+        }
+        return true;
+    }
+
+    @Override
+    public InalogyMfaRequest putIfNoPending(InalogyMfaRequest request, long windowMs) {
+        return executeOnKey(request.getPushId(), new InalogyMfaRequestCoalesce(request, windowMs, System.currentTimeMillis()));
+    }
+}
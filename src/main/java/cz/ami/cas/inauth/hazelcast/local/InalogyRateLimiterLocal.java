@@ -0,0 +1,68 @@
+package cz.ami.cas.inauth.hazelcast.local;
+
+import cz.ami.cas.inauth.hazelcast.ratelimit.InalogyRateLimiter;
+import cz.ami.cas.inauth.hazelcast.ratelimit.InalogyTokenBucket;
+import cz.ami.cas.inauth.hazelcast.ratelimit.InalogyTokenBucketAcquire;
+import lombok.val;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.AbstractMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-process token buckets for single-node deployments. Buckets are updated by the same entry processor
+ * as in the cluster, inside {@link ConcurrentHashMap#compute}; buckets untouched long enough to be full
+ * again are dropped by a periodic sweep.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+public class InalogyRateLimiterLocal implements InalogyRateLimiter, DisposableBean {
+
+    private final ConcurrentMap<String, InalogyTokenBucket> buckets = new ConcurrentHashMap<>();
+
+    private final long maxIdleMs;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        val thread = new Thread(r, "inalogy-rate-limit-sweep");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates the bucket store.
+     *
+     * @param maxIdleSeconds the longest time an untouched bucket needs to fill up
+     */
+    public InalogyRateLimiterLocal(final long maxIdleSeconds) {
+        this.maxIdleMs = TimeUnit.SECONDS.toMillis(maxIdleSeconds);
+        scheduler.scheduleWithFixedDelay(this::sweep, maxIdleSeconds, maxIdleSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public boolean tryAcquire(final String key, final long capacity, final double refillPerSecond) {
+        val processor = new InalogyTokenBucketAcquire(capacity, refillPerSecond, System.currentTimeMillis());
+        val acquired = new AtomicBoolean();
+        buckets.compute(key, (k, bucket) -> {
+            val entry = new AbstractMap.SimpleEntry<>(k, bucket);
+            acquired.set(processor.process(entry));
+            return entry.getValue();
+        });
+        return acquired.get();
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdown();
+    }
+
+    private void sweep() {
+        val idleSince = System.currentTimeMillis() - maxIdleMs;
+        buckets.values().removeIf(bucket -> bucket.getUpdatedAt() < idleSince);
+    }
+}
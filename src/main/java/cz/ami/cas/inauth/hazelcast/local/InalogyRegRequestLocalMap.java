@@ -0,0 +1,175 @@
+package cz.ami.cas.inauth.hazelcast.local;
+
+import cz.ami.cas.inauth.configuration.mfa.InalogyMetricsProperties;
+import cz.ami.cas.inauth.configuration.mfa.InalogyRequestMapProperties;
+import cz.ami.cas.inauth.hazelcast.registration.InalogyRegistrationRequest;
+import cz.ami.cas.inauth.hazelcast.registration.RegistrationRequestMap;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process implementation of registration request management for single-node deployments.
+ * Requests are keyed by request ID, with a secondary index from the encoded secret to the request ID
+ * that is cleaned up whenever its request is replaced, removed or expires. As for the Hazelcast map,
+ * mappings that no longer resolve are counted periodically in the background for the orphaned index entries gauge.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Slf4j
+public class InalogyRegRequestLocalMap extends AbstractInalogyLocalRequestMap<InalogyRegistrationRequest>
+        implements RegistrationRequestMap {
+
+    /**
+     * Mappings between encoded secrets and request IDs.
+     */
+    private final Map<String, String> secrets = new ConcurrentHashMap<>();
+
+    /**
+     * Orphaned secret mappings found by the last scan.
+     */
+    private final AtomicLong orphanedSecrets = new AtomicLong();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        val thread = new Thread(r, "inalogy-registration-secrets-scan");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public InalogyRegRequestLocalMap(final InalogyRequestMapProperties properties, final InalogyMetricsProperties metricsProperties,
+                                     final MeterRegistry meterRegistry) {
+        super("inalogy-registration-requests", properties, meterRegistry);
+        Gauge.builder("inalogy.request.map.orphaned.index.entries", orphanedSecrets, AtomicLong::get)
+                .description("Secret mappings whose registration request is gone or changed its secret, as of the last scan")
+                .tag("map", "inalogy-registration-secrets")
+                .register(meterRegistry);
+        val scanIntervalMs = metricsProperties.getIndexScanIntervalMs();
+        if (scanIntervalMs > 0) {
+            scheduler.scheduleWithFixedDelay(this::scanSecrets, scanIntervalMs, scanIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        super.destroy();
+    }
+
+    @Override
+    protected long validUntil(final InalogyRegistrationRequest request) {
+        return request.getValidUntil();
+    }
+
+    @Override
+    protected InalogyRegistrationRequest copy(final InalogyRegistrationRequest request) {
+        return request.toBuilder()
+                .scratchCodes(request.getScratchCodes() == null ? null : new ArrayList<>(request.getScratchCodes()))
+                .build();
+    }
+
+    @Override
+    protected void removed(final InalogyRegistrationRequest request) {
+        if (request.getEncodedSecret() != null) {
+            secrets.remove(request.getEncodedSecret(), request.getRequestId());
+        }
+    }
+
+    @Override
+    public InalogyRegistrationRequest getRequest(String requestId) {
+        return read(requests.get(requestId));
+    }
+
+    /**
+     * Stores a registration request and maps its encoded secret to the request ID.
+     *
+     * @param request The registration request to store
+     */
+    @Override
+    public void putRequest(InalogyRegistrationRequest request) {
+        if (request.getEncodedSecret() != null) {
+            secrets.put(request.getEncodedSecret(), request.getRequestId());
+        }
+        val previous = store(request.getRequestId(), request);
+        if (previous != null && !Objects.equals(previous.getEncodedSecret(), request.getEncodedSecret())) {
+            removed(previous);
+        }
+    }
+
+    @Override
+    public void updateRequest(String requestId, InalogyRegistrationRequest request) {
+        if (!requestId.equals(request.getRequestId())) {
+            removeRequest(requestId);
+        }
+        putRequest(request);
+    }
+
+    @Override
+    public boolean containsKey(String requestId) {
+        return getRequest(requestId) != null;
+    }
+
+    /**
+     * Removes a registration request and its secret mapping.
+     *
+     * @param requestId The ID of the request to remove
+     */
+    @Override
+    public void removeRequest(String requestId) {
+        val request = requests.remove(requestId);
+        if (request != null) {
+            removed(request);
+        }
+    }
+
+    /**
+     * Registration requests have no rejection state, as in the Hazelcast implementation.
+     *
+     * @param request The registration request to reject
+     */
+    @Override
+    public void reject(InalogyRegistrationRequest request) {
+    }
+
+    @Override
+    public InalogyRegistrationRequest getRequestBySecret(String encodedSecret) {
+        val requestId = secrets.get(encodedSecret);
+        return requestId == null ? null : getRequest(requestId);
+    }
+
+    /**
+     * Returns the number of secret mappings, including mappings of expired requests not yet evicted.
+     *
+     * @return the number of secret mappings
+     */
+    public int secretCount() {
+        return secrets.size();
+    }
+
+    /**
+     * Counts the secret mappings that no longer resolve to their request.
+     */
+    private void scanSecrets() {
+        try {
+            orphanedSecrets.set(secrets.entrySet().stream()
+                    .filter(mapping -> {
+                        val request = requests.get(mapping.getValue());
+                        return request == null || !mapping.getKey().equals(request.getEncodedSecret());
+                    })
+                    .count());
+        } catch (final Exception e) {
+            LOGGER.warn("Unable to scan the secret mappings: [{}]", e.getMessage());
+            LOGGER.debug(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package cz.ami.cas.inauth.hazelcast.local;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel calling back keys once their deadline has passed. Scheduling is a constant-time
+ * append to the bucket of the deadline's tick; every tick only the bucket of that tick is visited, and
+ * keys due in a later rotation stay in it. A key may be called back up to one tick late, so callers
+ * still check the deadline on read.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Slf4j
+public class InalogyTimingWheel implements AutoCloseable {
+
+    private final long tickMs;
+
+    private final Queue<Timeout>[] buckets;
+
+    private final int mask;
+
+    private final Consumer<String> onExpiry;
+
+    private final ScheduledExecutorService scheduler;
+
+    private volatile long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public InalogyTimingWheel(final String name, final long tickMs, final int wheelSize, final Consumer<String> onExpiry) {
+        this.tickMs = Math.max(1, tickMs);
+        val size = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;
+        this.buckets = new Queue[size];
+        for (var i = 0; i < size; i++) {
+            buckets[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.mask = size - 1;
+        this.onExpiry = onExpiry;
+        this.currentTick = System.currentTimeMillis() / this.tickMs;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            val thread = new Thread(r, name + "-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::advance, this.tickMs, this.tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedules the key to be called back once the deadline has passed.
+     *
+     * @param key        the key
+     * @param deadlineMs the deadline as epoch millisecond
+     */
+    public void schedule(final String key, final long deadlineMs) {
+        val tick = Math.max(deadlineMs / tickMs + 1, currentTick + 1);
+        buckets[(int) (tick & mask)].add(new Timeout(key, tick));
+    }
+
+    /**
+     * Returns the number of scheduled keys, including keys whose entry was removed meanwhile.
+     *
+     * @return the number of scheduled keys
+     */
+    public int size() {
+        var size = 0;
+        for (val bucket : buckets) {
+            size += bucket.size();
+        }
+        return size;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void advance() {
+        try {
+            val target = System.currentTimeMillis() / tickMs;
+            while (currentTick < target) {
+                val tick = currentTick + 1;
+                val iterator = buckets[(int) (tick & mask)].iterator();
+                while (iterator.hasNext()) {
+                    val timeout = iterator.next();
+                    if (timeout.tick() <= tick) {
+                        iterator.remove();
+                        onExpiry.accept(timeout.key());
+                    }
+                }
+                currentTick = tick;
+            }
+        } catch (final Exception e) {
+            LOGGER.warn("Unable to expire local requests: [{}]", e.getMessage());
+            LOGGER.debug(e.getMessage(), e);
+        }
+    }
+
+    private record Timeout(String key, long tick) {
+    }
+}
@@ -1,20 +1,33 @@
 package cz.ami.cas.inauth.hazelcast.mfa;
 
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
 import cz.ami.cas.inauth.authenticator.model.push.PushAuthenticationStatus;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.val;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.List;
+
+import static cz.ami.cas.inauth.hazelcast.InalogyDataSerialization.*;
 
 /**
  * Data class representing a Multi-Factor Authentication (MFA) request.
  * This class stores all information related to an MFA request, including
  * identifiers, authentication data, challenge information, and status.
- * It is designed to be stored in a distributed Hazelcast map.
+ * It is designed to be stored in a distributed Hazelcast map, where it is written field by field
+ * through {@link DataSerializable} rather than through Java serialization.
  */
 @Data
-@Builder
-public class InalogyMfaRequest implements Serializable {
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class InalogyMfaRequest implements Serializable, DataSerializable {
     /**
      * Unique identifier for the MFA request.
      */
@@ -64,4 +77,57 @@ public class InalogyMfaRequest implements Serializable {
      * Timestamp indicating when this request expires.
      */
     private long validUntil;
+
+    /**
+     * Push IDs of all devices the request was sent to, including this one, when it was fanned out
+     * to several devices; null for a single device. The record of the first device is the one the login watches:
+     * the device answering first approves it with its own account, and the records of the other devices are rejected.
+     */
+    private List<String> fanOutPushIds;
+
+    /**
+     * Timestamp indicating when this request was created.
+     */
+    private long createdAt;
+
+    /**
+     * Identifier of the login flow that initiated the request. Only a repeated initiation from the same
+     * flow reuses a pending request.
+     */
+    private String flowId;
+
+    @Override
+    public void writeData(final ObjectDataOutput out) throws IOException {
+        out.writeString(requestId);
+        out.writeString(userId);
+        out.writeString(pushId);
+        writeNullableLong(out, accountId);
+        out.writeString(otp);
+        out.writeString(challengeType);
+        out.writeString(challengeData);
+        out.writeString(userResponse);
+        writeEnum(out, status);
+        out.writeLong(validUntil);
+        out.writeStringArray(fanOutPushIds == null ? null : fanOutPushIds.toArray(String[]::new));
+        out.writeLong(createdAt);
+        out.writeString(flowId);
+    }
+
+    @Override
+    public void readData(final ObjectDataInput in) throws IOException {
+        requestId = in.readString();
+        userId = in.readString();
+        pushId = in.readString();
+        accountId = readNullableLong(in);
+        otp = in.readString();
+        challengeType = in.readString();
+        challengeData = in.readString();
+        userResponse = in.readString();
+        status = readEnum(in, PushAuthenticationStatus.class);
+        validUntil = in.readLong();
+        val pushIds = in.readStringArray();
+        fanOutPushIds = pushIds == null ? null : List.of(pushIds);
+        createdAt = in.readLong();
+        flowId = in.readString();
+    }
 }
@@ -0,0 +1,54 @@
+package cz.ami.cas.inauth.hazelcast.mfa;
+
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.ExtendedMapEntry;
+import cz.ami.cas.inauth.hazelcast.InalogyRequestExpiry;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
+import java.io.Serial;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static cz.ami.cas.inauth.authenticator.model.push.PushAuthenticationStatus.PENDING;
+
+/**
+ * Entry processor storing a new MFA request for a device unless the same login flow of the same user already
+ * has a pending request on it that was created within the coalescing window. Requests without a flow ID are
+ * never coalesced. Running on the owning member makes the
+ * check and the write atomic, so concurrent initiations of the same login end up with one request.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@RequiredArgsConstructor
+public class InalogyMfaRequestCoalesce implements EntryProcessor<String, InalogyMfaRequest, InalogyMfaRequest> {
+
+    @Serial
+    private static final long serialVersionUID = -4413750873392190126L;
+
+    private final InalogyMfaRequest request;
+
+    private final long windowMs;
+
+    private final long now;
+
+    @Override
+    public InalogyMfaRequest process(final Map.Entry<String, InalogyMfaRequest> entry) {
+        val existing = entry.getValue();
+        if (existing != null && existing.getStatus() == PENDING
+                && existing.getUserId() != null && existing.getUserId().equals(request.getUserId())
+                && existing.getFlowId() != null && existing.getFlowId().equals(request.getFlowId())
+                && existing.getCreatedAt() + windowMs > now && existing.getValidUntil() > now) {
+            return existing;
+        }
+        if (entry instanceof ExtendedMapEntry<String, InalogyMfaRequest> extended) {
+            extended.setValue(request, InalogyRequestExpiry.ttlMillis(request.getValidUntil(), now), TimeUnit.MILLISECONDS);
+        } else {
+            entry.setValue(request);
+        }
+        return null;
+    }
+}
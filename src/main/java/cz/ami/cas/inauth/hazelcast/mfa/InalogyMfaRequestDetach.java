@@ -0,0 +1,29 @@
+package cz.ami.cas.inauth.hazelcast.mfa;
+
+import com.hazelcast.map.EntryProcessor;
+import lombok.val;
+
+import java.io.Serial;
+import java.util.Map;
+
+/**
+ * Entry processor removing the MFA request of a device and returning it, the first half of moving
+ * a request to a new push ID. See {@link InalogyMfaRequestHazelcastMap#changePushId(String, String)}.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+public class InalogyMfaRequestDetach implements EntryProcessor<String, InalogyMfaRequest, InalogyMfaRequest> {
+
+    @Serial
+    private static final long serialVersionUID = 3520962915374823311L;
+
+    @Override
+    public InalogyMfaRequest process(final Map.Entry<String, InalogyMfaRequest> entry) {
+        val request = entry.getValue();
+        if (request != null) {
+            entry.setValue(null);
+        }
+        return request;
+    }
+}
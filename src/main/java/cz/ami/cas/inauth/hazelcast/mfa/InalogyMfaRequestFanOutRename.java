@@ -0,0 +1,69 @@
+package cz.ami.cas.inauth.hazelcast.mfa;
+
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.ExtendedMapEntry;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
+import java.io.Serial;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Entry processor replacing a push ID in the fan-out list of a sibling request after one of the devices
+ * the request was sent to changed its push ID. The entry is left untouched unless it still holds the
+ * same request and lists the old push ID.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@RequiredArgsConstructor
+public class InalogyMfaRequestFanOutRename implements EntryProcessor<String, InalogyMfaRequest, Boolean> {
+
+    @Serial
+    private static final long serialVersionUID = -2297021766404953120L;
+
+    private final String requestId;
+
+    private final String currentPushId;
+
+    private final String newPushId;
+
+    /**
+     * Returns the fan-out list with the current push ID replaced by the new one.
+     *
+     * @param fanOutPushIds the fan-out list, may be null
+     * @param currentPushId the push ID to replace
+     * @param newPushId     the replacement
+     * @return the new list, or the given list if it does not contain the current push ID
+     */
+    public static List<String> rename(final List<String> fanOutPushIds, final String currentPushId, final String newPushId) {
+        if (fanOutPushIds == null || !fanOutPushIds.contains(currentPushId)) {
+            return fanOutPushIds;
+        }
+        return fanOutPushIds.stream()
+                .map(pushId -> pushId.equals(currentPushId) ? newPushId : pushId)
+                .toList();
+    }
+
+    @Override
+    public Boolean process(final Map.Entry<String, InalogyMfaRequest> entry) {
+        val request = entry.getValue();
+        if (request == null || !requestId.equals(request.getRequestId())) {
+            return Boolean.FALSE;
+        }
+        val renamed = rename(request.getFanOutPushIds(), currentPushId, newPushId);
+        if (renamed == request.getFanOutPushIds()) {
+            return Boolean.FALSE;
+        }
+        request.setFanOutPushIds(renamed);
+        if (entry instanceof ExtendedMapEntry<String, InalogyMfaRequest> extended) {
+            extended.setValueWithoutChangingExpiryTime(request);
+        } else {
+            entry.setValue(request);
+        }
+        return Boolean.TRUE;
+    }
+}
@@ -3,21 +3,31 @@ package cz.ami.cas.inauth.hazelcast.mfa;
 import com.hazelcast.config.MapConfig;
 import com.hazelcast.config.NamedConfig;
 import com.hazelcast.map.IMap;
+import com.hazelcast.query.Predicate;
+import com.hazelcast.query.Predicates;
 import cz.ami.cas.inauth.configuration.mfa.CoreInalogyMultifactorProperties;
-import cz.ami.cas.inauth.hazelcast.InalogyRequestMap;
+import cz.ami.cas.inauth.hazelcast.InalogyNearCacheSupport;
+import cz.ami.cas.inauth.hazelcast.InalogyRequestExpiry;
+import cz.ami.cas.inauth.hazelcast.InalogyRequestMapListener;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import lombok.val;
 import org.apereo.cas.configuration.CasConfigurationProperties;
 
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import com.hazelcast.core.HazelcastInstance;
 import org.apereo.cas.hz.HazelcastConfigurationFactory;
 
 import static cz.ami.cas.inauth.authenticator.model.push.PushAuthenticationStatus.REJECTED;
 
 /**
- * Implementation of MFA request management using Hazelcast distributed maps.
- * This class provides functionality for storing, retrieving, updating, and removing
- * MFA (Multi-Factor Authentication) requests in a distributed environment.
+ * Implementation of MFA request management using a single Hazelcast distributed map.
+ * Requests are keyed by push ID, so the status poll is one remote get and every state
+ * transition is one entry processor invocation on the owning member; no distributed locks are taken.
+ * Only the latest request of a device is kept, which is also the only one the device can answer.
+ * Each entry expires with its request, see {@link InalogyRequestExpiry}.
  */
 @Slf4j
 public class InalogyMfaRequestHazelcastMap implements MfaRequestMap {
@@ -28,148 +38,197 @@ public class InalogyMfaRequestHazelcastMap implements MfaRequestMap {
     private final static String REQUEST_MAP_NAME = "InalogyMfaRequest";
 
     /**
-     * Name of the Hazelcast map that stores mappings between push IDs and request IDs.
-     */
-    private final static String PUSH_ID_MAP_NAME = "InalogyPushIdMap";
-
-    /**
-     * Hazelcast distributed map that stores MFA requests with request ID as the key.
+     * Hazelcast distributed map that stores MFA requests with push ID as the key.
      */
     private final IMap<String, InalogyMfaRequest> mfaRequestMap;
 
-    /**
-     * Hazelcast distributed map that stores mappings between push IDs and request IDs.
-     */
-    private final IMap<String, String> pushIdMap;
-
     /**
      * Constructor for creating a new InalogyMfaRequestHazelcastMap.
-     * Initializes two Hazelcast distributed maps:
-     * 1. mfaRequestMap - for storing MFA requests
-     * 2. pushIdMap - for mapping push IDs to request IDs
      *
      * @param hazelcastInstance The Hazelcast instance to use for creating distributed maps
      * @param casProperties CAS configuration properties
      * @param mfaProperties MFA-specific configuration properties including timeout settings
+     * @param meterRegistry Registry the map and near cache statistics are published to
      */
-    public InalogyMfaRequestHazelcastMap(final HazelcastInstance hazelcastInstance, final CasConfigurationProperties casProperties, final CoreInalogyMultifactorProperties mfaProperties) {
+    public InalogyMfaRequestHazelcastMap(final HazelcastInstance hazelcastInstance, final CasConfigurationProperties casProperties,
+                                         final CoreInalogyMultifactorProperties mfaProperties, final MeterRegistry meterRegistry) {
         LOGGER.debug("Creating Hazelcast Map [{}]", REQUEST_MAP_NAME);
 
-        NamedConfig requestMapConfig = HazelcastConfigurationFactory.buildMapConfig(casProperties.getTicket().getRegistry().getHazelcast(), REQUEST_MAP_NAME, mfaProperties.getTimeoutMs());
-        hazelcastInstance.getConfig().addMapConfig((MapConfig) requestMapConfig);
+        NamedConfig requestMapConfig = HazelcastConfigurationFactory.buildMapConfig(casProperties.getTicket().getRegistry().getHazelcast(), REQUEST_MAP_NAME,
+                InalogyRequestExpiry.maxTtlSeconds(mfaProperties.getTimeoutMs()));
+        hazelcastInstance.getConfig().addMapConfig(InalogyNearCacheSupport.apply((MapConfig) requestMapConfig, mfaProperties.getNearCache()));
         mfaRequestMap = hazelcastInstance.getMap(REQUEST_MAP_NAME);
-
-        NamedConfig pushIdMapConfig = HazelcastConfigurationFactory.buildMapConfig(casProperties.getTicket().getRegistry().getHazelcast(), PUSH_ID_MAP_NAME, mfaProperties.getTimeoutMs());
-        hazelcastInstance.getConfig().addMapConfig((MapConfig) pushIdMapConfig);
-        pushIdMap = hazelcastInstance.getMap(PUSH_ID_MAP_NAME);
+        InalogyNearCacheSupport.bindMetrics(mfaRequestMap, mfaProperties.getNearCache(), meterRegistry);
+        InalogyRequestExpiry.bindMetrics(mfaRequestMap, meterRegistry);
     }
 
     /**
      * Retrieves an MFA request by its request ID.
+     * Requests are keyed by push ID, so this is a cluster-wide query and should stay off hot paths.
      *
      * @param requestId The ID of the request to retrieve
      * @return The MFA request associated with the given request ID, or null if not found
      */
     @Override
     public InalogyMfaRequest getRequest(String requestId) {
-        return mfaRequestMap.get(requestId);
+        return mfaRequestMap.values(byRequestId(requestId)).stream().findFirst().orElse(null);
     }
 
     /**
-     * Stores an MFA request in the distributed map and creates a mapping between
-     * the push ID and request ID. Uses locking to ensure thread safety.
+     * Stores an MFA request under its push ID, replacing any previous request of the device.
      *
      * @param request The MFA request to store
      */
     @Override
     public void putRequest(InalogyMfaRequest request) {
-        String pushId = request.getPushId();
-
-        pushIdMap.lock(pushId);
-        try {
-            mfaRequestMap.put(request.getRequestId(), request);
-            pushIdMap.put(pushId, request.getRequestId());
-        } finally {
-            pushIdMap.unlock(pushId);
-        }
+        set(request);
     }
 
     /**
-     * Updates an existing MFA request by removing the old one and adding the updated one.
-     * Uses locking to ensure thread safety.
+     * Replaces the stored MFA request of the device.
      *
      * @param requestId The ID of the request to update
      * @param request The updated MFA request
      */
     @Override
     public void updateRequest(String requestId, InalogyMfaRequest request) {
-        String pushId = request.getPushId();
-
-        pushIdMap.lock(pushId);
-        try {
-            mfaRequestMap.remove(requestId);
-            putRequest(request);
-        } finally {
-            pushIdMap.unlock(pushId);
-        }
+        set(request);
     }
 
     /**
      * Checks if an MFA request with the given request ID exists.
+     * Requests are keyed by push ID, so this is a cluster-wide query and should stay off hot paths.
      *
      * @param requestId The request ID to check
      * @return true if the request exists, false otherwise
      */
     @Override
     public boolean containsKey(String requestId) {
-        return mfaRequestMap.containsKey(requestId);
+        return !mfaRequestMap.keySet(byRequestId(requestId)).isEmpty();
     }
 
     /**
-     * Retrieves an MFA request by its push ID.
-     * First looks up the request ID associated with the push ID,
-     * then retrieves the MFA request using that request ID.
+     * Retrieves an MFA request by its push ID with a single remote get.
      *
      * @param pushId The push ID to look up
      * @return The MFA request associated with the given push ID, or null if not found
      */
     @Override
     public InalogyMfaRequest getRequestByPushId(String pushId) {
-        var requestId = pushIdMap.get(pushId);
-        if (requestId == null) {
-            return null;
-        }
-        return mfaRequestMap.get(requestId);
+        return mfaRequestMap.get(pushId);
+    }
+
+    /**
+     * Retrieves an MFA request by its push ID from the owning member with a read-only entry processor,
+     * so the answer never comes from a near cache that has not seen the latest invalidation yet.
+     *
+     * @param pushId The push ID to look up
+     * @return The MFA request associated with the given push ID, or null if not found
+     */
+    @Override
+    public InalogyMfaRequest getCurrentRequestByPushId(String pushId) {
+        return mfaRequestMap.executeOnKey(pushId, new InalogyMfaRequestRead());
     }
 
     /**
-     * Removes an MFA request and its associated push ID mapping.
-     * Uses locking to ensure thread safety when removing the push ID mapping.
+     * Removes an MFA request.
      *
      * @param requestId The ID of the request to remove
      */
     @Override
     public void removeRequest(String requestId) {
-        InalogyMfaRequest removed = mfaRequestMap.remove(requestId);
-        if (removed != null) {
-            String pushId = removed.getPushId();
-            pushIdMap.lock(pushId);
-            try {
-                pushIdMap.remove(pushId, requestId);
-            } finally {
-                pushIdMap.unlock(pushId);
-            }
-        }
+        mfaRequestMap.removeAll(byRequestId(requestId));
     }
 
     /**
-     * Marks an MFA request as rejected and updates it in the distributed map.
+     * Marks an MFA request as rejected if it is still pending.
      *
      * @param pendingRequest The MFA request to reject
      */
     @Override
     public void reject(InalogyMfaRequest pendingRequest) {
-        pendingRequest.setStatus(REJECTED);
-        updateRequest(pendingRequest.getRequestId(), pendingRequest);
+        val rejected = mfaRequestMap.executeOnKey(pendingRequest.getPushId(),
+                InalogyMfaRequestTransition.reject(pendingRequest.getRequestId()));
+        if (Boolean.TRUE.equals(rejected)) {
+            pendingRequest.setStatus(REJECTED);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean approve(String pushId, String requestId, Long accountId, String otp, String userResponse) {
+        return Boolean.TRUE.equals(mfaRequestMap.executeOnKey(pushId,
+                InalogyMfaRequestTransition.approve(requestId, accountId, otp, userResponse)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InalogyMfaRequest putIfNoPending(InalogyMfaRequest request, long windowMs) {
+        return mfaRequestMap.executeOnKey(request.getPushId(),
+                new InalogyMfaRequestCoalesce(request, windowMs, System.currentTimeMillis()));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Entry processors run on the member owning a single key, and the two push IDs generally live in
+     * different partitions, so the move cannot be one processor; a Hazelcast transaction would make it
+     * atomic at the cost of distributed locks on every move. Instead the request is detached from its old
+     * key by a processor that removes and returns it, and stored under the new key with its remaining
+     * lifetime only if that key is free, so a request created for the new push ID in the meantime is never
+     * overwritten. The fan-out lists of the sibling requests are then rewritten to the new push ID.
+     * An expired request is only removed.
+     */
+    @Override
+    public boolean changePushId(String currentPushId, String newPushId) {
+        val request = mfaRequestMap.executeOnKey(currentPushId, new InalogyMfaRequestDetach());
+        val now = System.currentTimeMillis();
+        if (request == null || request.getValidUntil() <= now) {
+            return false;
+        }
+        request.setPushId(newPushId);
+        request.setFanOutPushIds(InalogyMfaRequestFanOutRename.rename(request.getFanOutPushIds(), currentPushId, newPushId));
+        if (mfaRequestMap.putIfAbsent(newPushId, request,
+                InalogyRequestExpiry.ttlMillis(request.getValidUntil(), now), TimeUnit.MILLISECONDS) != null) {
+            LOGGER.debug("Dropping request [{}] of push ID [{}], a newer request is stored under [{}]",
+                    request.getRequestId(), currentPushId, newPushId);
+            return false;
+        }
+        if (request.getFanOutPushIds() != null) {
+            val rename = new InalogyMfaRequestFanOutRename(request.getRequestId(), currentPushId, newPushId);
+            request.getFanOutPushIds().stream()
+                    .filter(pushId -> !pushId.equals(newPushId))
+                    .forEach(pushId -> mfaRequestMap.executeOnKey(pushId, rename));
+        }
+        return true;
+    }
+
+    private void set(final InalogyMfaRequest request) {
+        mfaRequestMap.set(request.getPushId(), request,
+                InalogyRequestExpiry.ttlMillis(request.getValidUntil(), System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private static Predicate<String, InalogyMfaRequest> byRequestId(final String requestId) {
+        return Predicates.equal("requestId", requestId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UUID addRequestListener(Consumer<InalogyMfaRequest> listener) {
+        return mfaRequestMap.addEntryListener(new InalogyRequestMapListener<>(listener), true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeRequestListener(UUID registrationId) {
+        mfaRequestMap.removeEntryListener(registrationId);
     }
 }
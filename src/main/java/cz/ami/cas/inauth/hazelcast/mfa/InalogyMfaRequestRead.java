@@ -0,0 +1,30 @@
+package cz.ami.cas.inauth.hazelcast.mfa;
+
+import com.hazelcast.core.ReadOnly;
+import com.hazelcast.map.EntryProcessor;
+
+import java.io.Serial;
+import java.util.Map;
+
+/**
+ * Read-only entry processor returning the MFA request as stored on the member that owns it.
+ * Unlike {@code IMap#get}, it is never answered from a near cache, whose invalidations may lag behind.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+public class InalogyMfaRequestRead implements EntryProcessor<String, InalogyMfaRequest, InalogyMfaRequest>, ReadOnly {
+
+    @Serial
+    private static final long serialVersionUID = 8467219510437719212L;
+
+    @Override
+    public InalogyMfaRequest process(final Map.Entry<String, InalogyMfaRequest> entry) {
+        return entry.getValue();
+    }
+
+    @Override
+    public EntryProcessor<String, InalogyMfaRequest, InalogyMfaRequest> getBackupProcessor() {
+        return null;
+    }
+}
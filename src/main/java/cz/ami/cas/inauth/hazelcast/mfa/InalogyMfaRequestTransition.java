@@ -0,0 +1,91 @@
+package cz.ami.cas.inauth.hazelcast.mfa;
+
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.ExtendedMapEntry;
+import cz.ami.cas.inauth.authenticator.model.push.PushAuthenticationStatus;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
+import java.io.Serial;
+import java.util.Map;
+
+import static cz.ami.cas.inauth.authenticator.model.push.PushAuthenticationStatus.APPROVED;
+import static cz.ami.cas.inauth.authenticator.model.push.PushAuthenticationStatus.PENDING;
+import static cz.ami.cas.inauth.authenticator.model.push.PushAuthenticationStatus.REJECTED;
+
+/**
+ * Entry processor moving an MFA request out of the {@code PENDING} state on the member that owns it.
+ * The transition is applied only if the stored request is still pending and, when a request ID is given,
+ * is the same request the caller looked at; otherwise the entry is left untouched.
+ * The processor is also applied to backups, so no distributed lock is needed.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@RequiredArgsConstructor
+public class InalogyMfaRequestTransition implements EntryProcessor<String, InalogyMfaRequest, Boolean> {
+
+    @Serial
+    private static final long serialVersionUID = 6310744182950432154L;
+
+    private final String requestId;
+
+    private final PushAuthenticationStatus status;
+
+    private final Long accountId;
+
+    private final String otp;
+
+    private final String userResponse;
+
+    /**
+     * Creates a transition to {@code REJECTED}.
+     *
+     * @param requestId the expected request ID, or null to reject whatever request is pending
+     * @return the transition
+     */
+    public static InalogyMfaRequestTransition reject(final String requestId) {
+        return new InalogyMfaRequestTransition(requestId, REJECTED, null, null, null);
+    }
+
+    /**
+     * Creates a transition to {@code APPROVED} recording the OTP and challenge response.
+     *
+     * @param requestId    the expected request ID
+     * @param accountId    the account of the device that answered, or null to keep the account of the request
+     * @param otp          the OTP the device sent
+     * @param userResponse the challenge response the device sent
+     * @return the transition
+     */
+    public static InalogyMfaRequestTransition approve(final String requestId, final Long accountId,
+                                                      final String otp, final String userResponse) {
+        return new InalogyMfaRequestTransition(requestId, APPROVED, accountId, otp, userResponse);
+    }
+
+    @Override
+    public Boolean process(final Map.Entry<String, InalogyMfaRequest> entry) {
+        val request = entry.getValue();
+        if (request == null || request.getStatus() != PENDING
+                || (requestId != null && !requestId.equals(request.getRequestId()))) {
+            return Boolean.FALSE;
+        }
+        request.setStatus(status);
+        if (accountId != null) {
+            request.setAccountId(accountId);
+        }
+        if (otp != null) {
+            request.setOtp(otp);
+        }
+        if (userResponse != null) {
+            request.setUserResponse(userResponse);
+        }
+        if (entry instanceof ExtendedMapEntry<String, InalogyMfaRequest> extended) {
+            extended.setValueWithoutChangingExpiryTime(request);
+        } else {
+            entry.setValue(request);
+        }
+        return Boolean.TRUE;
+    }
+}
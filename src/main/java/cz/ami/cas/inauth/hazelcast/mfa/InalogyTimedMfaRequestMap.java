@@ -0,0 +1,55 @@
+package cz.ami.cas.inauth.hazelcast.mfa;
+
+import cz.ami.cas.inauth.configuration.mfa.InalogyMetricsProperties;
+import cz.ami.cas.inauth.hazelcast.AbstractInalogyTimedRequestMap;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Decorator timing the operations of an {@link MfaRequestMap}. Transitions are tagged
+ * {@code applied} or {@code skipped}, coalescing with {@code stored} or {@code coalesced}.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+public class InalogyTimedMfaRequestMap extends AbstractInalogyTimedRequestMap<InalogyMfaRequest, MfaRequestMap>
+        implements MfaRequestMap {
+
+    public InalogyTimedMfaRequestMap(final MfaRequestMap delegate, final InalogyMetricsProperties properties,
+                                     final MeterRegistry meterRegistry) {
+        super(delegate, "mfa", properties, meterRegistry);
+    }
+
+    @Override
+    public InalogyMfaRequest getRequestByPushId(final String pushId) {
+        return timers.record("getRequestByPushId", () -> delegate.getRequestByPushId(pushId), AbstractInalogyTimedRequestMap::found);
+    }
+
+    @Override
+    public InalogyMfaRequest getCurrentRequestByPushId(final String pushId) {
+        return timers.record("getCurrentRequestByPushId", () -> delegate.getCurrentRequestByPushId(pushId),
+                AbstractInalogyTimedRequestMap::found);
+    }
+
+    @Override
+    public boolean approve(final String pushId, final String requestId, final Long accountId, final String otp,
+                           final String userResponse) {
+        return timers.record("approve", () -> delegate.approve(pushId, requestId, accountId, otp, userResponse),
+                InalogyTimedMfaRequestMap::applied);
+    }
+
+    @Override
+    public boolean changePushId(final String currentPushId, final String newPushId) {
+        return timers.record("changePushId", () -> delegate.changePushId(currentPushId, newPushId),
+                InalogyTimedMfaRequestMap::applied);
+    }
+
+    @Override
+    public InalogyMfaRequest putIfNoPending(final InalogyMfaRequest request, final long windowMs) {
+        return timers.record("putIfNoPending", () -> delegate.putIfNoPending(request, windowMs),
+                pending -> pending == null ? "stored" : "coalesced");
+    }
+
+    private static String applied(final boolean applied) {
+        return applied ? "applied" : "skipped";
+    }
+}
@@ -25,4 +25,49 @@ public interface MfaRequestMap extends InalogyRequestMap<InalogyMfaRequest> {
      */
     InalogyMfaRequest getRequestByPushId(String pushId);
 
+    /**
+     * Atomically moves the pending request stored under the push ID to {@code APPROVED}.
+     *
+     * @param pushId       The push notification ID of the device
+     * @param requestId    The ID of the request the device answered
+     * @param accountId    The account of the device that answered, or null to keep the account of the request;
+     *                     set when a device approves on the record of another device of a fan-out
+     * @param otp          The OTP sent by the device
+     * @param userResponse The challenge response sent by the device
+     * @return true if the request was pending and is now approved, false otherwise
+     */
+    boolean approve(String pushId, String requestId, Long accountId, String otp, String userResponse);
+
+    /**
+     * Retrieves an MFA request by its push ID as currently stored, bypassing any near cache.
+     * Reads that a decision is based on use this; frequent status polls use {@link #getRequestByPushId(String)}.
+     * Maps without a near cache need not override it.
+     *
+     * @param pushId The push ID to look up
+     * @return The MFA request associated with the given push ID, or null if not found
+     */
+    default InalogyMfaRequest getCurrentRequestByPushId(String pushId) {
+        return getRequestByPushId(pushId);
+    }
+
+    /**
+     * Moves the request of a device to a new push notification ID. When the request was fanned out,
+     * the fan-out lists of the requests of the other devices are updated as well.
+     *
+     * @param currentPushId The current push notification ID
+     * @param newPushId     The new push notification ID
+     * @return true if a request was moved, false if the device had no request or a request is already
+     * stored under the new push ID
+     */
+    boolean changePushId(String currentPushId, String newPushId);
+
+    /**
+     * Stores the request under its push ID unless the same login flow of the same user already has
+     * a pending request on the device that was created less than the given window ago.
+     *
+     * @param request  The new MFA request
+     * @param windowMs The coalescing window in milliseconds
+     * @return the pending request that was kept instead, or null if the new request was stored
+     */
+    InalogyMfaRequest putIfNoPending(InalogyMfaRequest request, long windowMs);
 }
@@ -0,0 +1,245 @@
+package cz.ami.cas.inauth.hazelcast.outbox;
+
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.listener.EntryAddedListener;
+import cz.ami.cas.inauth.configuration.mfa.InalogyMessagingServiceProperties;
+import cz.ami.cas.inauth.configuration.mfa.InalogyPushOutboxProperties;
+import cz.ami.cas.inauth.hazelcast.mfa.InalogyMfaRequest;
+import cz.ami.cas.inauth.hazelcast.mfa.MfaRequestMap;
+import cz.ami.cas.inauth.service.InalogyMessagingService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apereo.cas.configuration.CasConfigurationProperties;
+import org.apereo.cas.hz.HazelcastConfigurationFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Durable outbox of push notifications, backed by a Hazelcast map keyed by MFA request ID and device.
+ * The login request only writes the push to the outbox; the member owning the entry delivers it,
+ * right away through a local entry listener and later through a periodic sweep of its owned entries.
+ * An entry is removed only after the messaging service accepted the push, so delivery is at least once:
+ * if the delivering member dies, the entry migrates to a backup and is attempted again when its lease runs out.
+ * Entries expire together with their MFA request and are never delivered late. When delivery gives up,
+ * the MFA request is rejected; a fanned-out request only once delivery gave up on all of its devices.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Slf4j
+public class InalogyPushOutbox implements DisposableBean {
+
+    /**
+     * Default bean name.
+     */
+    public static final String BEAN_NAME = "inalogyPushOutbox";
+
+    private static final String OUTBOX_MAP_NAME = "InalogyPushOutbox";
+
+    /**
+     * {@code notBefore} of an entry of a fan-out device that delivery gave up on. The entry is never claimed
+     * again and stays until it expires with its request, so the other devices can tell it gave up.
+     */
+    private static final long GIVEN_UP = Long.MAX_VALUE;
+
+    private final IMap<String, InalogyPushOutboxEntry> outbox;
+
+    private final InalogyPushOutboxProperties properties;
+
+    private final long leaseMs;
+
+    private final InalogyMessagingService messagingService;
+
+    private final MfaRequestMap mfaRequestMap;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        val thread = new Thread(r, "inalogy-push-outbox");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final UUID listenerId;
+
+    private final Counter delivered;
+
+    private final Counter expired;
+
+    private final Counter failed;
+
+    public InalogyPushOutbox(final HazelcastInstance hazelcastInstance, final CasConfigurationProperties casProperties,
+                             final InalogyMessagingServiceProperties messagingProperties, final long requestTimeoutMs,
+                             final InalogyMessagingService messagingService, final MfaRequestMap mfaRequestMap,
+                             final MeterRegistry meterRegistry) {
+        this.properties = messagingProperties.getOutbox();
+        this.leaseMs = leaseMs(messagingProperties);
+        if (leaseMs > properties.getLeaseMs()) {
+            LOGGER.warn("Outbox lease of [{}] ms is shorter than a single delivery may take, using [{}] ms",
+                    properties.getLeaseMs(), leaseMs);
+        }
+        this.messagingService = messagingService;
+        this.mfaRequestMap = mfaRequestMap;
+
+        LOGGER.debug("Creating Hazelcast Map [{}]", OUTBOX_MAP_NAME);
+        val mapConfig = HazelcastConfigurationFactory.buildMapConfig(casProperties.getTicket().getRegistry().getHazelcast(),
+                OUTBOX_MAP_NAME, TimeUnit.MILLISECONDS.toSeconds(requestTimeoutMs));
+        hazelcastInstance.getConfig().addMapConfig((MapConfig) mapConfig);
+        this.outbox = hazelcastInstance.getMap(OUTBOX_MAP_NAME);
+
+        this.delivered = Counter.builder("inalogy.push.outbox.delivered")
+                .description("Pushes from the outbox accepted by the messaging service")
+                .register(meterRegistry);
+        this.expired = Counter.builder("inalogy.push.outbox.expired")
+                .description("Pushes dropped from the outbox because their MFA request had expired")
+                .register(meterRegistry);
+        this.failed = Counter.builder("inalogy.push.outbox.failed")
+                .description("Pushes dropped from the outbox after the last delivery attempt failed")
+                .register(meterRegistry);
+        Gauge.builder("inalogy.push.outbox.size", outbox, map -> map.getLocalMapStats().getOwnedEntryCount())
+                .description("Pushes waiting in the outbox entries owned by this member")
+                .register(meterRegistry);
+
+        this.listenerId = outbox.addLocalEntryListener(
+                (EntryAddedListener<String, InalogyPushOutboxEntry>) event -> scheduler.execute(() -> process(event.getKey())));
+        scheduler.scheduleWithFixedDelay(this::sweep, properties.getPollIntervalMs(), properties.getPollIntervalMs(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the lease of a delivery attempt: the configured lease, raised when it is shorter than the
+     * longest a single delivery can take, so a slow but live delivery is never claimed again by a sweep.
+     * A delivery may wait for the batch to fill and for an in-flight slot, then make every allowed attempt
+     * up to the connect and request timeouts, backing off between attempts; hedged requests run in parallel
+     * and add nothing. One poll interval is added as a margin.
+     *
+     * @param messagingProperties the messaging service settings, including the outbox settings
+     * @return the lease in milliseconds
+     */
+    public static long leaseMs(final InalogyMessagingServiceProperties messagingProperties) {
+        val retry = messagingProperties.getRetry();
+        val attempts = Math.max(1, retry.getMaxAttempts());
+        val batch = messagingProperties.getBatch();
+        val delivery = (batch.isEnabled() ? batch.getMaxDelayMs() : 0)
+                + messagingProperties.getAcquireTimeoutMs()
+                + attempts * (messagingProperties.getConnectTimeoutMs() + messagingProperties.getRequestTimeoutMs())
+                + (attempts - 1) * retry.getMaxBackoffMs();
+        val outbox = messagingProperties.getOutbox();
+        return Math.max(outbox.getLeaseMs(), delivery + outbox.getPollIntervalMs());
+    }
+
+    /**
+     * Writes the push to the outbox. A push for a request and device already in the outbox is ignored.
+     *
+     * @param entry the push
+     * @return true if the push was added, false if the device already had one for the request
+     */
+    public boolean enqueue(final InalogyPushOutboxEntry entry) {
+        val ttl = entry.getValidUntil() - System.currentTimeMillis();
+        if (ttl <= 0) {
+            LOGGER.debug("Not adding push for expired request [{}] to the outbox", entry.getRequestId());
+            return false;
+        }
+        val previous = outbox.putIfAbsent(keyOf(entry), entry, ttl, TimeUnit.MILLISECONDS);
+        if (previous != null) {
+            LOGGER.debug("Push for request [{}] is already in the outbox", entry.getRequestId());
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void destroy() {
+        outbox.removeEntryListener(listenerId);
+        scheduler.shutdown();
+    }
+
+    private void sweep() {
+        try {
+            outbox.localKeySet().forEach(this::process);
+        } catch (final Exception e) {
+            LOGGER.warn("Unable to sweep the push outbox: [{}]", e.getMessage());
+            LOGGER.debug(e.getMessage(), e);
+        }
+    }
+
+    private void process(final String key) {
+        val now = System.currentTimeMillis();
+        val entry = outbox.executeOnKey(key, InalogyPushOutboxLease.claim(now, now + leaseMs));
+        if (entry == null) {
+            return;
+        }
+        if (entry.getValidUntil() <= now) {
+            LOGGER.debug("Dropping push for expired request [{}]", entry.getRequestId());
+            outbox.delete(key);
+            expired.increment();
+            return;
+        }
+        messagingService.sendPushNotificationAsync(entry.getPushId(), entry.getDeviceType(), entry.getChallengeType(),
+                        entry.getDataForChallenge(), entry.getKeyId(), entry.getCallback())
+                .thenAccept(sent -> onResult(entry, sent));
+    }
+
+    private void onResult(final InalogyPushOutboxEntry entry, final boolean sent) {
+        val requestId = entry.getRequestId();
+        val key = keyOf(entry);
+        if (sent) {
+            outbox.delete(key);
+            delivered.increment();
+            return;
+        }
+        if (entry.getAttempts() >= properties.getMaxAttempts()) {
+            LOGGER.error("Giving up push for request [{}] after [{}] attempt(s)", requestId, entry.getAttempts());
+            failed.increment();
+            val request = mfaRequestMap.getCurrentRequestByPushId(entry.getPushId());
+            if (request == null || !requestId.equals(request.getRequestId()) || request.getFanOutPushIds() == null) {
+                outbox.delete(key);
+                mfaRequestMap.reject(InalogyMfaRequest.builder().requestId(requestId).pushId(entry.getPushId()).build());
+                return;
+            }
+            // In a fan-out the other devices may still answer, so the entry is parked until the last one gives up
+            outbox.executeOnKey(key, InalogyPushOutboxLease.postpone(GIVEN_UP));
+            if (allGivenUp(requestId, request.getFanOutPushIds())) {
+                LOGGER.error("No device of request [{}] could be reached, rejecting it", requestId);
+                request.getFanOutPushIds().forEach(pushId -> mfaRequestMap.reject(
+                        InalogyMfaRequest.builder().requestId(requestId).pushId(pushId).build()));
+            }
+            return;
+        }
+        LOGGER.warn("Push for request [{}] failed on attempt [{}], retrying in [{}] ms",
+                requestId, entry.getAttempts(), properties.getRetryDelayMs());
+        outbox.executeOnKey(key, InalogyPushOutboxLease.postpone(System.currentTimeMillis() + properties.getRetryDelayMs()));
+    }
+
+    /**
+     * Whether delivery gave up on every device of a fan-out. Each device parks its own entry before looking
+     * at the others, so when the last two give up at the same time at least one of them sees both parked.
+     * A delivered entry is removed, so a fan-out with a reachable device is never rejected.
+     */
+    private boolean allGivenUp(final String requestId, final List<String> pushIds) {
+        val keys = pushIds.stream().map(pushId -> keyOf(requestId, pushId)).collect(Collectors.toSet());
+        val entries = outbox.getAll(keys);
+        return entries.size() == keys.size()
+                && entries.values().stream().allMatch(entry -> entry.getNotBefore() == GIVEN_UP);
+    }
+
+    /**
+     * Outbox key of the push: the request ID qualified by the device, so each device of a fan-out has its own entry.
+     */
+    private static String keyOf(final InalogyPushOutboxEntry entry) {
+        return keyOf(entry.getRequestId(), entry.getPushId());
+    }
+
+    private static String keyOf(final String requestId, final String pushId) {
+        return requestId + ':' + pushId;
+    }
+}
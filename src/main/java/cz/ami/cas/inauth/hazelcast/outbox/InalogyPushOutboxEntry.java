@@ -0,0 +1,89 @@
+package cz.ami.cas.inauth.hazelcast.outbox;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * A push waiting in the outbox, keyed by the ID of the MFA request it belongs to.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InalogyPushOutboxEntry implements Serializable, DataSerializable {
+
+    /**
+     * ID of the MFA request the push belongs to.
+     */
+    private String requestId;
+
+    /**
+     * Push ID of the device, used to reject the MFA request when delivery gives up.
+     */
+    private String pushId;
+
+    private String deviceType;
+
+    private String challengeType;
+
+    private String dataForChallenge;
+
+    private String keyId;
+
+    private String callback;
+
+    /**
+     * Epoch millisecond after which the MFA request has expired and the push is dropped.
+     */
+    private long validUntil;
+
+    /**
+     * Number of delivery attempts started so far.
+     */
+    private int attempts;
+
+    /**
+     * Epoch millisecond before which the push must not be attempted, either because an attempt
+     * holds its lease or because it waits for the next retry.
+     */
+    private long notBefore;
+
+    @Override
+    public void writeData(final ObjectDataOutput out) throws IOException {
+        out.writeString(requestId);
+        out.writeString(pushId);
+        out.writeString(deviceType);
+        out.writeString(challengeType);
+        out.writeString(dataForChallenge);
+        out.writeString(keyId);
+        out.writeString(callback);
+        out.writeLong(validUntil);
+        out.writeInt(attempts);
+        out.writeLong(notBefore);
+    }
+
+    @Override
+    public void readData(final ObjectDataInput in) throws IOException {
+        requestId = in.readString();
+        pushId = in.readString();
+        deviceType = in.readString();
+        challengeType = in.readString();
+        dataForChallenge = in.readString();
+        keyId = in.readString();
+        callback = in.readString();
+        validUntil = in.readLong();
+        attempts = in.readInt();
+        notBefore = in.readLong();
+    }
+}
@@ -0,0 +1,71 @@
+package cz.ami.cas.inauth.hazelcast.outbox;
+
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.ExtendedMapEntry;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
+import java.io.Serial;
+import java.util.Map;
+
+/**
+ * Entry processor moving the {@code notBefore} mark of an outbox entry on the member that owns it.
+ * A claim succeeds only if the entry is due, so of several workers seeing the same entry exactly one
+ * starts the attempt; a postponement always succeeds and schedules the next attempt.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@RequiredArgsConstructor
+public class InalogyPushOutboxLease implements EntryProcessor<String, InalogyPushOutboxEntry, InalogyPushOutboxEntry> {
+
+    @Serial
+    private static final long serialVersionUID = -2740198713369045212L;
+
+    private final long now;
+
+    private final long until;
+
+    private final boolean claim;
+
+    /**
+     * Claims a due entry for an attempt lasting until the given time.
+     *
+     * @param now   the current time
+     * @param until the end of the lease
+     * @return the processor, answering the claimed entry or null
+     */
+    public static InalogyPushOutboxLease claim(final long now, final long until) {
+        return new InalogyPushOutboxLease(now, until, true);
+    }
+
+    /**
+     * Postpones the next attempt of the entry.
+     *
+     * @param until the time of the next attempt
+     * @return the processor
+     */
+    public static InalogyPushOutboxLease postpone(final long until) {
+        return new InalogyPushOutboxLease(0, until, false);
+    }
+
+    @Override
+    public InalogyPushOutboxEntry process(final Map.Entry<String, InalogyPushOutboxEntry> entry) {
+        val value = entry.getValue();
+        if (value == null || (claim && value.getNotBefore() > now)) {
+            return null;
+        }
+        if (claim) {
+            value.setAttempts(value.getAttempts() + 1);
+        }
+        value.setNotBefore(until);
+        if (entry instanceof ExtendedMapEntry<String, InalogyPushOutboxEntry> extended) {
+            extended.setValueWithoutChangingExpiryTime(value);
+        } else {
+            entry.setValue(value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,25 @@
+package cz.ami.cas.inauth.hazelcast.ratelimit;
+
+/**
+ * Store of token buckets keyed by the rate limited subject.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+public interface InalogyRateLimiter {
+
+    /**
+     * Default bean name.
+     */
+    String BEAN_NAME = "inalogyRateLimiter";
+
+    /**
+     * Takes a token from the bucket of the key.
+     *
+     * @param key             the rate limited subject
+     * @param capacity        the maximum number of tokens of the bucket
+     * @param refillPerSecond the number of tokens added per second
+     * @return true if a token was taken, false if the bucket is empty
+     */
+    boolean tryAcquire(String key, long capacity, double refillPerSecond);
+}
@@ -0,0 +1,46 @@
+package cz.ami.cas.inauth.hazelcast.ratelimit;
+
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apereo.cas.configuration.CasConfigurationProperties;
+import org.apereo.cas.hz.HazelcastConfigurationFactory;
+
+/**
+ * Token buckets shared across the cluster in a Hazelcast map. Taking a token is one entry processor
+ * invocation on the member owning the bucket, so concurrent requests on different members are counted together.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Slf4j
+public class InalogyRateLimiterHazelcast implements InalogyRateLimiter {
+
+    private static final String RATE_LIMIT_MAP_NAME = "InalogyRateLimit";
+
+    private final IMap<String, InalogyTokenBucket> buckets;
+
+    /**
+     * Creates the bucket map.
+     *
+     * @param hazelcastInstance the Hazelcast instance
+     * @param casProperties     CAS configuration properties
+     * @param maxIdleSeconds    the longest time an untouched bucket needs to fill up, bounding the life of any entry
+     */
+    public InalogyRateLimiterHazelcast(final HazelcastInstance hazelcastInstance, final CasConfigurationProperties casProperties,
+                                       final long maxIdleSeconds) {
+        LOGGER.debug("Creating Hazelcast Map [{}]", RATE_LIMIT_MAP_NAME);
+        val mapConfig = HazelcastConfigurationFactory.buildMapConfig(casProperties.getTicket().getRegistry().getHazelcast(),
+                RATE_LIMIT_MAP_NAME, maxIdleSeconds);
+        hazelcastInstance.getConfig().addMapConfig((MapConfig) mapConfig);
+        this.buckets = hazelcastInstance.getMap(RATE_LIMIT_MAP_NAME);
+    }
+
+    @Override
+    public boolean tryAcquire(final String key, final long capacity, final double refillPerSecond) {
+        return Boolean.TRUE.equals(buckets.executeOnKey(key,
+                new InalogyTokenBucketAcquire(capacity, refillPerSecond, System.currentTimeMillis())));
+    }
+}
@@ -0,0 +1,39 @@
+package cz.ami.cas.inauth.hazelcast.ratelimit;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * State of a token bucket: the tokens left at the time of the last update.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InalogyTokenBucket implements Serializable, DataSerializable {
+
+    private double tokens;
+
+    private long updatedAt;
+
+    @Override
+    public void writeData(final ObjectDataOutput out) throws IOException {
+        out.writeDouble(tokens);
+        out.writeLong(updatedAt);
+    }
+
+    @Override
+    public void readData(final ObjectDataInput in) throws IOException {
+        tokens = in.readDouble();
+        updatedAt = in.readLong();
+    }
+}
@@ -0,0 +1,56 @@
+package cz.ami.cas.inauth.hazelcast.ratelimit;
+
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.ExtendedMapEntry;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
+import java.io.Serial;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entry processor taking one token from a bucket on the member that owns it. The bucket is refilled for
+ * the time since its last update first; a missing bucket starts full. The bucket expires once it would be
+ * full again, so idle keys do not stay in the map.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@RequiredArgsConstructor
+public class InalogyTokenBucketAcquire implements EntryProcessor<String, InalogyTokenBucket, Boolean> {
+
+    @Serial
+    private static final long serialVersionUID = 7702695842390117358L;
+
+    private final long capacity;
+
+    private final double refillPerSecond;
+
+    private final long now;
+
+    @Override
+    public Boolean process(final Map.Entry<String, InalogyTokenBucket> entry) {
+        var bucket = entry.getValue();
+        if (bucket == null) {
+            bucket = new InalogyTokenBucket(capacity, now);
+        } else {
+            val elapsed = Math.max(0, now - bucket.getUpdatedAt());
+            bucket.setTokens(Math.min(capacity, bucket.getTokens() + elapsed * refillPerSecond / 1000));
+            bucket.setUpdatedAt(now);
+        }
+        val acquired = bucket.getTokens() >= 1;
+        if (acquired) {
+            bucket.setTokens(bucket.getTokens() - 1);
+        }
+        val ttl = (long) Math.ceil((capacity - bucket.getTokens()) * 1000 / refillPerSecond) + 1;
+        if (entry instanceof ExtendedMapEntry<String, InalogyTokenBucket> extended) {
+            extended.setValue(bucket, ttl, TimeUnit.MILLISECONDS);
+        } else {
+            entry.setValue(bucket);
+        }
+        return acquired;
+    }
+}
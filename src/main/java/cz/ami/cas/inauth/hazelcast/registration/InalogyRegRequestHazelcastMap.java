@@ -5,21 +5,37 @@ import com.hazelcast.config.NamedConfig;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.map.IMap;
 import cz.ami.cas.inauth.configuration.mfa.CoreInalogyMultifactorProperties;
-import cz.ami.cas.inauth.hazelcast.InalogyRequestMap;
-import cz.ami.cas.inauth.hazelcast.mfa.InalogyMfaRequest;
+import cz.ami.cas.inauth.hazelcast.InalogyNearCacheSupport;
+import cz.ami.cas.inauth.hazelcast.InalogyRequestExpiry;
+import cz.ami.cas.inauth.hazelcast.InalogyRequestMapListener;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import lombok.val;
 import org.apereo.cas.configuration.CasConfigurationProperties;
 import org.apereo.cas.hz.HazelcastConfigurationFactory;
+import org.springframework.beans.factory.DisposableBean;
 
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Implementation of registration request management using Hazelcast distributed maps.
  * This class provides functionality for storing, retrieving, updating, and removing
  * registration requests in a distributed environment.
+ * Each request and its secret mapping expire together with the request, see {@link InalogyRequestExpiry}.
+ * The secret mapping is removed with its request and only resolves while it still matches the request,
+ * so a mapping left behind by a failed removal is never followed and disappears with its time to live.
+ * Such mappings are counted periodically in the background for the orphaned index entries gauge.
  */
 @Slf4j
-public class InalogyRegRequestHazelcastMap implements RegistrationRequestMap {
+public class InalogyRegRequestHazelcastMap implements RegistrationRequestMap, DisposableBean {
 
     /**
      * Name of the Hazelcast map that stores registration requests.
@@ -41,6 +57,17 @@ public class InalogyRegRequestHazelcastMap implements RegistrationRequestMap {
      */
     private final IMap<String, String> secretMap;
 
+    /**
+     * Orphaned secret mappings found by the last scan.
+     */
+    private final AtomicLong orphanedSecrets = new AtomicLong();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        val thread = new Thread(r, "inalogy-secret-map-scan");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * Constructor for creating a new InalogyRegRequestHazelcastMap.
      * Initializes two Hazelcast distributed maps:
@@ -50,18 +77,38 @@ public class InalogyRegRequestHazelcastMap implements RegistrationRequestMap {
      * @param hazelcastInstance The Hazelcast instance to use for creating distributed maps
      * @param casProperties CAS configuration properties
      * @param mfaProperties MFA-specific configuration properties including timeout settings
+     * @param meterRegistry Registry the map and near cache statistics are published to
      */
-    public InalogyRegRequestHazelcastMap(final HazelcastInstance hazelcastInstance, final CasConfigurationProperties casProperties, CoreInalogyMultifactorProperties mfaProperties) {
+    public InalogyRegRequestHazelcastMap(final HazelcastInstance hazelcastInstance, final CasConfigurationProperties casProperties,
+                                         final CoreInalogyMultifactorProperties mfaProperties, final MeterRegistry meterRegistry) {
 
         LOGGER.debug("Creating Hazelcast Map [{}]", REQUEST_MAP_NAME);
 
-        NamedConfig requestMapConfig = HazelcastConfigurationFactory.buildMapConfig(casProperties.getTicket().getRegistry().getHazelcast(), REQUEST_MAP_NAME, TimeUnit.MILLISECONDS.toSeconds(mfaProperties.getTimeoutMs()) + 2);
-        hazelcastInstance.getConfig().addMapConfig((MapConfig) requestMapConfig);
+        NamedConfig requestMapConfig = HazelcastConfigurationFactory.buildMapConfig(casProperties.getTicket().getRegistry().getHazelcast(), REQUEST_MAP_NAME,
+                InalogyRequestExpiry.maxTtlSeconds(mfaProperties.getTimeoutMs()));
+        hazelcastInstance.getConfig().addMapConfig(InalogyNearCacheSupport.apply((MapConfig) requestMapConfig, mfaProperties.getNearCache()));
         regRequestMap = hazelcastInstance.getMap(REQUEST_MAP_NAME);
+        InalogyNearCacheSupport.bindMetrics(regRequestMap, mfaProperties.getNearCache(), meterRegistry);
 
-        NamedConfig secretMapConfig = HazelcastConfigurationFactory.buildMapConfig(casProperties.getTicket().getRegistry().getHazelcast(), KEY_MAP_NAME, TimeUnit.MILLISECONDS.toSeconds(mfaProperties.getTimeoutMs()) + 2);
+        NamedConfig secretMapConfig = HazelcastConfigurationFactory.buildMapConfig(casProperties.getTicket().getRegistry().getHazelcast(), KEY_MAP_NAME,
+                InalogyRequestExpiry.maxTtlSeconds(mfaProperties.getTimeoutMs()));
         hazelcastInstance.getConfig().addMapConfig((MapConfig) secretMapConfig);
         secretMap = hazelcastInstance.getMap(KEY_MAP_NAME);
+
+        InalogyRequestExpiry.bindMetrics(regRequestMap, meterRegistry);
+        Gauge.builder("inalogy.request.map.orphaned.index.entries", orphanedSecrets, AtomicLong::get)
+                .description("Secret mappings owned by this member whose registration request is gone or changed its secret, as of the last scan")
+                .tag("map", KEY_MAP_NAME)
+                .register(meterRegistry);
+        val scanIntervalMs = mfaProperties.getMetrics().getIndexScanIntervalMs();
+        if (scanIntervalMs > 0) {
+            scheduler.scheduleWithFixedDelay(this::scanSecrets, scanIntervalMs, scanIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
     }
 
     /**
@@ -77,25 +124,35 @@ public class InalogyRegRequestHazelcastMap implements RegistrationRequestMap {
 
     /**
      * Stores a registration request in the distributed map and creates a mapping between
-     * the encoded secret and request ID.
+     * the encoded secret and request ID, both expiring with the request.
+     * The mapping of a replaced request's previous secret is removed.
      *
      * @param request The registration request to store
      */
     @Override
     public void putRequest(InalogyRegistrationRequest request) {
-        regRequestMap.put(request.getRequestId(), request);
-        secretMap.put(request.getEncodedSecret(), request.getRequestId());
+        val ttl = InalogyRequestExpiry.ttlMillis(request.getValidUntil(), System.currentTimeMillis());
+        val previous = regRequestMap.put(request.getRequestId(), request, ttl, TimeUnit.MILLISECONDS);
+        if (request.getEncodedSecret() != null) {
+            secretMap.set(request.getEncodedSecret(), request.getRequestId(), ttl, TimeUnit.MILLISECONDS);
+        }
+        if (previous != null && !Objects.equals(previous.getEncodedSecret(), request.getEncodedSecret())) {
+            removeSecret(previous);
+        }
     }
 
     /**
-     * Updates an existing registration request by removing the old one and adding the updated one.
+     * Updates an existing registration request. The request is replaced in place, so readers never
+     * miss it; a request stored under a different ID is removed first.
      *
      * @param requestId The ID of the request to update
      * @param request The updated registration request
      */
     @Override
     public void updateRequest(String requestId, InalogyRegistrationRequest request) {
-        regRequestMap.remove(requestId);
+        if (!requestId.equals(request.getRequestId())) {
+            removeRequest(requestId);
+        }
         putRequest(request);
     }
 
@@ -117,8 +174,10 @@ public class InalogyRegRequestHazelcastMap implements RegistrationRequestMap {
      */
     @Override
     public void removeRequest(String requestId) {
-        regRequestMap.remove(requestId);
-        secretMap.remove(requestId);
+        val request = regRequestMap.remove(requestId);
+        if (request != null) {
+            removeSecret(request);
+        }
     }
 
     /**
@@ -136,16 +195,66 @@ public class InalogyRegRequestHazelcastMap implements RegistrationRequestMap {
      * Retrieves a registration request by its encoded secret.
      * First looks up the request ID associated with the encoded secret,
      * then retrieves the registration request using that request ID.
+     * A mapping whose request is gone or no longer has the secret is removed and not followed.
      *
      * @param encodedSecret The encoded secret to look up
      * @return The registration request associated with the given encoded secret, or null if not found
      */
     @Override
     public InalogyRegistrationRequest getRequestBySecret(String encodedSecret) {
-        var requestId = secretMap.get(encodedSecret);
+        val requestId = secretMap.get(encodedSecret);
         if (requestId == null) {
             return null;
         }
-        return regRequestMap.get(requestId);
+        val request = regRequestMap.get(requestId);
+        if (request == null || !encodedSecret.equals(request.getEncodedSecret())) {
+            secretMap.remove(encodedSecret, requestId);
+            return null;
+        }
+        return request;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UUID addRequestListener(Consumer<InalogyRegistrationRequest> listener) {
+        return regRequestMap.addEntryListener(new InalogyRequestMapListener<>(listener), true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeRequestListener(UUID registrationId) {
+        regRequestMap.removeEntryListener(registrationId);
+    }
+
+    /**
+     * Removes the secret mapping of the request, unless the secret was meanwhile mapped to another request.
+     */
+    private void removeSecret(final InalogyRegistrationRequest request) {
+        if (request.getEncodedSecret() != null) {
+            secretMap.remove(request.getEncodedSecret(), request.getRequestId());
+        }
+    }
+
+    /**
+     * Counts the secret mappings owned by this member that no longer resolve to their request.
+     */
+    private void scanSecrets() {
+        try {
+            val secrets = secretMap.getAll(secretMap.localKeySet());
+            val requests = regRequestMap.getAll(new HashSet<>(secrets.values()));
+            orphanedSecrets.set(secrets.entrySet().stream()
+                    .filter(mapping -> {
+                        val request = requests.get(mapping.getValue());
+                        return request == null || !mapping.getKey().equals(request.getEncodedSecret());
+                    })
+                    .count());
+        } catch (final Exception e) {
+            LOGGER.warn("Unable to scan the secret mappings: [{}]", e.getMessage());
+            LOGGER.debug(e.getMessage(), e);
+        }
     }
 }
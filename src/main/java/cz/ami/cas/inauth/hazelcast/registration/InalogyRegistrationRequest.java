@@ -1,11 +1,17 @@
 package cz.ami.cas.inauth.hazelcast.registration;
 
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
 import cz.ami.cas.inauth.authenticator.model.push.PushRegistrationStatus;
 import cz.ami.cas.inauth.credential.InalogyAuthenticatorAccount;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import org.apereo.cas.authentication.OneTimeTokenAccount;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
@@ -13,15 +19,20 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
+import static cz.ami.cas.inauth.hazelcast.InalogyDataSerialization.*;
+
 /**
  * Data class representing a registration request for the authentication system.
  * This class stores all information related to a device registration request,
  * including user information, device details, authentication secrets, and status.
- * It is designed to be stored in a distributed Hazelcast map.
+ * It is designed to be stored in a distributed Hazelcast map, where it is written field by field
+ * through {@link DataSerializable} rather than through Java serialization.
  */
 @Data
-@Builder
-public class InalogyRegistrationRequest implements Serializable {
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class InalogyRegistrationRequest implements Serializable, DataSerializable {
     /**
      * Unique identifier for the account in the system.
      */
@@ -119,4 +130,40 @@ public class InalogyRegistrationRequest implements Serializable {
                 .status(PushRegistrationStatus.PENDING)
                 .build();
     }
+
+    @Override
+    public void writeData(final ObjectDataOutput out) throws IOException {
+        out.writeLong(id);
+        out.writeString(requestId);
+        out.writeString(username);
+        out.writeString(deviceName);
+        out.writeString(deviceType);
+        out.writeString(pushId);
+        out.writeString(deviceKeyId);
+        out.writeString(encodedSecret);
+        out.writeInt(validationCode);
+        writeNumbers(out, scratchCodes);
+        out.writeString(source);
+        writeZonedDateTime(out, registrationDate);
+        out.writeLong(validUntil);
+        writeEnum(out, status);
+    }
+
+    @Override
+    public void readData(final ObjectDataInput in) throws IOException {
+        id = in.readLong();
+        requestId = in.readString();
+        username = in.readString();
+        deviceName = in.readString();
+        deviceType = in.readString();
+        pushId = in.readString();
+        deviceKeyId = in.readString();
+        encodedSecret = in.readString();
+        validationCode = in.readInt();
+        scratchCodes = readNumbers(in);
+        source = in.readString();
+        registrationDate = readZonedDateTime(in);
+        validUntil = in.readLong();
+        status = readEnum(in, PushRegistrationStatus.class);
+    }
 }
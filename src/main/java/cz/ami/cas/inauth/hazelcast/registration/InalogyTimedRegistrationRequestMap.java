@@ -0,0 +1,27 @@
+package cz.ami.cas.inauth.hazelcast.registration;
+
+import cz.ami.cas.inauth.configuration.mfa.InalogyMetricsProperties;
+import cz.ami.cas.inauth.hazelcast.AbstractInalogyTimedRequestMap;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Decorator timing the operations of a {@link RegistrationRequestMap}.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+public class InalogyTimedRegistrationRequestMap
+        extends AbstractInalogyTimedRequestMap<InalogyRegistrationRequest, RegistrationRequestMap>
+        implements RegistrationRequestMap {
+
+    public InalogyTimedRegistrationRequestMap(final RegistrationRequestMap delegate, final InalogyMetricsProperties properties,
+                                              final MeterRegistry meterRegistry) {
+        super(delegate, "registration", properties, meterRegistry);
+    }
+
+    @Override
+    public InalogyRegistrationRequest getRequestBySecret(final String encodedSecret) {
+        return timers.record("getRequestBySecret", () -> delegate.getRequestBySecret(encodedSecret),
+                AbstractInalogyTimedRequestMap::found);
+    }
+}
@@ -92,9 +92,10 @@ public interface IInalogyAuthenticator {
      * Initiates a push authentication mfa for a user.
      *
      * @param username The username of the user to authenticate
+     * @param flowId   The identifier of the login flow, used to reuse a pending request of the same flow; may be null
      * @return The key ID of the created authentication mfa, or null if the mfa failed
      */
-    String initiatePushAuthentication(String username);
+    String initiatePushAuthentication(String username, String flowId);
 
     /**
      * Checks the status of a push authentication mfa.
@@ -104,6 +105,15 @@ public interface IInalogyAuthenticator {
      */
     PushAuthenticationStatus checkPushAuthenticationStatus(String pushId);
 
+    /**
+     * Checks the status of a push authentication mfa as currently stored, bypassing any near cache.
+     * Used for the read a decision is based on rather than for frequent polls.
+     *
+     * @param pushId The key ID of the authentication mfa
+     * @return The current status of the authentication mfa
+     */
+    PushAuthenticationStatus checkCurrentPushAuthenticationStatus(String pushId);
+
     /**
      * Checks the status of a push registration request.
      *
@@ -120,6 +130,14 @@ public interface IInalogyAuthenticator {
      */
     InalogyMfaRequest getPendingPushAuthentication(String pushId);
 
+    /**
+     * Retrieves a push authentication mfa as currently stored, bypassing any near cache.
+     *
+     * @param pushId The key ID of the authentication mfa
+     * @return The push authentication mfa, or null if not found
+     */
+    InalogyMfaRequest getCurrentPushAuthentication(String pushId);
+
     /**
      * Validates a challenge response based on the challenge type.
      *
@@ -129,4 +147,18 @@ public interface IInalogyAuthenticator {
      * @return true if the response is valid, false otherwise
      */
     boolean validateChallengeResponse(String challengeType, String dataForChallenge, String challengeResponse);
+
+    /**
+     * Drops any per-account state derived from the account secret, such as cached keyed HMAC
+     * instances or the remembered clock drift. Called by credential repositories whenever
+     * an account is updated or deleted.
+     *
+     * @param accountId The id of the account
+     */
+    void invalidateAccount(long accountId);
+
+    /**
+     * Drops per-account state derived from account secrets for all accounts.
+     */
+    void invalidateAllAccounts();
 }
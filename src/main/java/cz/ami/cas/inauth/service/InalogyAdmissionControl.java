@@ -0,0 +1,108 @@
+package cz.ami.cas.inauth.service;
+
+import cz.ami.cas.inauth.configuration.mfa.InalogyRateLimitProperties;
+import cz.ami.cas.inauth.hazelcast.ratelimit.InalogyRateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+/**
+ * Admission control of the device endpoints. A request is admitted when the bucket of its client IP address
+ * and the buckets of the push ID and device key ID it names each give a token; the IP address is checked first,
+ * so a flood from one client is rejected with a single bucket lookup. When the bucket store is unavailable
+ * requests are admitted, so a cluster problem never blocks sign-in on its own.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Slf4j
+public class InalogyAdmissionControl {
+
+    /**
+     * Default bean name.
+     */
+    public static final String BEAN_NAME = "inalogyAdmissionControl";
+
+    private final InalogyRateLimiter rateLimiter;
+
+    private final InalogyRateLimitProperties properties;
+
+    private final MeterRegistry meterRegistry;
+
+    public InalogyAdmissionControl(final InalogyRateLimiter rateLimiter, final InalogyRateLimitProperties properties,
+                                   final MeterRegistry meterRegistry) {
+        this.rateLimiter = rateLimiter;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Decides whether a request to the endpoint is admitted.
+     *
+     * @param endpoint    the endpoint name, used as a metric tag
+     * @param clientIp    the client IP address, may be null
+     * @param pushId      the push ID named by the request, may be null
+     * @param deviceKeyId the device key ID named by the request, may be null
+     * @return true if the request may proceed, false if it is to be answered with {@code 429}
+     */
+    public boolean admit(final String endpoint, final String clientIp, final String pushId, final String deviceKeyId) {
+        if (!properties.isEnabled()) {
+            return true;
+        }
+        return acquire(endpoint, "ip", clientIp, properties.getIpCapacity(), properties.getIpRefillPerSecond())
+                && acquire(endpoint, "pushId", pushId, properties.getDeviceCapacity(), properties.getDeviceRefillPerSecond())
+                && acquire(endpoint, "deviceKeyId", deviceKeyId, properties.getDeviceCapacity(), properties.getDeviceRefillPerSecond());
+    }
+
+    /**
+     * Decides whether a device answer to a push ({@code /validate}, {@code /terminate}) is admitted.
+     * The push ID is only proven by the OTP checked after admission, so its bucket is kept per client IP address;
+     * a bucket of the push ID alone would let anyone who knows it lock the device out of answering.
+     *
+     * @param endpoint the endpoint name, used as a metric tag
+     * @param clientIp the client IP address, may be null
+     * @param pushId   the push ID named by the request, may be null
+     * @return true if the request may proceed, false if it is to be answered with {@code 429}
+     */
+    public boolean admitAnswer(final String endpoint, final String clientIp, final String pushId) {
+        val pushIdKey = pushId == null || clientIp == null ? pushId : pushId + '@' + clientIp;
+        return admit(endpoint, clientIp, pushIdKey, null);
+    }
+
+    /**
+     * Returns the longest time in seconds an untouched bucket needs to fill up.
+     *
+     * @param properties the rate limit settings
+     * @return the time in seconds, at least one
+     */
+    public static long maxIdleSeconds(final InalogyRateLimitProperties properties) {
+        val ip = properties.getIpCapacity() / Math.max(properties.getIpRefillPerSecond(), Double.MIN_NORMAL);
+        val device = properties.getDeviceCapacity() / Math.max(properties.getDeviceRefillPerSecond(), Double.MIN_NORMAL);
+        return Math.max(1, (long) Math.ceil(Math.max(ip, device)));
+    }
+
+    private boolean acquire(final String endpoint, final String keyType, final String key,
+                            final long capacity, final double refillPerSecond) {
+        if (key == null || key.isBlank()) {
+            return true;
+        }
+        try {
+            if (rateLimiter.tryAcquire(keyType + ':' + key, capacity, refillPerSecond)) {
+                return true;
+            }
+        } catch (final Exception e) {
+            LOGGER.warn("Unable to check rate limit of [{}], admitting the request: [{}]", keyType, e.getMessage());
+            LOGGER.debug(e.getMessage(), e);
+            return true;
+        }
+        LOGGER.debug("Rate limit of [{}] exceeded on endpoint [{}]", keyType, endpoint);
+        Counter.builder("inalogy.rate.limited")
+                .description("Requests to the device endpoints rejected by the rate limit")
+                .tag("endpoint", endpoint)
+                .tag("key", keyType)
+                .register(meterRegistry)
+                .increment();
+        return false;
+    }
+}
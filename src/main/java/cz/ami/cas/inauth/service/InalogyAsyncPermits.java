@@ -0,0 +1,103 @@
+package cz.ami.cas.inauth.service;
+
+import lombok.val;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limit on concurrent operations whose callers never block waiting for a permit.
+ * When no permit is free, the caller gets a future that is completed by the next release
+ * or completed with {@code false} once the acquire timeout elapses; a released permit is handed
+ * directly to the oldest waiter that has not timed out yet.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+public class InalogyAsyncPermits {
+
+    private static final CompletableFuture<Boolean> ACQUIRED = CompletableFuture.completedFuture(Boolean.TRUE);
+
+    private static final CompletableFuture<Boolean> REJECTED = CompletableFuture.completedFuture(Boolean.FALSE);
+
+    private final int limit;
+
+    private final long acquireTimeoutMs;
+
+    private final Semaphore permits;
+
+    private final Queue<CompletableFuture<Boolean>> waiters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates the permits.
+     *
+     * @param limit            the number of permits
+     * @param acquireTimeoutMs how long a caller may wait for a permit; zero fails immediately
+     */
+    public InalogyAsyncPermits(final int limit, final long acquireTimeoutMs) {
+        this.limit = Math.max(1, limit);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.permits = new Semaphore(this.limit);
+    }
+
+    /**
+     * Acquires a permit without blocking.
+     *
+     * @return future completed with true once a permit is held, which must then be released,
+     * or with false if none became free in time
+     */
+    public CompletableFuture<Boolean> acquire() {
+        if (permits.tryAcquire()) {
+            return ACQUIRED;
+        }
+        if (acquireTimeoutMs <= 0) {
+            return REJECTED;
+        }
+        val waiter = new CompletableFuture<Boolean>().completeOnTimeout(Boolean.FALSE, acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        waiters.add(waiter);
+        waiter.thenAccept(acquired -> {
+            if (!acquired) {
+                waiters.remove(waiter);
+            }
+        });
+        // A permit released before the waiter was queued would otherwise be missed
+        if (permits.tryAcquire() && !waiter.complete(Boolean.TRUE)) {
+            release();
+        }
+        return waiter;
+    }
+
+    /**
+     * Acquires a permit only if one is free right now.
+     *
+     * @return true if a permit is held, which must then be released
+     */
+    public boolean tryAcquire() {
+        return permits.tryAcquire();
+    }
+
+    /**
+     * Releases a permit, handing it to the oldest waiter if there is one.
+     */
+    public void release() {
+        CompletableFuture<Boolean> waiter;
+        while ((waiter = waiters.poll()) != null) {
+            if (waiter.complete(Boolean.TRUE)) {
+                return;
+            }
+        }
+        permits.release();
+    }
+
+    /**
+     * Returns the number of permits currently held.
+     *
+     * @return the number of permits held
+     */
+    public int getHeld() {
+        return limit - permits.availablePermits();
+    }
+}
@@ -0,0 +1,118 @@
+package cz.ami.cas.inauth.service;
+
+import cz.ami.cas.inauth.authenticator.model.key.InalogyAuthenticatorKey;
+import cz.ami.cas.inauth.configuration.mfa.InalogyKeyPoolProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of pre-generated {@link InalogyAuthenticatorKey} material.
+ * A single daemon thread tops the pool up at a fixed delay; callers take a ready key
+ * and fall back to generating one inline when the pool is empty. Each key is handed out
+ * at most once and only ever lives in this process's memory.
+ * <p>
+ * Published metrics are the {@code inalogy.registration.key.pool.size} gauge and the
+ * {@code inalogy.registration.key.pool} counter tagged with {@code result=hit|miss}. They are removed
+ * from the registry when the pool is closed, so a pool created after a refresh registers its own meters
+ * instead of being handed those of the closed pool.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Slf4j
+public class InalogyAuthenticatorKeyPool implements AutoCloseable {
+
+    private final BlockingQueue<InalogyAuthenticatorKey> keys;
+
+    private final Supplier<InalogyAuthenticatorKey> generator;
+
+    private final ScheduledExecutorService refiller;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private final Gauge sizeGauge;
+
+    private final MeterRegistry meterRegistry;
+
+    public InalogyAuthenticatorKeyPool(final InalogyKeyPoolProperties properties,
+                                       final Supplier<InalogyAuthenticatorKey> generator,
+                                       final MeterRegistry meterRegistry) {
+        this.keys = new ArrayBlockingQueue<>(Math.max(1, properties.getCapacity()));
+        this.generator = generator;
+        this.meterRegistry = meterRegistry;
+        this.sizeGauge = Gauge.builder("inalogy.registration.key.pool.size", keys, BlockingQueue::size)
+                .description("Pre-generated registration keys ready in the pool")
+                .register(meterRegistry);
+        this.hits = Counter.builder("inalogy.registration.key.pool")
+                .description("Registration keys requested from the pool")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("inalogy.registration.key.pool")
+                .description("Registration keys requested from the pool")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.refiller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            val thread = new Thread(runnable, "inalogy-key-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.refiller.scheduleWithFixedDelay(this::refill, 0, properties.getRefillIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes a pre-generated key, or generates one inline when the pool is empty.
+     *
+     * @return the key material for a new registration
+     */
+    public InalogyAuthenticatorKey take() {
+        val key = keys.poll();
+        if (key != null) {
+            hits.increment();
+            return key;
+        }
+        misses.increment();
+        return generator.get();
+    }
+
+    /**
+     * Returns the number of keys currently ready in the pool.
+     *
+     * @return the pool depth
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    @Override
+    public void close() {
+        refiller.shutdownNow();
+        keys.clear();
+        meterRegistry.remove(sizeGauge);
+        meterRegistry.remove(hits);
+        meterRegistry.remove(misses);
+    }
+
+    private void refill() {
+        try {
+            while (keys.remainingCapacity() > 0 && !Thread.currentThread().isInterrupted()) {
+                if (!keys.offer(generator.get())) {
+                    break;
+                }
+            }
+        } catch (final Exception e) {
+            LOGGER.warn("Failed to refill the registration key pool: [{}]", e.getMessage());
+        }
+    }
+}
@@ -10,15 +10,25 @@ import cz.ami.cas.inauth.credential.repository.BaseInalogyAuthenticatorTokenCred
 import cz.ami.cas.inauth.credential.repository.InalogyOneTimeTokenCredentialRepository;
 import cz.ami.cas.inauth.hazelcast.mfa.InalogyMfaRequest;
 import cz.ami.cas.inauth.hazelcast.mfa.MfaRequestMap;
+import cz.ami.cas.inauth.hazelcast.outbox.InalogyPushOutbox;
+import cz.ami.cas.inauth.hazelcast.outbox.InalogyPushOutboxEntry;
 import cz.ami.cas.inauth.hazelcast.registration.RegistrationRequestMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apereo.cas.authentication.OneTimeTokenAccount;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.http.HttpStatus;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 import static cz.ami.cas.inauth.authenticator.model.push.PushAuthenticationStatus.*;
 
@@ -35,7 +45,7 @@ import static cz.ami.cas.inauth.authenticator.model.push.PushAuthenticationStatu
 @Slf4j
 @Getter
 @Setter
-public class InalogyAuthenticatorService implements IInalogyAuthenticator {
+public class InalogyAuthenticatorService implements IInalogyAuthenticator, DisposableBean {
     /**
      * Configuration properties for the authenticator.
      */
@@ -61,12 +71,36 @@ public class InalogyAuthenticatorService implements IInalogyAuthenticator {
      */
     private final InalogyMessagingService messagingService;
 
+    /**
+     * Durable outbox pushes are delivered from, or null when pushes are sent directly.
+     */
+    private final InalogyPushOutbox pushOutbox;
 
     /**
      * Service for OTP operations.
      */
     private InalogyOtpService otpService;
 
+    /**
+     * Pool of pre-generated registration key material, or null when the pool is disabled.
+     */
+    private final InalogyAuthenticatorKeyPool keyPool;
+
+    /**
+     * Push initiations answered with an already pending request instead of a new push.
+     */
+    private final Counter coalescedPushes;
+
+    /**
+     * Registry the push round-trip times are published to, tagged per device and challenge type.
+     */
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Push round-trip timers by their tags; the tag values come from small fixed sets.
+     */
+    private final Map<String, Timer> roundTripTimers = new ConcurrentHashMap<>();
+
     /**
      * Constructor for the InalogyAuthenticatorService.
      *
@@ -75,29 +109,51 @@ public class InalogyAuthenticatorService implements IInalogyAuthenticator {
      * @param mfaRequestMap Repository for managing push authentication requests
      * @param messagingService Service for sending push notifications
      * @param registrationRequestMap Storage for temporary accounts during registration
+     * @param pushOutbox Durable outbox pushes are delivered from, or null to send pushes directly
+     * @param meterRegistry Registry the OTP validation and push metrics are published to
      */
     public InalogyAuthenticatorService(final CoreInalogyMultifactorProperties properties,
                                        final InalogyOneTimeTokenCredentialRepository tokenCredentialRepository,
                                        final InalogyMessagingService messagingService,
                                        final MfaRequestMap mfaRequestMap,
-                                       final RegistrationRequestMap registrationRequestMap
+                                       final RegistrationRequestMap registrationRequestMap,
+                                       final InalogyPushOutbox pushOutbox,
+                                       final MeterRegistry meterRegistry
     ) {
         this.properties = properties;
         this.tokenCredentialRepository = tokenCredentialRepository;
         this.mfaRequestMap = mfaRequestMap;
         this.messagingService = messagingService;
         this.registrationRequestMap = registrationRequestMap;
-        this.otpService = new InalogyOtpService(this.properties);
+        this.pushOutbox = pushOutbox;
+        this.meterRegistry = meterRegistry;
+        this.otpService = new InalogyOtpService(this.properties, meterRegistry);
+        this.keyPool = properties.getKeyPool().isEnabled()
+                ? new InalogyAuthenticatorKeyPool(properties.getKeyPool(), this::generateCredentials, meterRegistry)
+                : null;
+        this.coalescedPushes = Counter.builder("inalogy.push.coalesced")
+                .description("Push initiations that reused a pending request instead of sending another push")
+                .register(meterRegistry);
     }
 
     /**
      * {@inheritDoc}
      * <p>
      * Creates new authentication credentials including a secret key,
-     * verification code, and scratch codes.
+     * verification code, and scratch codes. Takes pre-generated material
+     * from the key pool when it is enabled.
      */
     @Override
     public InalogyAuthenticatorKey createCredentials() {
+        return keyPool != null ? keyPool.take() : generateCredentials();
+    }
+
+    /**
+     * Generates new authentication credentials inline.
+     *
+     * @return A new InalogyAuthenticatorKey containing the secret key, verification code, and scratch codes
+     */
+    InalogyAuthenticatorKey generateCredentials() {
             // Extracting the bytes making up the secret key.
             byte[] secretKey = otpService.generateSecretBytes();
             String generatedKey = otpService.calculateSecretKey(secretKey);
@@ -119,7 +175,7 @@ public class InalogyAuthenticatorService implements IInalogyAuthenticator {
     @Override
     public boolean validateOtp(OneTimeTokenAccount account, int token) {
         try {
-            return otpService.checkCode(account.getSecretKey(), token);
+            return otpService.checkCode(account.getSecretKey(), token, account.getId());
         } catch (NumberFormatException e) {
             LOGGER.warn("Invalid OTP format: [{}]", token);
             return false;
@@ -132,7 +188,7 @@ public class InalogyAuthenticatorService implements IInalogyAuthenticator {
      * Initiates a push authentication for a user.
      */
     @Override
-    public String initiatePushAuthentication(String username) {
+    public String initiatePushAuthentication(String username, String flowId) {
         try {
             // Find the user's device
             val accounts = tokenCredentialRepository.get(username);
@@ -141,22 +197,19 @@ public class InalogyAuthenticatorService implements IInalogyAuthenticator {
                 return null;
             }
 
-            // Find a device with push support
-            Optional<InalogyAuthenticatorAccount> pushAccountOpt = accounts.stream()
+            // Find the devices with push support; all of them in fan-out mode, otherwise the first one
+            val pushAccounts = accounts.stream()
                     .filter(acc -> acc instanceof InalogyAuthenticatorAccount)
                     .map(acc -> (InalogyAuthenticatorAccount) acc)
                     .filter(acc -> acc.getDeviceKeyId() != null && !acc.getDeviceKeyId().isEmpty())
-                    .findFirst();
+                    .limit(properties.isPushFanOutEnabled() ? Long.MAX_VALUE : 1)
+                    .toList();
 
-            if (pushAccountOpt.isEmpty()) {
+            if (pushAccounts.isEmpty()) {
                 LOGGER.warn("No push-enabled device found for user: [{}]", username);
                 return null;
             }
 
-            val pushAccount = pushAccountOpt.get();
-
-            String keyId = pushAccount.getDeviceKeyId();
-
             // Choose the challenge type and generate data
             String challengeType = properties.getChallengeType();
             Random random = new Random();
@@ -189,42 +242,98 @@ public class InalogyAuthenticatorService implements IInalogyAuthenticator {
             // Form the callback URL
             String callback = properties.getCallbackUrl();
 
-            // Create a record of the pending authentication
-            val pendingAuth = InalogyMfaRequest.builder()
-                    .requestId(UUID.randomUUID().toString())
-                    .userId(pushAccount.getUsername())
-                    .pushId(pushAccount.getPushId())
-                    .accountId(pushAccount.getId())
-                    .otp(null)
-                    .challengeType(challengeType)
-                    .challengeData(correctAnswer != null ? correctAnswer : dataForChallenge)
-                    .userResponse(null)
-                    .status(PENDING)
-                    .validUntil(System.currentTimeMillis() + properties.getTimeoutMs())
-                    .build();
-
-            if (!challengeType.equals("CHALLENGE_CHOOSE")) {
-                dataForChallenge = null;
+            // Create a record of the pending authentication for every device, sharing one request ID;
+            // the browser watches the record of the first device
+            val requestId = UUID.randomUUID().toString();
+            val createdAt = System.currentTimeMillis();
+            val fanOutPushIds = pushAccounts.size() > 1
+                    ? pushAccounts.stream().map(InalogyAuthenticatorAccount::getPushId).toList()
+                    : null;
+            val challengeData = correctAnswer != null ? correctAnswer : dataForChallenge;
+            val pendingAuths = pushAccounts.stream()
+                    .map(account -> InalogyMfaRequest.builder()
+                            .requestId(requestId)
+                            .userId(account.getUsername())
+                            .pushId(account.getPushId())
+                            .accountId(account.getId())
+                            .otp(null)
+                            .challengeType(challengeType)
+                            .challengeData(challengeData)
+                            .userResponse(null)
+                            .status(PENDING)
+                            .validUntil(createdAt + properties.getTimeoutMs())
+                            .fanOutPushIds(fanOutPushIds)
+                            .createdAt(createdAt)
+                            .flowId(flowId)
+                            .build())
+                    .toList();
+            val pendingAuth = pendingAuths.getFirst();
+
+            val pushData = challengeType.equals("CHALLENGE_CHOOSE") ? dataForChallenge : null;
+
+            // Save the records before dispatch, so an answer arriving right after the push finds them.
+            // A repeated initiation of the same flow within the coalescing window reuses the pending request
+            // instead, but only if every device still has it; otherwise the new request goes to all devices.
+            if (properties.getPushCoalesceWindowMs() > 0) {
+                val kept = pendingAuths.stream()
+                        .map(auth -> mfaRequestMap.putIfNoPending(auth, properties.getPushCoalesceWindowMs()))
+                        .toList();
+                val pending = kept.getFirst();
+                if (pending != null && Objects.equals(pending.getFanOutPushIds(), fanOutPushIds)
+                        && kept.stream().allMatch(auth -> auth != null && auth.getRequestId().equals(pending.getRequestId()))) {
+                    LOGGER.debug("Reusing pending push authentication [{}] for user: [{}]", pending.getRequestId(), username);
+                    coalescedPushes.increment();
+                    return pending.getPushId();
+                }
+                IntStream.range(0, kept.size())
+                        .filter(i -> kept.get(i) != null)
+                        .forEach(i -> mfaRequestMap.putRequest(pendingAuths.get(i)));
+            } else {
+                pendingAuths.forEach(mfaRequestMap::putRequest);
+            }
+
+            if (pushOutbox != null) {
+                pushAccounts.forEach(account -> pushOutbox.enqueue(InalogyPushOutboxEntry.builder()
+                        .requestId(requestId)
+                        .pushId(account.getPushId())
+                        .deviceType(account.getDeviceType())
+                        .challengeType(challengeType)
+                        .dataForChallenge(pushData)
+                        .keyId(account.getDeviceKeyId())
+                        .callback(callback)
+                        .validUntil(pendingAuth.getValidUntil())
+                        .build()));
+                LOGGER.debug("Queued push authentication for user: [{}], pushId(s): [{}]", username, fanOutPushIds != null ? fanOutPushIds : pendingAuth.getPushId());
+                return pendingAuth.getPushId();
             }
 
-            // Send push notification
-            boolean sent = messagingService.sendPushNotification(
-                    pushAccount.getPushId(),
-                    pushAccount.getDeviceType(),
-                    challengeType,
-                    dataForChallenge,
-                    keyId,
-                    callback
-            );
-
-            if (!sent) {
+            // Send push notifications; the request fails only if no device could be reached
+            val dispatches = pushAccounts.stream()
+                    .map(account -> messagingService.sendPushNotificationAsync(
+                            account.getPushId(),
+                            account.getDeviceType(),
+                            challengeType,
+                            pushData,
+                            account.getDeviceKeyId(),
+                            callback))
+                    .toList();
+            val dispatch = CompletableFuture.allOf(dispatches.toArray(CompletableFuture[]::new))
+                    .thenApply(__ -> dispatches.stream().anyMatch(CompletableFuture::join));
+
+            if (messagingService.isAsyncEnabled()) {
+                dispatch.thenAccept(sent -> {
+                    if (!sent) {
+                        LOGGER.error("Failed to send push notification for user: [{}]", username);
+                        pendingAuths.forEach(mfaRequestMap::reject);
+                    }
+                });
+            } else if (!dispatch.join()) {
                 LOGGER.error("Failed to send push notification for user: [{}]", username);
+                pendingAuths.forEach(mfaRequestMap::reject);
                 return null;
             }
 
-            LOGGER.debug("Initiated push authentication for user: [{}], pushId: [{}]", username, pushAccount.getPushId());
-            // Save the record
-            mfaRequestMap.putRequest(pendingAuth);
+            LOGGER.debug("Initiated push authentication for user: [{}], pushId(s): [{}]", username, fanOutPushIds != null ? fanOutPushIds : pendingAuth.getPushId());
             return pendingAuth.getPushId();
         } catch (Exception e) {
             LOGGER.error("Error initiating push authentication for user: [{}]", username, e);
@@ -239,7 +348,20 @@ public class InalogyAuthenticatorService implements IInalogyAuthenticator {
      */
     @Override
     public PushAuthenticationStatus checkPushAuthenticationStatus(final String pushId) {
-        val auth = mfaRequestMap.getRequestByPushId(pushId);
+        return statusOf(pushId, mfaRequestMap.getRequestByPushId(pushId));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Reads the request from the member owning it rather than from the near cache.
+     */
+    @Override
+    public PushAuthenticationStatus checkCurrentPushAuthenticationStatus(final String pushId) {
+        return statusOf(pushId, mfaRequestMap.getCurrentRequestByPushId(pushId));
+    }
+
+    private static PushAuthenticationStatus statusOf(final String pushId, final InalogyMfaRequest auth) {
         if (auth == null) {
             LOGGER.debug("No pending authentication found for pushId=[{}]", pushId);
             return PushAuthenticationStatus.NOT_FOUND;
@@ -345,7 +467,7 @@ public class InalogyAuthenticatorService implements IInalogyAuthenticator {
             return ValidationResult.error(HttpStatus.BAD_REQUEST, "invalid OTP format");
         }
         if (!validateOtp(account, code)) {
-            mfaRequestMap.reject(pendingRequest);
+            rejectAll(pendingRequest, account);
             return ValidationResult.error(HttpStatus.FORBIDDEN, "invalid OTP");
         }
 
@@ -357,16 +479,34 @@ public class InalogyAuthenticatorService implements IInalogyAuthenticator {
         );
 
         if (!isValidChallengeResponse) {
-            mfaRequestMap.reject(pendingRequest);
+            rejectAll(pendingRequest, account);
             return ValidationResult.error(HttpStatus.FORBIDDEN, "invalid challenge response");
         }
 
-        pendingRequest.setStatus(APPROVED);
-        LOGGER.info("Status for request [{}] is set to 'APPROVED'", pendingRequest.getRequestId());
-        pendingRequest.setOtp(otp);
-        pendingRequest.setUserResponse(challengeResponse);
-        // Update the authentication status
-        mfaRequestMap.updateRequest(pendingRequest.getRequestId(), pendingRequest);
+        // Update the authentication status, unless it was rejected or replaced in the meantime
+        val requestId = pendingRequest.getRequestId();
+        if (!mfaRequestMap.approve(pushId, requestId, null, otp, challengeResponse)) {
+            return ValidationResult.error(HttpStatus.FORBIDDEN, "authentication mfa is no longer pending");
+        }
+
+        // In a fan-out the login watches the record of the first device; the first device to answer wins it
+        val fanOutPushIds = pendingRequest.getFanOutPushIds();
+        if (fanOutPushIds != null) {
+            val primaryPushId = fanOutPushIds.getFirst();
+            if (!primaryPushId.equals(pushId)
+                    && !mfaRequestMap.approve(primaryPushId, requestId, account.getId(), otp, challengeResponse)) {
+                return ValidationResult.error(HttpStatus.FORBIDDEN, "authentication mfa is no longer pending");
+            }
+            // The remaining devices are terminated, so a late answer from them is refused
+            fanOutPushIds.stream()
+                    .filter(sibling -> !sibling.equals(pushId) && !sibling.equals(primaryPushId))
+                    .forEach(sibling -> mfaRequestMap.reject(InalogyMfaRequest.builder()
+                            .requestId(requestId)
+                            .pushId(sibling)
+                            .build()));
+        }
+        LOGGER.info("Status for request [{}] is set to 'APPROVED'", requestId);
+        recordRoundTrip(pendingRequest, account, APPROVED);
 
         return ValidationResult.success();
     }
@@ -381,6 +521,14 @@ public class InalogyAuthenticatorService implements IInalogyAuthenticator {
         return mfaRequestMap.getRequestByPushId(pushId);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InalogyMfaRequest getCurrentPushAuthentication(String pushId) {
+        return mfaRequestMap.getCurrentRequestByPushId(pushId);
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -392,7 +540,11 @@ public class InalogyAuthenticatorService implements IInalogyAuthenticator {
      * @return true if the token is valid and the authentication request is approved, false otherwise
      */
     public boolean validateCredential(InalogyAuthenticatorAccount account, int token) {
-        return validateOtp(account, token) && mfaRequestMap.getRequestByPushId(account.getPushId()).getStatus() == APPROVED;
+        if (!validateOtp(account, token)) {
+            return false;
+        }
+        val request = mfaRequestMap.getCurrentRequestByPushId(account.getPushId());
+        return request != null && request.getStatus() == APPROVED;
     }
 
     /**
@@ -425,11 +577,68 @@ public class InalogyAuthenticatorService implements IInalogyAuthenticator {
             return ValidationResult.error(HttpStatus.FORBIDDEN, "invalid OTP");
         }
 
-        mfaRequestMap.reject(pendingRequest);
+        rejectAll(pendingRequest, account);
 
         return ValidationResult.success();
     }
 
+    /**
+     * Rejects the request together with its fan-out siblings, so a denial on any device ends the login.
+     *
+     * @param request the request answered by the device
+     * @param account the account of the device
+     */
+    private void rejectAll(final InalogyMfaRequest request, final OneTimeTokenAccount account) {
+        mfaRequestMap.reject(request);
+        recordRoundTrip(request, account, REJECTED);
+        siblingsOf(request).forEach(sibling -> mfaRequestMap.reject(InalogyMfaRequest.builder()
+                .requestId(request.getRequestId())
+                .pushId(sibling)
+                .build()));
+    }
+
+    private static List<String> siblingsOf(final InalogyMfaRequest request) {
+        if (request.getFanOutPushIds() == null) {
+            return List.of();
+        }
+        return request.getFanOutPushIds().stream()
+                .filter(pushId -> !pushId.equals(request.getPushId()))
+                .toList();
+    }
+
+    /**
+     * Records the time from initiating the push until the device answered it, by device type, challenge type,
+     * status and whether the push went to a single device or was fanned out. Missing tag values are {@code unknown}.
+     *
+     * @param request the request answered by the device
+     * @param account the account of the device
+     * @param status  the final status of the request
+     */
+    private void recordRoundTrip(final InalogyMfaRequest request, final OneTimeTokenAccount account,
+                                 final PushAuthenticationStatus status) {
+        if (request.getCreatedAt() <= 0) {
+            return;
+        }
+        val deviceType = tagValue(account instanceof InalogyAuthenticatorAccount inalogyAccount ? inalogyAccount.getDeviceType() : null);
+        val challengeType = tagValue(request.getChallengeType());
+        val statusTag = status.name().toLowerCase(Locale.ENGLISH);
+        val mode = request.getFanOutPushIds() != null ? "fan-out" : "single";
+        roundTripTimers.computeIfAbsent(String.join(":", deviceType, challengeType, statusTag, mode),
+                        key -> Timer.builder("inalogy.push.round.trip")
+                                .description("Time from initiating a push authentication until a device approved or rejected it")
+                                .tag("device.type", deviceType)
+                                .tag("challenge.type", challengeType)
+                                .tag("status", statusTag)
+                                .tag("mode", mode)
+                                .publishPercentileHistogram()
+                                .register(meterRegistry))
+                .record(System.currentTimeMillis() - request.getCreatedAt(), TimeUnit.MILLISECONDS);
+    }
+
+    private static String tagValue(final String value) {
+        return value == null || value.isBlank() ? "unknown" : value;
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -452,11 +661,7 @@ public class InalogyAuthenticatorService implements IInalogyAuthenticator {
 
             val currentPushId = account.getPushId();
 
-            val mfaRequest = mfaRequestMap.getRequestByPushId(currentPushId);
-            if (mfaRequest != null) {
-                mfaRequest.setPushId(newPushId);
-                mfaRequestMap.updateRequest(mfaRequest.getRequestId(), mfaRequest);
-            }
+            mfaRequestMap.changePushId(currentPushId, newPushId);
 
             // Update pushId
             InalogyAuthenticatorAccount inalogyAccount = InalogyAuthenticatorAccount.from(account);
@@ -516,4 +721,30 @@ public class InalogyAuthenticatorService implements IInalogyAuthenticator {
             return ValidationResult.error(HttpStatus.INTERNAL_SERVER_ERROR, "internal server error");
         }
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void invalidateAccount(long accountId) {
+        otpService.forgetAccount(accountId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void invalidateAllAccounts() {
+        otpService.forgetAllAccounts();
+    }
+
+    /**
+     * Stops the background refill of the key pool.
+     */
+    @Override
+    public void destroy() {
+        if (keyPool != null) {
+            keyPool.close();
+        }
+    }
 }
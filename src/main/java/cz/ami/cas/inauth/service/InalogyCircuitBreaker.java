@@ -0,0 +1,141 @@
+package cz.ami.cas.inauth.service;
+
+import cz.ami.cas.inauth.configuration.mfa.InalogyCircuitBreakerProperties;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+
+/**
+ * Count-based circuit breaker guarding the messaging service.
+ * Outcomes of the most recent calls are kept in a ring buffer; when the share of failures reaches
+ * the threshold the breaker opens and rejects calls until the open period elapses. It then lets a
+ * single trial call through and closes or reopens depending on its outcome.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Slf4j
+public class InalogyCircuitBreaker {
+
+    /**
+     * State of the breaker; the ordinal is published as the state gauge.
+     */
+    public enum State {
+        /**
+         * Calls are let through and recorded.
+         */
+        CLOSED,
+        /**
+         * A single trial call is in flight.
+         */
+        HALF_OPEN,
+        /**
+         * Calls are rejected.
+         */
+        OPEN
+    }
+
+    private final InalogyCircuitBreakerProperties properties;
+
+    private final Clock clock;
+
+    private final boolean[] failures;
+
+    private int position;
+
+    private int recorded;
+
+    private int failureCount;
+
+    private long openedAt;
+
+    @Getter
+    private volatile State state = State.CLOSED;
+
+    public InalogyCircuitBreaker(final InalogyCircuitBreakerProperties properties, final Clock clock) {
+        this.properties = properties;
+        this.clock = clock;
+        this.failures = new boolean[Math.max(1, properties.getSlidingWindowSize())];
+    }
+
+    /**
+     * Asks for permission to call the messaging service. Every permitted call must be
+     * followed by {@link #onSuccess()} or {@link #onFailure()}.
+     *
+     * @return true if the call may proceed
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (!properties.isEnabled()) {
+            return true;
+        }
+        return switch (state) {
+            case CLOSED -> true;
+            case HALF_OPEN -> false;
+            case OPEN -> {
+                if (clock.millis() - openedAt < properties.getOpenDurationMs()) {
+                    yield false;
+                }
+                LOGGER.debug("Messaging service circuit breaker is half-open, letting a trial call through");
+                state = State.HALF_OPEN;
+                yield true;
+            }
+        };
+    }
+
+    /**
+     * Records a successful call.
+     */
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            LOGGER.info("Messaging service recovered, closing circuit breaker");
+            reset();
+            state = State.CLOSED;
+            return;
+        }
+        record(false);
+    }
+
+    /**
+     * Records a failed call.
+     */
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && recorded >= Math.min(properties.getMinimumNumberOfCalls(), failures.length)
+                && failureCount * 100 >= properties.getFailureRateThreshold() * recorded) {
+            open();
+        }
+    }
+
+    private void record(final boolean failure) {
+        if (recorded == failures.length) {
+            if (failures[position]) {
+                failureCount--;
+            }
+        } else {
+            recorded++;
+        }
+        failures[position] = failure;
+        if (failure) {
+            failureCount++;
+        }
+        position = (position + 1) % failures.length;
+    }
+
+    private void open() {
+        LOGGER.warn("Messaging service is failing, opening circuit breaker for [{}] ms", properties.getOpenDurationMs());
+        reset();
+        state = State.OPEN;
+        openedAt = clock.millis();
+    }
+
+    private void reset() {
+        position = 0;
+        recorded = 0;
+        failureCount = 0;
+    }
+}
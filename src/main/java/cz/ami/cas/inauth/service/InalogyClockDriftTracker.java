@@ -0,0 +1,110 @@
+package cz.ami.cas.inauth.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import cz.ami.cas.inauth.configuration.mfa.InalogyClockDriftProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Remembers the time step offset of the last successful OTP validation per account.
+ * The offset is checked first on the next validation, which shrinks the window search
+ * for devices whose clock is consistently off by a step or two.
+ * <p>
+ * Outcomes are published as the {@code inalogy.otp.window} counter tagged with
+ * {@code outcome=narrow} (matched at or around the last known offset),
+ * {@code outcome=full} (matched only after falling back to the full window) and
+ * {@code outcome=miss}; the absolute offsets of matches are published as
+ * the {@code inalogy.otp.drift.offset} distribution summary.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+public class InalogyClockDriftTracker {
+
+    /**
+     * Last successful offset keyed by account id.
+     */
+    private final Cache<Long, Integer> offsets;
+
+    private final Counter narrowHits;
+
+    private final Counter fullWindowHits;
+
+    private final Counter misses;
+
+    private final DistributionSummary offsetSummary;
+
+    public InalogyClockDriftTracker(final InalogyClockDriftProperties properties, final MeterRegistry meterRegistry) {
+        this.offsets = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumTrackedAccounts())
+                .build();
+        this.narrowHits = Counter.builder("inalogy.otp.window")
+                .description("OTP validations by the part of the window that matched")
+                .tag("outcome", "narrow")
+                .register(meterRegistry);
+        this.fullWindowHits = Counter.builder("inalogy.otp.window")
+                .description("OTP validations by the part of the window that matched")
+                .tag("outcome", "full")
+                .register(meterRegistry);
+        this.misses = Counter.builder("inalogy.otp.window")
+                .description("OTP validations by the part of the window that matched")
+                .tag("outcome", "miss")
+                .register(meterRegistry);
+        this.offsetSummary = DistributionSummary.builder("inalogy.otp.drift.offset")
+                .description("Absolute time step offset of successful OTP validations")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the last successful offset of the account, or zero if it is not known.
+     *
+     * @param accountId the account id
+     * @return the last successful offset
+     */
+    public int getLastOffset(final long accountId) {
+        final Integer offset = offsets.getIfPresent(accountId);
+        return offset == null ? 0 : offset;
+    }
+
+    /**
+     * Records a successful validation.
+     *
+     * @param accountId the account id
+     * @param offset    the time step offset that matched
+     * @param narrow    whether the match was found without scanning the full window
+     */
+    public void recordHit(final long accountId, final int offset, final boolean narrow) {
+        offsets.put(accountId, offset);
+        offsetSummary.record(Math.abs(offset));
+        if (narrow) {
+            narrowHits.increment();
+        } else {
+            fullWindowHits.increment();
+        }
+    }
+
+    /**
+     * Records a validation that did not match anywhere in the window.
+     */
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * Forgets the offset of the given account.
+     *
+     * @param accountId the account id
+     */
+    public void forget(final long accountId) {
+        offsets.invalidate(accountId);
+    }
+
+    /**
+     * Forgets the offsets of all accounts.
+     */
+    public void forgetAll() {
+        offsets.invalidateAll();
+    }
+}
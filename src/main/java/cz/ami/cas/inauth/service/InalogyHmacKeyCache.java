@@ -0,0 +1,133 @@
+package cz.ami.cas.inauth.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import cz.ami.cas.inauth.configuration.mfa.InalogyHmacKeyCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of keyed HMAC prototypes per account.
+ * Initialising a {@link Mac} computes the inner and outer key pads; a clone of an already
+ * initialised prototype carries that state over, so a validation only pays for the clone.
+ * Entries remember the encoded secret and algorithm they were built from and are rebuilt
+ * when either changes, e.g. when another node updated the account.
+ * <p>
+ * Published metrics are the {@code inalogy.otp.hmac.cache} counter tagged with
+ * {@code result=hit|miss} and the {@code inalogy.otp.hmac.cache.removals} counter tagged
+ * with the Caffeine removal {@code cause}.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Slf4j
+public class InalogyHmacKeyCache {
+
+    private final Cache<Long, Entry> prototypes;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private final MeterRegistry meterRegistry;
+
+    private volatile boolean cloneable = true;
+
+    public InalogyHmacKeyCache(final InalogyHmacKeyCacheProperties properties, final MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.prototypes = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .removalListener((Long accountId, Entry entry, RemovalCause cause) -> recordRemoval(cause))
+                .build();
+        this.hits = Counter.builder("inalogy.otp.hmac.cache")
+                .description("Lookups of keyed HMAC prototypes")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("inalogy.otp.hmac.cache")
+                .description("Lookups of keyed HMAC prototypes")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns a keyed HMAC instance for the account that the caller owns exclusively.
+     *
+     * @param accountId  the account id
+     * @param secret     the encoded secret of the account
+     * @param algorithm  the HMAC algorithm
+     * @param decodedKey supplier of the raw secret, called only on a miss
+     * @return the keyed HMAC instance, or null when the provider does not support cloning
+     */
+    public Mac get(final long accountId, final String secret, final String algorithm, final Supplier<byte[]> decodedKey) {
+        if (!cloneable) {
+            return null;
+        }
+        var entry = prototypes.getIfPresent(accountId);
+        if (entry != null && entry.matches(secret, algorithm)) {
+            hits.increment();
+        } else {
+            misses.increment();
+            entry = new Entry(secret, algorithm, newKeyedMac(algorithm, decodedKey.get()));
+            prototypes.put(accountId, entry);
+        }
+        try {
+            return (Mac) entry.prototype().clone();
+        } catch (final CloneNotSupportedException e) {
+            LOGGER.warn("HMAC provider for [{}] does not support cloning, the key cache is disabled", algorithm);
+            cloneable = false;
+            prototypes.invalidateAll();
+            return null;
+        }
+    }
+
+    /**
+     * Removes the cached prototype of the given account.
+     *
+     * @param accountId the account id
+     */
+    public void invalidate(final long accountId) {
+        prototypes.invalidate(accountId);
+    }
+
+    /**
+     * Removes all cached prototypes.
+     */
+    public void invalidateAll() {
+        prototypes.invalidateAll();
+    }
+
+    private void recordRemoval(final RemovalCause cause) {
+        if (cause != RemovalCause.REPLACED) {
+            Counter.builder("inalogy.otp.hmac.cache.removals")
+                    .description("Keyed HMAC prototypes removed from the cache")
+                    .tag("cause", cause.name().toLowerCase(Locale.ENGLISH))
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    private static Mac newKeyedMac(final String algorithm, final byte[] key) {
+        try {
+            val mac = Mac.getInstance(algorithm);
+            mac.init(new SecretKeySpec(key, "RAW"));
+            return mac;
+        } catch (final GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private record Entry(String secret, String algorithm, Mac prototype) {
+        boolean matches(final String secret, final String algorithm) {
+            return this.secret.equals(secret) && this.algorithm.equals(algorithm);
+        }
+    }
+}
@@ -1,36 +1,59 @@
 package cz.ami.cas.inauth.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import cz.ami.cas.inauth.configuration.mfa.InalogyMessagingServiceProperties;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
-import org.springframework.http.*;
-import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
 
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * Service for sending push notifications to user devices.
  * This service handles the communication with the messaging API to deliver
  * authentication challenges and notifications to mobile devices.
+ * Requests are bounded by connect and request timeouts, and the number of requests
+ * in flight is limited, so a slow messaging provider cannot hold an unbounded number of threads.
+ * Transient failures are retried with jittered backoff, a circuit breaker fails pushes fast while
+ * the provider is down, and slow attempts can optionally be hedged with a second request.
+ * Pushes can be collected into micro-batches to save per-request connection costs at peak load.
  *
  * @since 1.0.0
  */
-
-@RequiredArgsConstructor
 @Slf4j
-public class InalogyMessagingService {
+public class InalogyMessagingService implements DisposableBean {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final int LATENCY_SAMPLES = 256;
+
+    private static final int MIN_LATENCY_SAMPLES = 20;
 
     /**
      * HTTP client used to send requests to the messaging API.
      */
-    HttpClient httpClient = HttpClient.newHttpClient();
+    HttpClient httpClient;
 
     /**
      * Configuration properties for the messaging service.
@@ -38,7 +61,83 @@ public class InalogyMessagingService {
     private final InalogyMessagingServiceProperties properties;
 
     /**
-     * Send a push notification to the user's device.
+     * Permits for requests in flight to the messaging API; waiting for one never blocks a thread.
+     */
+    private final InalogyAsyncPermits inFlight;
+
+    /**
+     * Circuit breaker guarding the messaging API.
+     */
+    private final InalogyCircuitBreaker circuitBreaker;
+
+    /**
+     * Latencies of recent successful calls in milliseconds, used to derive the hedging delay.
+     */
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+
+    private int latencyPosition;
+
+    private int latencyCount;
+
+    private final Counter retries;
+
+    private final Counter hedges;
+
+    private final Counter rejectedByCircuitBreaker;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Push latency timers by device type and outcome.
+     */
+    private final Map<String, Timer> pushLatencies = new ConcurrentHashMap<>();
+
+    /**
+     * Batching stage in front of the messaging API, or null when batching is disabled.
+     */
+    private final InalogyPushBatcher batcher;
+
+    public InalogyMessagingService(final InalogyMessagingServiceProperties properties, final MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(properties.getConnectTimeoutMs()))
+                .build();
+        this.inFlight = new InalogyAsyncPermits(properties.getMaxInFlight(), properties.getAcquireTimeoutMs());
+        this.circuitBreaker = new InalogyCircuitBreaker(properties.getCircuitBreaker(), Clock.systemUTC());
+
+        this.retries = Counter.builder("inalogy.messaging.retries")
+                .description("Push requests retried after a transient failure of the messaging service")
+                .register(meterRegistry);
+        this.hedges = Counter.builder("inalogy.messaging.hedges")
+                .description("Hedged push requests sent because an attempt was slower than the configured percentile")
+                .register(meterRegistry);
+        this.rejectedByCircuitBreaker = Counter.builder("inalogy.messaging.circuit.breaker.rejected")
+                .description("Push requests failed without a call because the circuit breaker was open")
+                .register(meterRegistry);
+        Gauge.builder("inalogy.messaging.circuit.breaker.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .description("State of the messaging service circuit breaker: 0 closed, 1 half-open, 2 open")
+                .register(meterRegistry);
+        Gauge.builder("inalogy.messaging.in.flight", this, InalogyMessagingService::getInFlight)
+                .description("Push requests currently in flight to the messaging service")
+                .register(meterRegistry);
+        this.meterRegistry = meterRegistry;
+
+        this.batcher = properties.getBatch().isEnabled()
+                ? new InalogyPushBatcher(properties.getBatch(), this::deliverBatch, meterRegistry)
+                : null;
+    }
+
+    /**
+     * Whether push notifications should be dispatched without blocking the caller.
+     *
+     * @return true if asynchronous dispatch is enabled
+     */
+    public boolean isAsyncEnabled() {
+        return properties.isAsyncEnabled();
+    }
+
+    /**
+     * Send a push notification to the user's device and wait for the outcome.
      *
      * @param deviceId The device ID to send the notification to
      * @param deviceType The device type (IOS or ANDROID)
@@ -51,41 +150,357 @@ public class InalogyMessagingService {
     public boolean sendPushNotification(String deviceId, String deviceType,
                                         String challengeType, String dataForChallenge,
                                         String keyId, String callback) {
-        try {
-            val endpoint = properties.getUrl();
-
-            HttpHeaders headers = new HttpHeaders();
-            val apiKey = properties.getApiKey();
-            headers.set("X-API-KEY", apiKey);
-            headers.setContentType(MediaType.APPLICATION_JSON);
+        return sendPushNotificationAsync(deviceId, deviceType, challengeType, dataForChallenge, keyId, callback).join();
+    }
 
-            // Create serialized data
-            long validUntil = Instant.now().plusSeconds(300).getEpochSecond(); // 5 minutes validity
-            String serializedData = String.format(
-                    "{\"pushType\":\"%s\",\"dataForChallenge\":\"%s\",\"keyId\":\"%s\",\"callback\":\"%s\",\"validUntil\":%d}",
-                    challengeType, dataForChallenge, keyId, callback, validUntil
-            );
+    /**
+     * Send a push notification to the user's device without blocking the caller.
+     * When the in-flight limit is reached, the push waits up to the configured acquire timeout
+     * for a free slot and otherwise completes with {@code false}; the wait does not hold a thread.
+     * With batching enabled, the push joins the current batch and completes with its own result.
+     *
+     * @param deviceId The device ID to send the notification to
+     * @param deviceType The device type (IOS or ANDROID)
+     * @param challengeType The type of challenge (CHALLENGE_APPROVE, CHALLENGE_WRITE, CHALLENGE_CHOOSE)
+     * @param dataForChallenge Data for the challenge (depends on challenge type)
+     * @param keyId Unique identifier for this authentication attempt
+     * @param callback Callback URL for the mobile app to respond to
+     * @return future completed with true if the notification was sent successfully, false otherwise; never completes exceptionally
+     */
+    public CompletableFuture<Boolean> sendPushNotificationAsync(String deviceId, String deviceType,
+                                                                String challengeType, String dataForChallenge,
+                                                                String keyId, String callback) {
+        val message = InalogyPushMessage.builder()
+                .deviceId(deviceId)
+                .deviceType(deviceType)
+                .challengeType(challengeType)
+                .dataForChallenge(dataForChallenge)
+                .keyId(keyId)
+                .callback(callback)
+                .validUntil(Instant.now().plusSeconds(300).getEpochSecond()) // 5 minutes validity
+                .build();
+        val start = System.nanoTime();
+        val result = batcher != null ? batcher.submit(message) : deliver(message);
+        return result.whenComplete((sent, e) -> pushLatency(deviceType, Boolean.TRUE.equals(sent))
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+    }
 
-            // Create mfa body
-            String requestBody = String.format(
-                    "{\"deviceId\":\"%s\",\"deviceType\":\"%s\",\"title\":\"Authentication required\",\"body\":\"Verify your identity to continue.\",\"sound\":\"default\",\"serializedData\":\"%s\"}",
-                    deviceId, deviceType, serializedData.replace("\"", "\\\"")
-            );
+    /**
+     * Returns the number of push requests currently in flight.
+     *
+     * @return the number of requests in flight
+     */
+    public int getInFlight() {
+        return inFlight.getHeld();
+    }
 
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(endpoint))
-                    .header("X-API-KEY", apiKey)
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBody))
-                    .build();
+    /**
+     * Timer of push calls by device type and outcome; the device types are the few the accounts use.
+     */
+    private Timer pushLatency(final String deviceType, final boolean sent) {
+        val deviceTag = deviceType == null || deviceType.isBlank() ? "unknown" : deviceType;
+        val outcome = sent ? "sent" : "failed";
+        return pushLatencies.computeIfAbsent(deviceTag + ':' + outcome, key -> Timer.builder("inalogy.messaging.push.latency")
+                .description("Time from submitting a push until the messaging service accepted or failed it")
+                .tag("device.type", deviceTag)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
 
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    @Override
+    public void destroy() {
+        if (batcher != null) {
+            batcher.close();
+        }
+    }
 
+    /**
+     * Sends a single push to the messaging API.
+     */
+    private CompletableFuture<Boolean> deliver(final InalogyPushMessage message) {
+        return inFlight.acquire().thenCompose(acquired -> {
+            if (!acquired) {
+                LOGGER.warn("Too many push notifications in flight, rejecting push for device [{}]", message.getDeviceId());
+                return CompletableFuture.completedFuture(Boolean.FALSE);
+            }
+            return deliverAcquired(message);
+        });
+    }
 
-            return response.statusCode() == 204;
+    private CompletableFuture<Boolean> deliverAcquired(final InalogyPushMessage message) {
+        try {
+            val request = buildRequest(properties.getUrl(), MAPPER.writeValueAsString(message.toJson(MAPPER)));
+            return send(request, "device " + message.getDeviceId(), 1)
+                    .thenApply(response -> response != null && response.statusCode() == 204)
+                    .exceptionally(e -> {
+                        LOGGER.error("Failed to send push notification", e);
+                        return Boolean.FALSE;
+                    })
+                    .whenComplete((result, e) -> inFlight.release());
         } catch (Exception e) {
+            inFlight.release();
             LOGGER.error("Failed to send push notification", e);
-            return false;
+            return CompletableFuture.completedFuture(Boolean.FALSE);
+        }
+    }
+
+    /**
+     * Sends a batch of pushes, as one request to the batch endpoint when configured,
+     * or as concurrent single requests otherwise.
+     */
+    private CompletableFuture<List<Boolean>> deliverBatch(final List<InalogyPushMessage> messages) {
+        val batchUrl = properties.getBatch().getBatchUrl();
+        if (StringUtils.isBlank(batchUrl)) {
+            val results = messages.stream().map(this::deliver).toList();
+            return CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+                    .thenApply(__ -> results.stream().map(CompletableFuture::join).toList());
+        }
+        return inFlight.acquire().thenCompose(acquired -> {
+            if (!acquired) {
+                LOGGER.warn("Too many push notifications in flight, rejecting batch of [{}] push(es)", messages.size());
+                return CompletableFuture.completedFuture(Collections.nCopies(messages.size(), Boolean.FALSE));
+            }
+            return deliverBatchAcquired(batchUrl, messages);
+        });
+    }
+
+    private CompletableFuture<List<Boolean>> deliverBatchAcquired(final String batchUrl, final List<InalogyPushMessage> messages) {
+        try {
+            val body = MAPPER.createArrayNode();
+            messages.forEach(message -> body.add(message.toJson(MAPPER)));
+            val request = buildRequest(batchUrl, MAPPER.writeValueAsString(body));
+            return send(request, "batch of " + messages.size() + " push(es)", 1)
+                    .thenApply(response -> batchResults(response, messages.size()))
+                    .whenComplete((result, e) -> inFlight.release());
+        } catch (Exception e) {
+            inFlight.release();
+            LOGGER.error("Failed to send batch of push notifications", e);
+            return CompletableFuture.completedFuture(Collections.nCopies(messages.size(), Boolean.FALSE));
+        }
+    }
+
+    /**
+     * Maps the answer of the batch endpoint to one result per push: {@code 204} accepts all pushes,
+     * otherwise the body lists the status code of each push in order.
+     */
+    private static List<Boolean> batchResults(final HttpResponse<String> response, final int size) {
+        if (response == null || !isSuccessful(response.statusCode())) {
+            return Collections.nCopies(size, Boolean.FALSE);
+        }
+        if (response.statusCode() == 204) {
+            return Collections.nCopies(size, Boolean.TRUE);
+        }
+        try {
+            val statuses = MAPPER.readTree(response.body());
+            val results = new ArrayList<Boolean>(size);
+            for (var i = 0; i < size; i++) {
+                val status = statuses.path(i);
+                results.add(status.isNumber() && isSuccessful(status.asInt()));
+            }
+            return results;
+        } catch (Exception e) {
+            LOGGER.error("Unable to read the answer of the batch endpoint", e);
+            return Collections.nCopies(size, Boolean.FALSE);
+        }
+    }
+
+    private static boolean isSuccessful(final int status) {
+        return status >= 200 && status < 300;
+    }
+
+    /**
+     * Sends the request through the circuit breaker, retrying transient failures.
+     *
+     * @return future completed with the final response, or with null when no answer was received
+     */
+    private CompletableFuture<HttpResponse<String>> send(final HttpRequest request, final String target, final int attempt) {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            LOGGER.warn("Messaging service circuit breaker is open, failing push for [{}]", target);
+            rejectedByCircuitBreaker.increment();
+            return CompletableFuture.completedFuture(null);
+        }
+        return exchange(request).handle((response, error) -> {
+            if (error == null && isSuccessful(response.statusCode())) {
+                circuitBreaker.onSuccess();
+                return CompletableFuture.completedFuture(response);
+            }
+            val transientFailure = isTransientFailure(response, error);
+            if (transientFailure) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+            if (error != null) {
+                LOGGER.warn("Push for [{}] failed on attempt [{}]: [{}]", target, attempt, error.getMessage());
+            } else {
+                LOGGER.warn("Messaging service answered push for [{}] with status [{}] on attempt [{}]",
+                        target, response.statusCode(), attempt);
+            }
+            if (!transientFailure || attempt >= properties.getRetry().getMaxAttempts()) {
+                return CompletableFuture.completedFuture(response);
+            }
+            retries.increment();
+            val delay = CompletableFuture.delayedExecutor(backoff(attempt), TimeUnit.MILLISECONDS);
+            return CompletableFuture.runAsync(() -> { }, delay)
+                    .thenCompose(__ -> send(request, target, attempt + 1));
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Sends one attempt and, when hedging is enabled, a second identical request once the attempt
+     * is slower than the configured percentile. The first successful answer of either request wins;
+     * the attempt fails only once every request sent has failed. The hedge is a request of its own:
+     * it is sent only if an in-flight permit is free and the circuit breaker lets it through,
+     * and it reports its outcome to the breaker and releases its permit when it completes.
+     */
+    private CompletableFuture<HttpResponse<String>> exchange(final HttpRequest request) {
+        val primary = call(request);
+        val hedging = properties.getHedging();
+        if (!hedging.isEnabled()) {
+            return primary;
+        }
+        val exchange = new HedgedExchange();
+        primary.whenComplete(exchange::onAnswer);
+        val delay = CompletableFuture.delayedExecutor(hedgeDelay(), TimeUnit.MILLISECONDS);
+        delay.execute(() -> {
+            if (exchange.isDone() || !inFlight.tryAcquire()) {
+                return;
+            }
+            if (!exchange.startHedge()) {
+                inFlight.release();
+                return;
+            }
+            if (!circuitBreaker.tryAcquirePermission()) {
+                inFlight.release();
+                exchange.abandonHedge();
+                return;
+            }
+            hedges.increment();
+            call(request).whenComplete((response, error) -> {
+                inFlight.release();
+                if (isTransientFailure(response, error)) {
+                    circuitBreaker.onFailure();
+                } else {
+                    circuitBreaker.onSuccess();
+                }
+                exchange.onAnswer(response, error);
+            });
+        });
+        return exchange.result;
+    }
+
+    private static boolean isTransientFailure(final HttpResponse<String> response, final Throwable error) {
+        return error != null || response.statusCode() == 429 || response.statusCode() >= 500;
+    }
+
+    private CompletableFuture<HttpResponse<String>> call(final HttpRequest request) {
+        val start = System.nanoTime();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, error) -> {
+                    if (error == null) {
+                        recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    }
+                });
+    }
+
+    /**
+     * Exponential backoff with full jitter: a random delay between zero and the doubled ceiling.
+     */
+    private long backoff(final int attempt) {
+        val retry = properties.getRetry();
+        val ceiling = Math.min(retry.getMaxBackoffMs(), retry.getInitialBackoffMs() << Math.min(attempt - 1, 30));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private synchronized void recordLatency(final long millis) {
+        latencies[latencyPosition] = millis;
+        latencyPosition = (latencyPosition + 1) % latencies.length;
+        latencyCount = Math.min(latencyCount + 1, latencies.length);
+    }
+
+    private synchronized long hedgeDelay() {
+        val hedging = properties.getHedging();
+        if (latencyCount < MIN_LATENCY_SAMPLES) {
+            return hedging.getMinDelayMs();
+        }
+        val sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        val percentile = Math.max(0, Math.min(100, hedging.getPercentile()));
+        val index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return Math.max(hedging.getMinDelayMs(), sorted[Math.max(0, index)]);
+    }
+
+    private HttpRequest buildRequest(final String endpoint, final String requestBody) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(endpoint))
+                .timeout(Duration.ofMillis(properties.getRequestTimeoutMs()))
+                .header("X-API-KEY", properties.getApiKey())
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(requestBody))
+                .build();
+    }
+
+    /**
+     * Outcome of an attempt sent as up to two requests: completed by the first successful answer,
+     * or by the last failure once no request is running.
+     */
+    private static final class HedgedExchange {
+
+        private final CompletableFuture<HttpResponse<String>> result = new CompletableFuture<>();
+
+        private int running = 1;
+
+        private HttpResponse<String> failedResponse;
+
+        private Throwable failure;
+
+        synchronized boolean isDone() {
+            return result.isDone() || running == 0;
+        }
+
+        /**
+         * Reserves the hedge, unless the attempt is already decided.
+         */
+        synchronized boolean startHedge() {
+            if (isDone()) {
+                return false;
+            }
+            running++;
+            return true;
+        }
+
+        /**
+         * Gives up a reserved hedge that could not be sent.
+         */
+        void abandonHedge() {
+            settle(false, null, null);
+        }
+
+        void onAnswer(final HttpResponse<String> response, final Throwable error) {
+            settle(error == null && isSuccessful(response.statusCode()), response, error);
+        }
+
+        private void settle(final boolean success, final HttpResponse<String> response, final Throwable error) {
+            final boolean failed;
+            synchronized (this) {
+                running--;
+                if (!success && (response != null || error != null)) {
+                    failedResponse = response;
+                    failure = error;
+                }
+                failed = !success && running == 0;
+            }
+            // Completed outside the lock, as the retry logic runs on completion
+            if (success) {
+                result.complete(response);
+            } else if (failed) {
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else {
+                    result.complete(failedResponse);
+                }
+            }
         }
     }
 }
@@ -0,0 +1,119 @@
+package cz.ami.cas.inauth.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.val;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Timers of the operations of one component, tagged with the operation and its outcome.
+ * An operation that throws is recorded with the outcome {@code error} and the exception is rethrown.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+public class InalogyOperationTimers {
+
+    /**
+     * Outcome of an operation that completed normally and has no finer outcome.
+     */
+    public static final String SUCCESS = "success";
+
+    private static final String ERROR = "error";
+
+    private final String name;
+
+    private final String description;
+
+    private final Tags tags;
+
+    private final boolean percentileHistogram;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the timers.
+     *
+     * @param name                the metric name
+     * @param description         the metric description
+     * @param tags                tags common to all operations
+     * @param percentileHistogram whether to publish a percentile histogram
+     * @param meterRegistry       the registry to publish to
+     */
+    public InalogyOperationTimers(final String name, final String description, final Tags tags,
+                                  final boolean percentileHistogram, final MeterRegistry meterRegistry) {
+        this.name = name;
+        this.description = description;
+        this.tags = tags;
+        this.percentileHistogram = percentileHistogram;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Runs the operation and records its duration.
+     *
+     * @param operation the operation name
+     * @param call      the operation
+     * @param outcome   maps the result to the outcome tag
+     * @param <R>       the type of the result
+     * @return the result of the operation
+     */
+    public <R> R record(final String operation, final Supplier<R> call, final Function<R, String> outcome) {
+        val start = System.nanoTime();
+        try {
+            val result = call.get();
+            timer(operation, outcome.apply(result)).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (final RuntimeException e) {
+            timer(operation, ERROR).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the operation and records its duration with the outcome {@code success}.
+     *
+     * @param operation the operation name
+     * @param call      the operation
+     * @param <R>       the type of the result
+     * @return the result of the operation
+     */
+    public <R> R record(final String operation, final Supplier<R> call) {
+        return record(operation, call, result -> SUCCESS);
+    }
+
+    /**
+     * Runs the operation without a result and records its duration.
+     *
+     * @param operation the operation name
+     * @param call      the operation
+     */
+    public void run(final String operation, final Runnable call) {
+        record(operation, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private Timer timer(final String operation, final String outcome) {
+        return timers.computeIfAbsent(operation + ':' + outcome, key -> {
+            val builder = Timer.builder(name)
+                    .description(description)
+                    .tags(tags)
+                    .tag("operation", operation)
+                    .tag("outcome", outcome);
+            if (percentileHistogram) {
+                builder.publishPercentileHistogram();
+            }
+            return builder.register(meterRegistry);
+        });
+    }
+}
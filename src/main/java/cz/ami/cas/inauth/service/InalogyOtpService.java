@@ -1,14 +1,18 @@
 package cz.ami.cas.inauth.service;
 
 import cz.ami.cas.inauth.configuration.mfa.CoreInalogyMultifactorProperties;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import lombok.val;
 import org.apache.commons.codec.binary.Base32;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang3.StringUtils;
 
 import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.SecretKeySpec;
 import java.math.BigInteger;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.util.*;
 
@@ -21,7 +25,6 @@ import java.util.*;
  * @author Inalogy
  * @since 1.0.0
  */
-@RequiredArgsConstructor
 @Slf4j
 public class InalogyOtpService {
     /**
@@ -29,6 +32,16 @@ public class InalogyOtpService {
      */
     final CoreInalogyMultifactorProperties properties;
 
+    /**
+     * Tracker of the last successful time step offset per account, or null when drift tracking is disabled.
+     */
+    final InalogyClockDriftTracker driftTracker;
+
+    /**
+     * Cache of keyed HMAC prototypes per account, or null when the cache is disabled.
+     */
+    final InalogyHmacKeyCache hmacKeyCache;
+
     /**
      * Secure random number generator for creating secret keys and scratch codes.
      */
@@ -54,6 +67,44 @@ public class InalogyOtpService {
      */
     static final int SCRATCH_CODE_INVALID = -1;
 
+    /**
+     * Powers of ten indexed by the number of OTP digits, used to truncate
+     * the dynamic binary code without going through {@link Math#pow(double, double)}.
+     * Longer codes do not fit an {@code int} and are handled by the legacy implementation.
+     */
+    private static final int[] DIGITS_POWER =
+            {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000};
+
+    /**
+     * Per-thread 8-byte buffer holding the big-endian moving factor (time step counter).
+     */
+    private static final ThreadLocal<byte[]> COUNTER_BUFFER = ThreadLocal.withInitial(() -> new byte[Long.BYTES]);
+
+    /**
+     * Per-thread buffer receiving the HMAC output; 64 bytes fit the largest supported digest (HmacSHA512).
+     */
+    private static final ThreadLocal<byte[]> HASH_BUFFER = ThreadLocal.withInitial(() -> new byte[64]);
+
+    /**
+     * Per-thread {@link Mac} instances keyed by algorithm name, so that {@code Mac.getInstance}
+     * is not called on every validation.
+     */
+    private static final ThreadLocal<Map<String, Mac>> MAC_INSTANCES = ThreadLocal.withInitial(HashMap::new);
+
+    public InalogyOtpService(final CoreInalogyMultifactorProperties properties, final MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.driftTracker = properties.getDrift().isEnabled()
+                ? new InalogyClockDriftTracker(properties.getDrift(), meterRegistry)
+                : null;
+        this.hmacKeyCache = properties.getHmacKeyCache().isEnabled()
+                ? new InalogyHmacKeyCache(properties.getHmacKeyCache(), meterRegistry)
+                : null;
+        if (!properties.isLegacyOtpVerification() && !isEngineSupported(properties.getCodeDigits())) {
+            LOGGER.warn("OTP length of [{}] digits is not supported by the allocation-free engine, using the legacy implementation",
+                    properties.getCodeDigits());
+        }
+    }
+
     /**
      * Calculates the secret key string representation based on the configured key representation.
      *
@@ -75,6 +126,12 @@ public class InalogyOtpService {
      * @return The generated TOTP code as a string
      */
     String generateTOTP(byte[] secretKey) {
+        if (!isLegacy()) {
+            val digits = properties.getCodeDigits();
+            val otp = computeOtp(keyedMac(properties.getHmacHashFunction(), secretKey), getCurrentInterval(), digits);
+            return StringUtils.leftPad(Integer.toString(otp), digits, '0');
+        }
+
         long T = getCurrentInterval();
 
         StringBuilder steps = new StringBuilder(Long.toHexString(T).toUpperCase());
@@ -136,12 +193,195 @@ public class InalogyOtpService {
     /**
      * Validates a one-time password code against a secret key.
      * Checks the code against a time window to account for clock skew.
+     * Uses the allocation-free engine unless the legacy string-based
+     * verification is switched on in the configuration.
      *
      * @param secret The secret key in encoded form
      * @param code   The OTP code to validate
      * @return true if the code is valid, false otherwise
      */
     boolean checkCode(String secret, long code) {
+        if (isLegacy()) {
+            return checkCodeLegacy(secret, code);
+        }
+        return checkCodeInternal(decodeSecret(secret), code);
+    }
+
+    /**
+     * Validates a one-time password code of the given account.
+     * The keyed HMAC is taken from the per-account key cache when it is enabled.
+     * When drift tracking is enabled, the time step offset of the account's last successful
+     * validation (and, in narrow window mode, its neighbourhood) is checked first and the rest
+     * of the window only afterwards, so the accepted window is the same as in
+     * {@link #checkCode(String, long)} but consistently drifting devices match early.
+     *
+     * @param secret    The secret key in encoded form
+     * @param code      The OTP code to validate
+     * @param accountId The id of the account the secret belongs to
+     * @return true if the code is valid, false otherwise
+     */
+    boolean checkCode(String secret, long code, long accountId) {
+        if (accountId <= 0 || isLegacy()) {
+            return checkCode(secret, code);
+        }
+        val digits = properties.getCodeDigits();
+        if (code < 0 || code >= DIGITS_POWER[digits]) {
+            if (driftTracker != null) {
+                driftTracker.recordMiss();
+            }
+            return false;
+        }
+        val mac = accountMac(secret, accountId);
+        if (driftTracker == null) {
+            return matchesWindow(mac, code);
+        }
+        return matchesTrackedWindow(mac, code, accountId);
+    }
+
+    /**
+     * Checks the window around the current time step, starting at the account's last known offset.
+     *
+     * @param mac       The keyed HMAC instance
+     * @param code      The OTP code to validate
+     * @param accountId The id of the account the secret belongs to
+     * @return true if the code is valid, false otherwise
+     */
+    private boolean matchesTrackedWindow(Mac mac, long code, long accountId) {
+        val digits = properties.getCodeDigits();
+        val drift = properties.getDrift();
+        val windowSize = properties.getWindowSize();
+        val lastOffset = Math.max(-windowSize, Math.min(windowSize, driftTracker.getLastOffset(accountId)));
+        val narrowSize = drift.isNarrowWindowEnabled() ? Math.max(0, drift.getNarrowWindowSize()) : 0;
+        val lowest = Math.max(-windowSize, lastOffset - narrowSize);
+        val highest = Math.min(windowSize, lastOffset + narrowSize);
+
+        val currentInterval = getCurrentInterval();
+
+        // The last known offset first, then its neighbourhood alternating outwards
+        for (int i = 0; i <= narrowSize * 2; i++) {
+            val offset = lastOffset + (int) clockSkewIndexToDelta(i);
+            if (offset < lowest || offset > highest) {
+                continue;
+            }
+            if (computeOtp(mac, currentInterval + offset, digits) == code) {
+                driftTracker.recordHit(accountId, offset, true);
+                return true;
+            }
+        }
+
+        // Rest of the full window, skipping the steps already checked above
+        for (int i = 0; i <= windowSize * 2; i++) {
+            val offset = (int) clockSkewIndexToDelta(i);
+            if (offset >= lowest && offset <= highest) {
+                continue;
+            }
+            if (computeOtp(mac, currentInterval + offset, digits) == code) {
+                driftTracker.recordHit(accountId, offset, false);
+                return true;
+            }
+        }
+
+        driftTracker.recordMiss();
+        return false;
+    }
+
+    /**
+     * Returns a keyed HMAC for the account, cloned from the key cache when possible.
+     *
+     * @param secret    The secret key in encoded form
+     * @param accountId The id of the account the secret belongs to
+     * @return The keyed HMAC instance
+     */
+    private Mac accountMac(String secret, long accountId) {
+        val algorithm = properties.getHmacHashFunction();
+        if (hmacKeyCache != null) {
+            val mac = hmacKeyCache.get(accountId, secret, algorithm, () -> decodeSecret(secret));
+            if (mac != null) {
+                return mac;
+            }
+        }
+        return keyedMac(algorithm, decodeSecret(secret));
+    }
+
+    /**
+     * Forgets everything remembered about the given account: the time step offset
+     * and the cached keyed HMAC.
+     *
+     * @param accountId The account id
+     */
+    void forgetAccount(long accountId) {
+        if (driftTracker != null) {
+            driftTracker.forget(accountId);
+        }
+        if (hmacKeyCache != null) {
+            hmacKeyCache.invalidate(accountId);
+        }
+    }
+
+    /**
+     * Forgets everything remembered about all accounts.
+     */
+    void forgetAllAccounts() {
+        if (driftTracker != null) {
+            driftTracker.forgetAll();
+        }
+        if (hmacKeyCache != null) {
+            hmacKeyCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Validates a one-time password code against the raw secret key.
+     * The time step counter is encoded straight into a reused buffer, the HMAC is computed
+     * with a per-thread {@link Mac} and candidates are compared as integers, so that a full
+     * window check does not allocate any intermediate strings or arrays.
+     *
+     * Codes longer than the engine supports never match here; {@link #checkCode(String, long)} routes them
+     * to the legacy implementation.
+     *
+     * @param decodedKey The secret key in raw byte form
+     * @param code       The OTP code to validate
+     * @return true if the code is valid, false otherwise
+     */
+    boolean checkCodeInternal(byte[] decodedKey, long code) {
+        val digits = properties.getCodeDigits();
+        if (!isEngineSupported(digits) || code < 0 || code >= DIGITS_POWER[digits]) {
+            return false;
+        }
+
+        return matchesWindow(keyedMac(properties.getHmacHashFunction(), decodedKey), code);
+    }
+
+    /**
+     * Checks the window around the current time step in the order given by {@link #clockSkewIndexToDelta(int)}.
+     *
+     * @param mac  The keyed HMAC instance
+     * @param code The OTP code to validate
+     * @return true if the code is valid, false otherwise
+     */
+    private boolean matchesWindow(Mac mac, long code) {
+        val digits = properties.getCodeDigits();
+        val currentInterval = getCurrentInterval();
+
+        for (int i = 0; i <= (properties.getWindowSize() * 2); i++) {
+            if (computeOtp(mac, currentInterval + clockSkewIndexToDelta(i), digits) == code) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Validates a one-time password code using the original string-based implementation.
+     * Kept for compatibility and benchmarking, see
+     * {@link CoreInalogyMultifactorProperties#isLegacyOtpVerification()}.
+     *
+     * @param secret The secret key in encoded form
+     * @param code   The OTP code to validate
+     * @return true if the code is valid, false otherwise
+     */
+    boolean checkCodeLegacy(String secret, long code) {
         byte[] decodedKey = decodeSecret(secret);
 
         // Convert the code to a string with leading zeros if necessary
@@ -173,6 +413,66 @@ public class InalogyOtpService {
         return false;
     }
 
+    /**
+     * Computes the HOTP value (RFC 4226) for the given counter.
+     * The counter is written big-endian into a per-thread buffer and the digest
+     * into another per-thread buffer, so nothing is allocated per call.
+     *
+     * @param mac     An initialized (keyed) HMAC instance
+     * @param counter The moving factor, i.e. the time step
+     * @param digits  The number of digits of the resulting code
+     * @return The OTP value as an integer
+     */
+    private static int computeOtp(final Mac mac, final long counter, final int digits) {
+        val msg = COUNTER_BUFFER.get();
+        long value = counter;
+        for (int i = msg.length - 1; i >= 0; i--) {
+            msg[i] = (byte) value;
+            value >>>= 8;
+        }
+
+        val hash = HASH_BUFFER.get();
+        val length = mac.getMacLength();
+        try {
+            mac.update(msg);
+            mac.doFinal(hash, 0);
+        } catch (final ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+
+        int offset = hash[length - 1] & 0xf;
+
+        int binary = ((hash[offset] & 0x7f) << 24) |
+                ((hash[offset + 1] & 0xff) << 16) |
+                ((hash[offset + 2] & 0xff) << 8) |
+                (hash[offset + 3] & 0xff);
+
+        return binary % DIGITS_POWER[digits];
+    }
+
+    /**
+     * Returns the per-thread {@link Mac} for the given algorithm initialized with the given key.
+     * The instance is created only once per thread and algorithm; only the key is set on each call.
+     *
+     * @param crypto   The crypto algorithm (HmacSHA1, HmacSHA256, HmacSHA512)
+     * @param keyBytes The key bytes
+     * @return The keyed HMAC instance
+     */
+    private static Mac keyedMac(final String crypto, final byte[] keyBytes) {
+        try {
+            val instances = MAC_INSTANCES.get();
+            var mac = instances.get(crypto);
+            if (mac == null) {
+                mac = Mac.getInstance(crypto);
+                instances.put(crypto, mac);
+            }
+            mac.init(new SecretKeySpec(keyBytes, "RAW"));
+            return mac;
+        } catch (final GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private long clockSkewIndexToDelta(int idx) {
         return (idx + 1) / 2 * (1 - (idx % 2) * 2);
     }
@@ -326,11 +626,25 @@ public class InalogyOtpService {
         return (scratchCode >= SCRATCH_CODE_MODULUS / 10);
     }
 
-
+    /**
+     * Returns the current TOTP time step, i.e. the number of whole time steps since the epoch
+     * according to {@link CoreInalogyMultifactorProperties#getClock()}.
+     *
+     * @return The current time step
+     */
     public long getCurrentInterval() {
-        Calendar currentCalendar = GregorianCalendar.getInstance(TimeZone.getTimeZone("CEST"));
+        return (properties.getClock().millis() / 1000) / properties.getTimeStepSize();
+    }
 
-        return (currentCalendar.getTimeInMillis() / 1000) / properties.getTimeStepSize();
+    /**
+     * Whether codes are generated and verified by the legacy implementation, either because it is
+     * configured or because the code length does not fit the allocation-free engine.
+     */
+    private boolean isLegacy() {
+        return properties.isLegacyOtpVerification() || !isEngineSupported(properties.getCodeDigits());
+    }
 
+    private static boolean isEngineSupported(final int digits) {
+        return digits > 0 && digits < DIGITS_POWER.length;
     }
 }
@@ -0,0 +1,130 @@
+package cz.ami.cas.inauth.service;
+
+import cz.ami.cas.inauth.configuration.mfa.InalogyMessagingBatchProperties;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Collects push notifications into batches. A batch is flushed once it holds the maximum number of
+ * pushes or when its first push has waited the maximum delay, whichever comes first. The dispatcher
+ * answers a batch with one result per push, in order, and each result is handed back to its caller.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Slf4j
+public class InalogyPushBatcher implements AutoCloseable {
+
+    private final InalogyMessagingBatchProperties properties;
+
+    private final Function<List<InalogyPushMessage>, CompletableFuture<List<Boolean>>> dispatcher;
+
+    private final DistributionSummary batchSize;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        val thread = new Thread(r, "inalogy-push-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private List<Pending> pending = new ArrayList<>();
+
+    private ScheduledFuture<?> scheduledFlush;
+
+    public InalogyPushBatcher(final InalogyMessagingBatchProperties properties,
+                              final Function<List<InalogyPushMessage>, CompletableFuture<List<Boolean>>> dispatcher,
+                              final MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.dispatcher = dispatcher;
+        this.batchSize = DistributionSummary.builder("inalogy.messaging.batch.size")
+                .description("Number of push notifications sent in one batch")
+                .baseUnit("pushes")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Adds a push to the current batch.
+     *
+     * @param message the push
+     * @return future completed with the delivery result of the push
+     */
+    public CompletableFuture<Boolean> submit(final InalogyPushMessage message) {
+        val result = new CompletableFuture<Boolean>();
+        List<Pending> full = null;
+        synchronized (this) {
+            pending.add(new Pending(message, result));
+            if (pending.size() >= Math.max(1, properties.getMaxBatchSize())) {
+                full = drain();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flush, properties.getMaxDelayMs(), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            val batch = full;
+            scheduler.execute(() -> dispatch(batch));
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        flush();
+        scheduler.shutdown();
+    }
+
+    private void flush() {
+        List<Pending> batch;
+        synchronized (this) {
+            batch = drain();
+        }
+        dispatch(batch);
+    }
+
+    private List<Pending> drain() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        val batch = pending;
+        pending = new ArrayList<>();
+        return batch;
+    }
+
+    private void dispatch(final List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        batchSize.record(batch.size());
+        LOGGER.debug("Sending batch of [{}] push notification(s)", batch.size());
+        try {
+            dispatcher.apply(batch.stream().map(Pending::message).toList())
+                    .whenComplete((results, error) -> {
+                        for (var i = 0; i < batch.size(); i++) {
+                            val sent = error == null && results != null && i < results.size() && Boolean.TRUE.equals(results.get(i));
+                            batch.get(i).result().complete(sent);
+                        }
+                        if (error != null) {
+                            LOGGER.error("Failed to send batch of push notifications", error);
+                        }
+                    });
+        } catch (final Exception e) {
+            LOGGER.error("Failed to send batch of push notifications", e);
+            batch.forEach(item -> item.result().complete(Boolean.FALSE));
+        }
+    }
+
+    private record Pending(InalogyPushMessage message, CompletableFuture<Boolean> result) {
+    }
+}
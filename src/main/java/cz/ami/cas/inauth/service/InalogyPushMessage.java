@@ -0,0 +1,62 @@
+package cz.ami.cas.inauth.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.val;
+
+/**
+ * A single push notification for the messaging API.
+ * The challenge fields are sent as the {@code serializedData} string the mobile application decodes.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Getter
+@Builder
+public class InalogyPushMessage {
+
+    private static final String TITLE = "Authentication required";
+
+    private static final String BODY = "Verify your identity to continue.";
+
+    private final String deviceId;
+
+    private final String deviceType;
+
+    private final String challengeType;
+
+    private final String dataForChallenge;
+
+    private final String keyId;
+
+    private final String callback;
+
+    /**
+     * Epoch second after which the device should ignore the push.
+     */
+    private final long validUntil;
+
+    /**
+     * Builds the JSON document of this push as expected by the messaging API.
+     *
+     * @param mapper the mapper used to build the document
+     * @return the push document
+     */
+    public ObjectNode toJson(final ObjectMapper mapper) {
+        val serializedData = mapper.createObjectNode()
+                .put("pushType", challengeType)
+                .put("dataForChallenge", dataForChallenge)
+                .put("keyId", keyId)
+                .put("callback", callback)
+                .put("validUntil", validUntil);
+        return mapper.createObjectNode()
+                .put("deviceId", deviceId)
+                .put("deviceType", deviceType)
+                .put("title", TITLE)
+                .put("body", BODY)
+                .put("sound", "default")
+                .put("serializedData", serializedData.toString());
+    }
+}
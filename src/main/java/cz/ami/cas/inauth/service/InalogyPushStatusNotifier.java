@@ -0,0 +1,124 @@
+package cz.ami.cas.inauth.service;
+
+import cz.ami.cas.inauth.authenticator.model.push.PushAuthenticationStatus;
+import cz.ami.cas.inauth.authenticator.model.push.PushRegistrationStatus;
+import cz.ami.cas.inauth.hazelcast.mfa.InalogyMfaRequest;
+import cz.ami.cas.inauth.hazelcast.mfa.MfaRequestMap;
+import cz.ami.cas.inauth.hazelcast.registration.InalogyRegistrationRequest;
+import cz.ami.cas.inauth.hazelcast.registration.RegistrationRequestMap;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+/**
+ * Delivers the final status of MFA and registration requests to callers waiting on this member.
+ * Listens to entry events of both request maps, so a waiting browser is answered as soon as the
+ * request leaves {@code PENDING} on any member, without polling the maps.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+@Slf4j
+public class InalogyPushStatusNotifier implements DisposableBean {
+
+    /**
+     * Default bean name.
+     */
+    public static final String BEAN_NAME = "inalogyPushStatusNotifier";
+
+    private final Map<String, Set<Consumer<String>>> loginWaiters = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<Consumer<String>>> registrationWaiters = new ConcurrentHashMap<>();
+
+    private final MfaRequestMap mfaRequestMap;
+
+    private final RegistrationRequestMap registrationRequestMap;
+
+    private final UUID mfaListenerId;
+
+    private final UUID registrationListenerId;
+
+    public InalogyPushStatusNotifier(final MfaRequestMap mfaRequestMap, final RegistrationRequestMap registrationRequestMap) {
+        this.mfaRequestMap = mfaRequestMap;
+        this.registrationRequestMap = registrationRequestMap;
+        this.mfaListenerId = mfaRequestMap.addRequestListener(this::onMfaRequest);
+        this.registrationListenerId = registrationRequestMap.addRequestListener(this::onRegistrationRequest);
+    }
+
+    /**
+     * Waits for the MFA request of the device to leave {@code PENDING}. The caller must check the current
+     * status after subscribing, since a change that happened before the subscription is not replayed.
+     *
+     * @param pushId   the push ID of the device
+     * @param callback receives the final status name once
+     * @return handle cancelling the subscription
+     */
+    public Runnable awaitLogin(final String pushId, final Consumer<String> callback) {
+        return subscribe(loginWaiters, pushId, callback);
+    }
+
+    /**
+     * Waits for the registration request to leave {@code PENDING}. The caller must check the current
+     * status after subscribing, since a change that happened before the subscription is not replayed.
+     *
+     * @param requestId the registration request ID
+     * @param callback  receives the final status name once
+     * @return handle cancelling the subscription
+     */
+    public Runnable awaitRegistration(final String requestId, final Consumer<String> callback) {
+        return subscribe(registrationWaiters, requestId, callback);
+    }
+
+    @Override
+    public void destroy() {
+        mfaRequestMap.removeRequestListener(mfaListenerId);
+        registrationRequestMap.removeRequestListener(registrationListenerId);
+        loginWaiters.clear();
+        registrationWaiters.clear();
+    }
+
+    private void onMfaRequest(final InalogyMfaRequest request) {
+        if (request != null && request.getStatus() != null && request.getStatus() != PushAuthenticationStatus.PENDING) {
+            notify(loginWaiters, request.getPushId(), request.getStatus().name());
+        }
+    }
+
+    private void onRegistrationRequest(final InalogyRegistrationRequest request) {
+        if (request != null && request.getStatus() != null && request.getStatus() != PushRegistrationStatus.PENDING) {
+            notify(registrationWaiters, request.getRequestId(), request.getStatus().name());
+        }
+    }
+
+    private static Runnable subscribe(final Map<String, Set<Consumer<String>>> waiters, final String key,
+                                      final Consumer<String> callback) {
+        waiters.computeIfAbsent(key, __ -> new CopyOnWriteArraySet<>()).add(callback);
+        return () -> waiters.computeIfPresent(key, (__, callbacks) -> {
+            callbacks.remove(callback);
+            return callbacks.isEmpty() ? null : callbacks;
+        });
+    }
+
+    private static void notify(final Map<String, Set<Consumer<String>>> waiters, final String key, final String status) {
+        if (key == null) {
+            return;
+        }
+        val callbacks = waiters.remove(key);
+        if (callbacks != null) {
+            LOGGER.debug("Notifying [{}] waiting client(s) of status [{}] for [{}]", callbacks.size(), status, key);
+            callbacks.forEach(callback -> {
+                try {
+                    callback.accept(status);
+                } catch (final Exception e) {
+                    LOGGER.debug("Unable to notify waiting client for [{}]", key, e);
+                }
+            });
+        }
+    }
+}
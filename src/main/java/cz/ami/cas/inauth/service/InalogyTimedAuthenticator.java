@@ -0,0 +1,142 @@
+package cz.ami.cas.inauth.service;
+
+import cz.ami.cas.inauth.authenticator.model.key.InalogyAuthenticatorKey;
+import cz.ami.cas.inauth.authenticator.model.push.PushAuthenticationStatus;
+import cz.ami.cas.inauth.authenticator.model.push.PushRegistrationStatus;
+import cz.ami.cas.inauth.authenticator.model.push.ValidationResult;
+import cz.ami.cas.inauth.configuration.mfa.InalogyMetricsProperties;
+import cz.ami.cas.inauth.credential.InalogyAuthenticatorAccount;
+import cz.ami.cas.inauth.hazelcast.mfa.InalogyMfaRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.apereo.cas.authentication.OneTimeTokenAccount;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.Locale;
+
+/**
+ * Decorator timing the push operations of an {@link IInalogyAuthenticator} in {@code inalogy.authenticator}.
+ * Validation results are tagged with their HTTP status, push initiation with whether a push was sent and
+ * status checks with the status returned. The remaining operations are passed through untimed.
+ * The decorated authenticator is destroyed together with the decorator.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+public class InalogyTimedAuthenticator implements IInalogyAuthenticator, DisposableBean {
+
+    private final IInalogyAuthenticator delegate;
+
+    private final InalogyOperationTimers timers;
+
+    public InalogyTimedAuthenticator(final IInalogyAuthenticator delegate, final InalogyMetricsProperties properties,
+                                     final MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.timers = new InalogyOperationTimers("inalogy.authenticator", "Time spent in the push operations of the authenticator",
+                Tags.empty(), properties.isPercentileHistogram(), meterRegistry);
+    }
+
+    @Override
+    public String initiatePushAuthentication(final String username, final String flowId) {
+        return timers.record("initiatePushAuthentication", () -> delegate.initiatePushAuthentication(username, flowId),
+                pushId -> pushId != null ? "sent" : "not_sent");
+    }
+
+    @Override
+    public ValidationResult validatePushAuthentication(final String pushId, final String otp, final String challengeResponse) {
+        return timers.record("validatePushAuthentication",
+                () -> delegate.validatePushAuthentication(pushId, otp, challengeResponse), InalogyTimedAuthenticator::outcomeOf);
+    }
+
+    @Override
+    public PushAuthenticationStatus checkPushAuthenticationStatus(final String pushId) {
+        return timers.record("checkPushAuthenticationStatus", () -> delegate.checkPushAuthenticationStatus(pushId),
+                status -> status.name().toLowerCase(Locale.ENGLISH));
+    }
+
+    @Override
+    public PushAuthenticationStatus checkCurrentPushAuthenticationStatus(final String pushId) {
+        return timers.record("checkCurrentPushAuthenticationStatus", () -> delegate.checkCurrentPushAuthenticationStatus(pushId),
+                status -> status.name().toLowerCase(Locale.ENGLISH));
+    }
+
+    @Override
+    public PushRegistrationStatus checkPushRegistrationStatus(final String requestId) {
+        return timers.record("checkPushRegistrationStatus", () -> delegate.checkPushRegistrationStatus(requestId),
+                status -> status.name().toLowerCase(Locale.ENGLISH));
+    }
+
+    @Override
+    public ValidationResult registerPushDevice(final String encodedSecret, final String deviceName, final String pushId,
+                                               final String deviceKeyId, final String deviceType, final String initialCode) {
+        return timers.record("registerPushDevice",
+                () -> delegate.registerPushDevice(encodedSecret, deviceName, pushId, deviceKeyId, deviceType, initialCode),
+                InalogyTimedAuthenticator::outcomeOf);
+    }
+
+    @Override
+    public ValidationResult updatePushId(final String deviceKey, final String newPushId, final String otp) {
+        return timers.record("updatePushId", () -> delegate.updatePushId(deviceKey, newPushId, otp),
+                InalogyTimedAuthenticator::outcomeOf);
+    }
+
+    @Override
+    public ValidationResult terminatePushAuthentication(final String pushId, final String otp) {
+        return timers.record("terminatePushAuthentication", () -> delegate.terminatePushAuthentication(pushId, otp),
+                InalogyTimedAuthenticator::outcomeOf);
+    }
+
+    @Override
+    public boolean validateOtp(final OneTimeTokenAccount account, final int token) {
+        return delegate.validateOtp(account, token);
+    }
+
+    @Override
+    public boolean validateCredential(final InalogyAuthenticatorAccount account, final int token) {
+        return delegate.validateCredential(account, token);
+    }
+
+    @Override
+    public InalogyAuthenticatorKey createCredentials() {
+        return delegate.createCredentials();
+    }
+
+    @Override
+    public InalogyMfaRequest getPendingPushAuthentication(final String pushId) {
+        return delegate.getPendingPushAuthentication(pushId);
+    }
+
+    @Override
+    public InalogyMfaRequest getCurrentPushAuthentication(final String pushId) {
+        return delegate.getCurrentPushAuthentication(pushId);
+    }
+
+    @Override
+    public boolean validateChallengeResponse(final String challengeType, final String dataForChallenge, final String challengeResponse) {
+        return delegate.validateChallengeResponse(challengeType, dataForChallenge, challengeResponse);
+    }
+
+    @Override
+    public void invalidateAccount(final long accountId) {
+        delegate.invalidateAccount(accountId);
+    }
+
+    @Override
+    public void invalidateAllAccounts() {
+        delegate.invalidateAllAccounts();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (delegate instanceof DisposableBean disposable) {
+            disposable.destroy();
+        }
+    }
+
+    private static String outcomeOf(final ValidationResult result) {
+        if (result.isSuccess()) {
+            return InalogyOperationTimers.SUCCESS;
+        }
+        return result.getStatus() != null ? String.valueOf(result.getStatus().value()) : "failure";
+    }
+}
@@ -115,7 +115,9 @@ public class InalogyAuthenticatorMultifactorWebflowConfigurer extends AbstractCa
             var checkPushState = createActionState(flow, InalogyWebflowConstants.STATE_ID_CHECK_PUSH_RESPONSE,
                     createEvaluateAction(InalogyWebflowConstants.ACTION_ID_INALOGY_CHECK_RESPONSE));
             createTransitionForState(checkPushState, CasWebflowConstants.TRANSITION_ID_SUBMIT, CasWebflowConstants.STATE_ID_REAL_SUBMIT);
-            createTransitionForState(checkPushState, InalogyWebflowConstants.TRANSITION_ID_WAIT, InalogyWebflowConstants.STATE_ID_CHECK_PUSH_RESPONSE);
+            // While the push is pending, render the waiting page again; the browser waits on the status stream
+            // instead of the flow re-entering this state on a server thread.
+            createTransitionForState(checkPushState, InalogyWebflowConstants.TRANSITION_ID_WAIT, CasWebflowConstants.STATE_ID_VIEW_LOGIN_FORM);
             createTransitionForState(checkPushState, InalogyWebflowConstants.TRANSITION_ID_REJECTED, "viewLoginError");
             createTransitionForState(checkPushState, InalogyWebflowConstants.TRANSITION_ID_TIMEOUT, "viewLoginError");
 
@@ -13,10 +13,14 @@ import org.springframework.webflow.action.EventFactorySupport;
 import org.springframework.webflow.execution.Event;
 import org.springframework.webflow.execution.RequestContext;
 
+import java.util.UUID;
+
 @Slf4j
 @RequiredArgsConstructor
 public class InalogyInitiatePushAuthenticationAction extends AbstractMultifactorAuthenticationAction {
 
+    private static final String FLOW_ID = "pushAuthFlowId";
+
     private final IInalogyAuthenticator inalogyAuthenticatorService;
 
     private final CoreInalogyMultifactorProperties properties;
@@ -32,7 +36,15 @@ public class InalogyInitiatePushAuthenticationAction extends AbstractMultifactor
         val principal = authentication.getPrincipal();
         val username = principal.getId();
 
-        String pushId = inalogyAuthenticatorService.initiatePushAuthentication(username);
+        // The flow ID survives a page refresh or a double submit, which then reuse the pending request
+        val conversationScope = requestContext.getConversationScope();
+        var flowId = conversationScope.getString(FLOW_ID);
+        if (flowId == null) {
+            flowId = UUID.randomUUID().toString();
+            conversationScope.put(FLOW_ID, flowId);
+        }
+
+        String pushId = inalogyAuthenticatorService.initiatePushAuthentication(username, flowId);
 
         if (pushId == null) {
             LOGGER.warn("Failed to initiate push authentication for user: [{}]", username);
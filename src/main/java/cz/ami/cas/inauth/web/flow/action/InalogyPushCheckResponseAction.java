@@ -1,5 +1,6 @@
 package cz.ami.cas.inauth.web.flow.action;
 
+import cz.ami.cas.inauth.authenticator.model.push.PushAuthenticationStatus;
 import cz.ami.cas.inauth.credential.InalogyAuthenticatorTokenCredential;
 import cz.ami.cas.inauth.service.IInalogyAuthenticator;
 import cz.ami.cas.inauth.web.flow.InalogyWebflowConstants;
@@ -28,12 +29,18 @@ public class InalogyPushCheckResponseAction extends AbstractMultifactorAuthentic
             return error();
         }
 
-        val status = inalogyAuthenticator.checkPushAuthenticationStatus(pushId);
+        // A single read while pending: the request carries both the status and the approved response.
+        // The near cache may lag behind, so a final status is confirmed on the member owning the request.
+        var mfaRequest = inalogyAuthenticator.getPendingPushAuthentication(pushId);
+        if (mfaRequest == null || mfaRequest.getStatus() != PushAuthenticationStatus.PENDING) {
+            mfaRequest = inalogyAuthenticator.getCurrentPushAuthentication(pushId);
+        }
+        val status = mfaRequest == null || mfaRequest.getStatus() == null
+                ? PushAuthenticationStatus.NOT_FOUND : mfaRequest.getStatus();
 
         switch (status) {
             case APPROVED:
                 LOGGER.debug("Push authentication approved for pushId: [{}]", pushId);
-                val mfaRequest = inalogyAuthenticator.getPendingPushAuthentication(pushId);
                 var cred = requestContext.getFlowScope().get(VAR_ID_CREDENTIAL, InalogyAuthenticatorTokenCredential.class);
                 cred.setUserResponse(mfaRequest.getUserResponse());
                 cred.setToken(mfaRequest.getOtp());
@@ -1,9 +1,27 @@
 (function() {
+    // Minimum time between the starts of two long-polls
+    const MIN_WAIT_INTERVAL_MS = 1000;
+
     function getPushRegRequestId() {
         const el = document.querySelector('input[name="regRequestId"]');
         return el ? el.value : null;
     }
 
+    function handleStatus(status) {
+        if (status === 'REGISTERED') {
+            document.getElementById('registration-form').submit();
+            return true;
+        } else if (status === 'REJECTED') {
+            window.location.href = '/cas/login';
+            return true;
+        } else if (status === 'EXPIRED' || status === 'NOT_FOUND') {
+            // The request expired or was removed; it will never change again
+            window.location.href = '/cas/login';
+            return true;
+        }
+        return false;
+    }
+
     function pollRegStatus() {
         const requestId = getPushRegRequestId();
         if (!requestId) {
@@ -13,25 +31,63 @@
         fetch('/cas/inalogy/check/registration?requestId=' + encodeURIComponent(requestId), {cache: 'no-store'})
             .then(r => r.json())
             .then(data => {
-                if (data.status === 'REGISTERED') {
-                    document.getElementById('registration-form').submit();
-                } else if (data.status === 'REJECTED') {
-                    window.location.href = '/cas/login';
-                } else if (data.status === 'EXPIRED') {
-                    window.location.href = '/cas/login';
-                } else {
+                if (!handleStatus(data.status)) {
                     setTimeout(pollRegStatus, 2200);
                 }
             })
             .catch(() => setTimeout(pollRegStatus, 2200));
     }
 
+    // Long-poll: the server answers when the status changes or the wait times out.
+    function waitRegStatus(requestId) {
+        const started = Date.now();
+        fetch('/cas/inalogy/wait/registration?requestId=' + encodeURIComponent(requestId), {cache: 'no-store'})
+            .then(r => {
+                if (!r.ok) {
+                    throw new Error(r.status);
+                }
+                return r.json();
+            })
+            .then(data => {
+                if (!handleStatus(data.status)) {
+                    // Never less than the minimum interval apart, whatever the server answered
+                    setTimeout(() => waitRegStatus(requestId), Math.max(0, MIN_WAIT_INTERVAL_MS - (Date.now() - started)));
+                }
+            })
+            .catch(() => setTimeout(pollRegStatus, 2200));
+    }
+
+    // Server-sent events: a single idle connection until the status leaves PENDING.
+    function streamRegStatus() {
+        const requestId = getPushRegRequestId();
+        if (!requestId || !window.EventSource) {
+            requestId ? waitRegStatus(requestId) : pollRegStatus();
+            return;
+        }
+        let received = false;
+        const source = new EventSource('/cas/inalogy/stream/registration?requestId=' + encodeURIComponent(requestId));
+        source.addEventListener('status', event => {
+            received = true;
+            source.close();
+            if (!handleStatus(JSON.parse(event.data).status)) {
+                setTimeout(() => waitRegStatus(requestId), MIN_WAIT_INTERVAL_MS);
+            }
+        });
+        source.onerror = () => {
+            // The server closes the stream after the wait timeout; EventSource reconnects by itself.
+            // Fall back to long-polling only if the stream cannot be opened at all.
+            if (!received && source.readyState === EventSource.CLOSED) {
+                waitRegStatus(requestId);
+            }
+        };
+    }
+
     document.addEventListener('DOMContentLoaded', function() {
         const formEl = document.getElementById('countdown');
         const timeoutSec = formEl ? parseInt(formEl.dataset.redirectSeconds || '45', 10) : 45;
 
         setTimeout(() => { window.location.href = '/cas/login'; }, timeoutSec * 1000);
 
-        pollRegStatus();
+        streamRegStatus();
     });
-})();
\ No newline at end of file
+})();
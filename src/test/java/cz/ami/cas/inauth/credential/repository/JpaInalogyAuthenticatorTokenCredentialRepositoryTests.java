@@ -0,0 +1,151 @@
+package cz.ami.cas.inauth.credential.repository;
+
+import cz.ami.cas.inauth.credential.InalogyAuthenticatorAccount;
+import cz.ami.cas.inauth.credential.repository.jpa.JpaInalogyAuthenticatorAccount;
+import cz.ami.cas.inauth.service.IInalogyAuthenticator;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.val;
+import org.apereo.cas.util.crypto.CipherExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigInteger;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests of {@link JpaInalogyAuthenticatorTokenCredentialRepository} against an in-memory H2 database.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+class JpaInalogyAuthenticatorTokenCredentialRepositoryTests {
+
+    private EmbeddedDatabase dataSource;
+
+    private EntityManagerFactory entityManagerFactory;
+
+    private IInalogyAuthenticator authenticator;
+
+    private JpaInalogyAuthenticatorTokenCredentialRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName(UUID.randomUUID().toString())
+                .build();
+        val factoryBean = new LocalContainerEntityManagerFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setPackagesToScan(JpaInalogyAuthenticatorAccount.class.getPackage().getName());
+        factoryBean.setPersistenceUnitName("jpaInalogyAuthenticatorContext");
+        factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factoryBean.setJpaPropertyMap(Map.of("hibernate.hbm2ddl.auto", "create-drop"));
+        factoryBean.afterPropertiesSet();
+        entityManagerFactory = factoryBean.getObject();
+
+        val transactionManager = new JpaTransactionManager(entityManagerFactory);
+        authenticator = mock(IInalogyAuthenticator.class);
+        repository = new JpaInalogyAuthenticatorTokenCredentialRepository(
+                SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory),
+                new TransactionTemplate(transactionManager),
+                CipherExecutor.noOpOfStringToString(),
+                CipherExecutor.noOpOfNumberToNumber(),
+                authenticator);
+    }
+
+    @AfterEach
+    void tearDown() {
+        entityManagerFactory.close();
+        dataSource.shutdown();
+    }
+
+    @Test
+    void verifySaveAndGet() {
+        val saved = repository.save(newAccount("Casuser", "push-1", "key-1"));
+
+        val found = (InalogyAuthenticatorAccount) repository.get(saved.getId());
+        assertThat(found).isNotNull();
+        assertThat(found.getUsername()).isEqualTo("casuser");
+        assertThat(found.getSecretKey()).isEqualTo("SECRET");
+        assertThat(found.getPushId()).isEqualTo("push-1");
+        assertThat(found.getDeviceKeyId()).isEqualTo("key-1");
+        assertThat(found.getScratchCodes()).extracting(Number::intValue).containsExactly(11111111, 22222222);
+        assertThat(repository.get("CASUSER ")).hasSize(1);
+        assertThat(repository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void verifyGetByPushIdAndDeviceKeyId() {
+        val saved = repository.save(newAccount("casuser", "push-1", "key-1"));
+        repository.save(newAccount("other", "push-2", "key-2"));
+
+        assertThat(repository.getByPushId("push-1").getId()).isEqualTo(saved.getId());
+        assertThat(repository.getByDeviceKeyId("key-1").getId()).isEqualTo(saved.getId());
+        assertThat(repository.getByPushId("unknown")).isNull();
+        assertThat(repository.getByDeviceKeyId("unknown")).isNull();
+    }
+
+    @Test
+    void verifyUpdate() {
+        val id = repository.save(newAccount("casuser", "push-1", "key-1")).getId();
+        val saved = (InalogyAuthenticatorAccount) repository.get(id);
+        saved.setPushId("push-new");
+        saved.setSecretKey("ROTATED");
+        saved.setScratchCodes(new ArrayList<>(List.of(33333333)));
+
+        repository.update(saved);
+
+        assertThat(repository.getByPushId("push-1")).isNull();
+        val found = (InalogyAuthenticatorAccount) repository.getByPushId("push-new");
+        assertThat(found.getId()).isEqualTo(id);
+        assertThat(found.getSecretKey()).isEqualTo("ROTATED");
+        assertThat(found.getScratchCodes()).extracting(Number::intValue).containsExactly(33333333);
+        verify(authenticator).invalidateAccount(id);
+    }
+
+    @Test
+    void verifyRemoveScratchCode() {
+        val saved = repository.save(newAccount("casuser", "push-1", "key-1"));
+        val account = repository.get(saved.getId());
+
+        repository.removeScratchCode(account, 11111111);
+
+        assertThat(account.getScratchCodes()).extracting(Number::intValue).containsExactly(22222222);
+        assertThat(repository.get(saved.getId()).getScratchCodes()).extracting(Number::intValue).containsExactly(22222222);
+
+        repository.removeScratchCode(account, 99999999);
+        assertThat(repository.get(saved.getId()).getScratchCodes()).hasSize(1);
+    }
+
+    private static InalogyAuthenticatorAccount newAccount(final String username, final String pushId, final String deviceKeyId) {
+        return InalogyAuthenticatorAccount.builder()
+                .username(username.trim().toLowerCase(Locale.ENGLISH))
+                .secretKey("SECRET")
+                .validationCode(123456)
+                .scratchCodes(new ArrayList<>(List.of(BigInteger.valueOf(11111111), BigInteger.valueOf(22222222))))
+                .name("Phone")
+                .registrationDate(ZonedDateTime.now())
+                .deviceType("android")
+                .pushId(pushId)
+                .deviceKeyId(deviceKeyId)
+                .build();
+    }
+}
@@ -0,0 +1,46 @@
+package cz.ami.cas.inauth.service;
+
+import cz.ami.cas.inauth.authenticator.model.key.InalogyAuthenticatorKey;
+import cz.ami.cas.inauth.configuration.mfa.InalogyKeyPoolProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of the meters of {@link InalogyAuthenticatorKeyPool} across a pool being replaced, as on a refresh.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+class InalogyAuthenticatorKeyPoolTests {
+
+    @Test
+    void verifyReplacedPoolPublishesItsOwnMeters() throws Exception {
+        val meterRegistry = new SimpleMeterRegistry();
+        val properties = new InalogyKeyPoolProperties().setEnabled(true).setCapacity(3).setRefillIntervalMs(10);
+
+        val closed = new InalogyAuthenticatorKeyPool(properties, InalogyAuthenticatorKeyPoolTests::newKey, meterRegistry);
+        closed.take();
+        closed.close();
+        assertThat(meterRegistry.find("inalogy.registration.key.pool.size").gauge()).isNull();
+        assertThat(meterRegistry.find("inalogy.registration.key.pool").counters()).isEmpty();
+
+        try (val pool = new InalogyAuthenticatorKeyPool(properties, InalogyAuthenticatorKeyPoolTests::newKey, meterRegistry)) {
+            val deadline = System.currentTimeMillis() + 5000;
+            while (pool.size() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(meterRegistry.get("inalogy.registration.key.pool.size").gauge().value()).isEqualTo(3);
+            pool.take();
+            assertThat(meterRegistry.get("inalogy.registration.key.pool").tag("result", "hit").counter().count()).isEqualTo(1);
+        }
+    }
+
+    private static InalogyAuthenticatorKey newKey() {
+        return new InalogyAuthenticatorKey("SECRET", 123456, List.of(11111111));
+    }
+}
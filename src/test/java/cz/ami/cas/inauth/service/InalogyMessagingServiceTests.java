@@ -0,0 +1,230 @@
+package cz.ami.cas.inauth.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import cz.ami.cas.inauth.configuration.mfa.InalogyMessagingServiceProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of the retry, circuit breaker and hedging behavior of {@link InalogyMessagingService}
+ * against a stub messaging API.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+class InalogyMessagingServiceTests {
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    private final Queue<StubResponse> responses = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private volatile StubResponse defaultResponse = new StubResponse(204, 0);
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private InalogyMessagingServiceProperties properties;
+
+    private InalogyMessagingService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/push", this::handle);
+        server.start();
+
+        meterRegistry = new SimpleMeterRegistry();
+        properties = new InalogyMessagingServiceProperties()
+                .setUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/push")
+                .setApiKey("api-key");
+        properties.getRetry().setMaxAttempts(3).setInitialBackoffMs(1).setMaxBackoffMs(5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.destroy();
+        }
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void verifyRetryOnTooManyRequestsAndServerErrors() {
+        respond(429, 503);
+        service = new InalogyMessagingService(properties, meterRegistry);
+
+        assertThat(send()).isTrue();
+        assertThat(requests.get()).isEqualTo(3);
+        assertThat(counter("inalogy.messaging.retries")).isEqualTo(2);
+    }
+
+    @Test
+    void verifyGiveUpAfterMaxAttempts() {
+        defaultResponse = new StubResponse(500, 0);
+        service = new InalogyMessagingService(properties, meterRegistry);
+
+        assertThat(send()).isFalse();
+        assertThat(requests.get()).isEqualTo(3);
+    }
+
+    @Test
+    void verifyNoRetryOnClientError() {
+        respond(400);
+        service = new InalogyMessagingService(properties, meterRegistry);
+
+        assertThat(send()).isFalse();
+        assertThat(requests.get()).isEqualTo(1);
+        assertThat(counter("inalogy.messaging.retries")).isZero();
+    }
+
+    @Test
+    void verifyCircuitBreakerOpensAndHalfOpens() throws Exception {
+        properties.getRetry().setMaxAttempts(1);
+        properties.getCircuitBreaker().setSlidingWindowSize(4).setMinimumNumberOfCalls(4)
+                .setFailureRateThreshold(50).setOpenDurationMs(300);
+        defaultResponse = new StubResponse(500, 0);
+        service = new InalogyMessagingService(properties, meterRegistry);
+
+        for (var i = 0; i < 4; i++) {
+            assertThat(send()).isFalse();
+        }
+        assertThat(breakerState()).isEqualTo(InalogyCircuitBreaker.State.OPEN.ordinal());
+
+        assertThat(send()).isFalse();
+        assertThat(requests.get()).isEqualTo(4);
+        assertThat(counter("inalogy.messaging.circuit.breaker.rejected")).isEqualTo(1);
+
+        Thread.sleep(400);
+        defaultResponse = new StubResponse(204, 300);
+        val trial = sendAsync();
+        waitForRequests(5);
+        assertThat(breakerState()).isEqualTo(InalogyCircuitBreaker.State.HALF_OPEN.ordinal());
+        assertThat(send()).isFalse();
+        assertThat(counter("inalogy.messaging.circuit.breaker.rejected")).isEqualTo(2);
+
+        assertThat(trial.join()).isTrue();
+        assertThat(breakerState()).isEqualTo(InalogyCircuitBreaker.State.CLOSED.ordinal());
+        assertThat(send()).isTrue();
+        assertThat(requests.get()).isEqualTo(6);
+    }
+
+    @Test
+    void verifyHedgeFiresForSlowAttempt() {
+        properties.getHedging().setEnabled(true).setMinDelayMs(50);
+        responses.add(new StubResponse(204, 2000));
+        service = new InalogyMessagingService(properties, meterRegistry);
+
+        val start = System.nanoTime();
+        assertThat(send()).isTrue();
+        val elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(requests.get()).isEqualTo(2);
+        assertThat(counter("inalogy.messaging.hedges")).isEqualTo(1);
+        assertThat(elapsedMs).isLessThan(1500);
+    }
+
+    @Test
+    void verifyHedgeAnswersAfterFastPrimaryFailure() {
+        properties.getHedging().setEnabled(true).setMinDelayMs(50);
+        responses.add(new StubResponse(503, 300));
+        defaultResponse = new StubResponse(204, 300);
+        service = new InalogyMessagingService(properties, meterRegistry);
+
+        assertThat(send()).isTrue();
+        assertThat(requests.get()).isEqualTo(2);
+        assertThat(counter("inalogy.messaging.hedges")).isEqualTo(1);
+        assertThat(counter("inalogy.messaging.retries")).isZero();
+    }
+
+    @Test
+    void verifyNoHedgeWithoutFreePermit() {
+        properties.setMaxInFlight(1);
+        properties.getHedging().setEnabled(true).setMinDelayMs(50);
+        responses.add(new StubResponse(204, 300));
+        service = new InalogyMessagingService(properties, meterRegistry);
+
+        assertThat(send()).isTrue();
+        assertThat(requests.get()).isEqualTo(1);
+        assertThat(counter("inalogy.messaging.hedges")).isZero();
+        assertThat(service.getInFlight()).isZero();
+    }
+
+    @Test
+    void verifyNoHedgeForFastAttempt() {
+        properties.getHedging().setEnabled(true).setMinDelayMs(500);
+        service = new InalogyMessagingService(properties, meterRegistry);
+
+        assertThat(send()).isTrue();
+        assertThat(requests.get()).isEqualTo(1);
+        assertThat(counter("inalogy.messaging.hedges")).isZero();
+    }
+
+    private boolean send() {
+        return sendAsync().join();
+    }
+
+    private CompletableFuture<Boolean> sendAsync() {
+        return service.sendPushNotificationAsync("device-1", "android", "CHALLENGE_APPROVE", null, "key-1", "https://cas/callback");
+    }
+
+    private void respond(final int... statuses) {
+        for (val status : statuses) {
+            responses.add(new StubResponse(status, 0));
+        }
+    }
+
+    private double counter(final String name) {
+        return meterRegistry.get(name).counter().count();
+    }
+
+    private double breakerState() {
+        return meterRegistry.get("inalogy.messaging.circuit.breaker.state").gauge().value();
+    }
+
+    private void waitForRequests(final int count) throws InterruptedException {
+        val deadline = System.currentTimeMillis() + 5000;
+        while (requests.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(requests.get()).isEqualTo(count);
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            requests.incrementAndGet();
+            val scripted = responses.poll();
+            val response = scripted != null ? scripted : defaultResponse;
+            if (response.delayMs() > 0) {
+                Thread.sleep(response.delayMs());
+            }
+            exchange.sendResponseHeaders(response.status(), -1);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record StubResponse(int status, long delayMs) {
+    }
+}
@@ -0,0 +1,140 @@
+package cz.ami.cas.inauth.web.flow.action;
+
+import cz.ami.cas.inauth.authenticator.model.push.PushAuthenticationStatus;
+import cz.ami.cas.inauth.configuration.mfa.CoreInalogyMultifactorProperties;
+import cz.ami.cas.inauth.configuration.mfa.InalogyRequestMapProperties;
+import cz.ami.cas.inauth.credential.InalogyAuthenticatorTokenCredential;
+import cz.ami.cas.inauth.hazelcast.local.InalogyMfaRequestLocalMap;
+import cz.ami.cas.inauth.hazelcast.mfa.InalogyMfaRequest;
+import cz.ami.cas.inauth.service.InalogyAuthenticatorService;
+import cz.ami.cas.inauth.web.flow.InalogyWebflowConstants;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.apereo.cas.web.flow.CasWebflowConstants;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.webflow.test.MockRequestContext;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link InalogyPushCheckResponseAction} counting the request map reads of one login.
+ * The pending push is checked the way the configured flow does it: once when the waiting page is
+ * rendered and once per {@code wait} event the browser sends into {@code inalogyCheckPushResponse},
+ * which renders the waiting page again instead of re-entering itself.
+ *
+ * @author Inalogy
+ * @since 1.0.0
+ */
+class InalogyPushCheckResponseActionTests {
+
+    private static final String PUSH_ID = "push-1";
+
+    private CountingMfaRequestMap mfaRequestMap;
+
+    private InalogyAuthenticatorService authenticatorService;
+
+    private InalogyPushCheckResponseAction action;
+
+    private MockRequestContext requestContext;
+
+    @BeforeEach
+    void setUp() {
+        val meterRegistry = new SimpleMeterRegistry();
+        mfaRequestMap = new CountingMfaRequestMap(meterRegistry);
+        authenticatorService = new InalogyAuthenticatorService(new CoreInalogyMultifactorProperties(),
+                null, null, mfaRequestMap, null, null, meterRegistry);
+        action = new InalogyPushCheckResponseAction(authenticatorService);
+        requestContext = new MockRequestContext();
+        requestContext.getFlowScope().put("pushAuthPushId", PUSH_ID);
+        requestContext.getFlowScope().put("pushAuthWaitStartTime", System.currentTimeMillis());
+        requestContext.getFlowScope().put(CasWebflowConstants.VAR_ID_CREDENTIAL, new InalogyAuthenticatorTokenCredential());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        authenticatorService.destroy();
+        mfaRequestMap.destroy();
+    }
+
+    @Test
+    void verifyPendingCheckReadsOnce() {
+        mfaRequestMap.putRequest(request(PushAuthenticationStatus.PENDING));
+
+        for (var check = 1; check <= 5; check++) {
+            val event = action.doExecuteInternal(requestContext);
+            assertThat(event.getId()).isEqualTo(InalogyWebflowConstants.TRANSITION_ID_WAIT);
+            assertThat(mfaRequestMap.reads.get()).isEqualTo(check);
+            assertThat(mfaRequestMap.currentReads.get()).isZero();
+        }
+    }
+
+    @Test
+    void verifyApprovedCheckIsConfirmedOnce() {
+        mfaRequestMap.putRequest(request(PushAuthenticationStatus.PENDING));
+        assertThat(action.doExecuteInternal(requestContext).getId()).isEqualTo(InalogyWebflowConstants.TRANSITION_ID_WAIT);
+
+        assertThat(mfaRequestMap.approve(PUSH_ID, "request-1", null, "123456", "response")).isTrue();
+        val event = action.doExecuteInternal(requestContext);
+
+        assertThat(event.getId()).isEqualTo(CasWebflowConstants.TRANSITION_ID_SUBMIT);
+        assertThat(mfaRequestMap.reads.get()).isEqualTo(2);
+        assertThat(mfaRequestMap.currentReads.get()).isEqualTo(1);
+        val credential = requestContext.getFlowScope().get(CasWebflowConstants.VAR_ID_CREDENTIAL,
+                InalogyAuthenticatorTokenCredential.class);
+        assertThat(credential.getToken()).isEqualTo("123456");
+        assertThat(credential.getUserResponse()).isEqualTo("response");
+        assertThat(credential.getAccountId()).isEqualTo(42L);
+    }
+
+    @Test
+    void verifyMissingRequestIsRejected() {
+        val event = action.doExecuteInternal(requestContext);
+
+        assertThat(event.getId()).isEqualTo(InalogyWebflowConstants.TRANSITION_ID_REJECTED);
+        assertThat(mfaRequestMap.reads.get()).isEqualTo(1);
+        assertThat(mfaRequestMap.currentReads.get()).isEqualTo(1);
+    }
+
+    private static InalogyMfaRequest request(final PushAuthenticationStatus status) {
+        val now = System.currentTimeMillis();
+        return InalogyMfaRequest.builder()
+                .requestId("request-1")
+                .userId("casuser")
+                .pushId(PUSH_ID)
+                .accountId(42L)
+                .status(status)
+                .createdAt(now)
+                .validUntil(now + 60_000)
+                .build();
+    }
+
+    /**
+     * In-process request map counting the reads by push ID the action performs.
+     */
+    private static final class CountingMfaRequestMap extends InalogyMfaRequestLocalMap {
+
+        private final AtomicInteger reads = new AtomicInteger();
+
+        private final AtomicInteger currentReads = new AtomicInteger();
+
+        CountingMfaRequestMap(final SimpleMeterRegistry meterRegistry) {
+            super(new InalogyRequestMapProperties(), meterRegistry);
+        }
+
+        @Override
+        public InalogyMfaRequest getRequestByPushId(final String pushId) {
+            reads.incrementAndGet();
+            return super.getRequestByPushId(pushId);
+        }
+
+        @Override
+        public InalogyMfaRequest getCurrentRequestByPushId(final String pushId) {
+            currentReads.incrementAndGet();
+            return super.getRequestByPushId(pushId);
+        }
+    }
+}